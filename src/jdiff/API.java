@@ -91,9 +91,9 @@ public class API {
             dumpClass((ClassAPI)(iter.next()), indent + indentInc);
         }
         // Display documentation
-        if (pkg.doc_ != null) {
+        if (pkg.getDoc() != null) {
             System.out.print("Package doc block:");
-            System.out.println("\"" + pkg.doc_ + "\"");
+            System.out.println("\"" + pkg.getDoc() + "\"");
         }
     }
 
@@ -144,9 +144,9 @@ public class API {
             dumpField((FieldAPI)(iter.next()), indent + indentInc);
         }
         // Display documentation
-        if (c.doc_ != null) {
+        if (c.getDoc() != null) {
             System.out.print("Class doc block:");
-            System.out.println("\"" + c.doc_ + "\"");
+            System.out.println("\"" + c.getDoc() + "\"");
         } else
             System.out.println();
     }
@@ -183,9 +183,9 @@ public class API {
         // Dump modifiers common to all
         dumpModifiers(c.modifiers_, indent);
         // Display documentation
-        if (c.doc_ != null) {
+        if (c.getDoc() != null) {
             System.out.print("Ctor doc block:");
-            System.out.println("\"" + c.doc_ + "\"");
+            System.out.println("\"" + c.getDoc() + "\"");
         }
     }
 
@@ -223,9 +223,9 @@ public class API {
             dumpParam((ParamAPI)(iter.next()), indent + indentInc);
         }
         // Display documentation
-        if (m.doc_ != null) {
+        if (m.getDoc() != null) {
             System.out.print("Method doc block:");
-            System.out.println("\"" + m.doc_ + "\"");
+            System.out.println("\"" + m.getDoc() + "\"");
         }
     }
 
@@ -250,9 +250,9 @@ public class API {
         // Dump modifiers common to all
         dumpModifiers(f.modifiers_, indent);
         // Display documentation
-        if (f.doc_ != null)
+        if (f.getDoc() != null)
             System.out.print("Field doc block:");
-            System.out.println("\"" + f.doc_ + "\"");
+            System.out.println("\"" + f.getDoc() + "\"");
     }
 
     /** 
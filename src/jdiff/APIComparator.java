@@ -1,6 +1,8 @@
 package jdiff;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This class contains method to compare two API objects.
@@ -29,10 +31,95 @@ public class APIComparator {
         apiDiff = new APIDiff();
     }   
 
-    /** For easy local access to the old API object. */
-    private static API oldAPI_;
+    /** 
+     * Constructor for a comparator which compares one package or class on
+     * the pool of threads of another comparator. The changes which it finds
+     * are kept apart until they are added to those of the other comparator.
+     */
+    private APIComparator(APIComparator parent) {
+        apiDiff = new APIDiff(false);
+        oldAPI_ = parent.oldAPI_;
+        newAPI_ = parent.newAPI_;
+        pool_ = parent.pool_;
+        diffCache_ = parent.diffCache_;
+        shared_ = parent.shared_;
+    }
+
+    /**
+     * Set the listener which is told of each change as it is settled.
+     *
+     * @param listener The listener, or null for none.
+     * @param keepChanges If false, the changes to packages are only given 
+     *                    to the listener, and are not added to apiDiff, 
+     *                    so they can be garbage collected once the listener 
+     *                    is done with them. The report cannot then be 
+     *                    generated from apiDiff.
+     */
+    public void setListener(ChangeListener listener, boolean keepChanges) {
+        listener_ = listener;
+        keepChanges_ = keepChanges;
+    }
+
+    /** 
+     * Compare the APIs on a pool of threads and with a diff cache which 
+     * are shared with the comparators of other pairs of APIs, rather than
+     * with its own. They are not stopped or saved by this comparator. The
+     * APIs are shared too, so they must have been sorted with sortAPI.
+     *
+     * @param pool The pool of threads, or null to compare the packages 
+     *             one after another.
+     * @param diffCache The diff cache, or null for none.
+     */
+    void share(ForkJoinPool pool, ClassDiffCache diffCache) {
+        pool_ = pool;
+        diffCache_ = diffCache;
+        shared_ = true;
+    }
+
+    /** 
+     * For easy local access to the old API object. This and newAPI_ are
+     * set before any packages are compared, and are only read while they
+     * are compared, so they can be shared by all the threads.
+     */
+    private API oldAPI_ = null;
     /** For easy local access to the new API object. */
-    private static API newAPI_;
+    private API newAPI_ = null;
+
+    /** 
+     * The pool of threads on which packages and classes are compared, or 
+     * null if they are compared one after another.
+     */
+    private ForkJoinPool pool_ = null;
+
+    /** 
+     * The difference found by this comparator when it compared one package
+     * or class on the pool of threads.
+     */
+    private double differs_ = 0.0;
+
+    /** The listener which is told of each change as it is settled, or null. */
+    private ChangeListener listener_ = null;
+
+    /** Set if the changes to packages are added to apiDiff. */
+    private boolean keepChanges_ = true;
+
+    /** Set once the listener wants no more changes. */
+    private boolean done_ = false;
+
+    /** 
+     * The cache of the changes found in each class, which is shared by 
+     * all the threads, or null if there is none.
+     */
+    private ClassDiffCache diffCache_ = null;
+
+    /** Set if the APIs, the pool of threads and the diff cache are shared. */
+    private boolean shared_ = false;
+
+    /** 
+     * The list to which the differences in the documentation of the class 
+     * being compared are added, so that they can be cached, or null.
+     */
+    private List classDocDiffs_ = null; // DiffOutput
 
     /** 
      * Compare two APIs. 
@@ -41,18 +128,21 @@ public class APIComparator {
         System.out.println("JDiff: comparing the old and new APIs ...");
         oldAPI_ = oldAPI;
         newAPI_ = newAPI;
+        startPool();
 
-        double differs = 0.0;
+        // The difference for each package, in the order in which they are 
+        // found, so that they are always added up in the same order
+        List differences = new ArrayList(); // Double or ForkJoinTask
 
         apiDiff.oldAPIName_ = oldAPI.name_;
         apiDiff.newAPIName_ = newAPI.name_;
 
-        Collections.sort(oldAPI.packages_);
-        Collections.sort(newAPI.packages_);
+        sort(oldAPI.packages_);
+        sort(newAPI.packages_);
 
         // Find packages which were removed in the new API
         Iterator iter = oldAPI.packages_.iterator();
-        while (iter.hasNext()) {
+        while (iter.hasNext() && !done_) {
             PackageAPI oldPkg = (PackageAPI)(iter.next());
             // This search is looking for an *exact* match. This is true in
             // all the *API classes.
@@ -66,24 +156,26 @@ public class APIComparator {
                 if (existsNew != -1) {
                     // Package by the same name exists in both APIs
                     // but there has been some or other change.
-                    differs += 2.0 * comparePackages(oldPkg, (PackageAPI)(newAPI.packages_.get(existsNew)));
+                    addComparison(differences, oldPkg, newAPI.packages_.get(existsNew));
                 }  else {
                     if (trace)
                         System.out.println("Package " + oldPkg.name_ + " was removed");
-                    apiDiff.packagesRemoved.add(oldPkg);
-                    differs += 1.0;
+                    removedOrAdded(differences, oldPkg, true);
                 }
             } else {
                 // The package exists unchanged in name or doc, but may 
                 // differ in classes and their members, so it still needs to 
                 // be compared.
-                differs += 2.0 * comparePackages(oldPkg, (PackageAPI)(newAPI.packages_.get(idx)));
+                addComparison(differences, oldPkg, newAPI.packages_.get(idx));
             }
+            // Keep only a few packages waiting to be compared
+            if (pool_ != null)
+                joinComparisons(differences, compareThreads * 4, false);
         } // while (iter.hasNext())
 
         // Find packages which were added or changed in the new API
         iter = newAPI.packages_.iterator();
-        while (iter.hasNext()) {
+        while (iter.hasNext() && !done_) {
             PackageAPI newPkg = (PackageAPI)(iter.next());
             int idx = Collections.binarySearch(oldAPI.packages_, newPkg);
             if (idx < 0) {
@@ -95,17 +187,90 @@ public class APIComparator {
                 } else {
                     if (trace)
                         System.out.println("Package " + newPkg.name_ + " was added");
-                    apiDiff.packagesAdded.add(newPkg);
-                    differs += 1.0;
+                    removedOrAdded(differences, newPkg, false);
                 }
             } else {
                 // It will already have been compared above.
             }
         } // while (iter.hasNext())
 
-        // Now that the numbers of members removed and added are known
-        // we can deduce more information about changes.
-        MergeChanges.mergeRemoveAdd(apiDiff);
+        double differs = addDifferences(differences, false);
+        stopPool();
+        summarize(differs, oldAPI.packages_.size() + newAPI.packages_.size());
+    }   
+
+    /** 
+     * Compare two APIs one package at a time, as each package is read from
+     * the XML files. The packages are merged by name, which relies on the 
+     * packages being in sorted order in both files. Only the packages 
+     * which were removed or added, and the classes and members which 
+     * changed, are kept after each package has been compared.
+     */
+    public void compareAPIs(PackageReader oldReader, PackageReader newReader) {
+        System.out.println("JDiff: comparing the old and new APIs one package at a time ...");
+        // Only the classes which are inherited from are needed for links
+        oldAPI_ = oldReader.getIndex();
+        newAPI_ = newReader.getIndex();
+        startPool();
+
+        List differences = new ArrayList(); // Double or ForkJoinTask
+
+        PackageAPI oldPkg = oldReader.next();
+        PackageAPI newPkg = newReader.next();
+        while ((oldPkg != null || newPkg != null) && !done_) {
+            int cmp = 0;
+            if (oldPkg == null)
+                cmp = 1;
+            else if (newPkg == null)
+                cmp = -1;
+            else
+                cmp = oldPkg.name_.compareTo(newPkg.name_);
+            if (cmp == 0) {
+                // The package exists in both APIs, and may differ in its 
+                // doc, classes or their members
+                addComparison(differences, oldPkg, newPkg);
+                // Keep only a few packages waiting to be compared
+                if (pool_ != null)
+                    joinComparisons(differences, compareThreads * 4, false);
+                oldPkg = oldReader.next();
+                newPkg = newReader.next();
+            } else if (cmp < 0) {
+                if (trace)
+                    System.out.println("Package " + oldPkg.name_ + " was removed");
+                removedOrAdded(differences, oldPkg, true);
+                oldPkg = oldReader.next();
+            } else {
+                if (trace)
+                    System.out.println("Package " + newPkg.name_ + " was added");
+                removedOrAdded(differences, newPkg, false);
+                newPkg = newReader.next();
+            }
+        }
+        double differs = addDifferences(differences, false);
+        stopPool();
+        apiDiff.oldAPIName_ = oldAPI_.name_;
+        apiDiff.newAPIName_ = newAPI_.name_;
+
+        summarize(differs, oldReader.numPackages() + newReader.numPackages());
+    }   
+
+    /** 
+     * Deduce more information from the differences found, and calculate 
+     * the percentage change between the APIs.
+     *
+     * @param differs The sum of the differences found in each package.
+     * @param numPackages The number of packages in both APIs.
+     */
+    private void summarize(double differs, int numPackages) {
+        // The members removed and added in each class have already been
+        // merged into changes where possible, as each package was compared.
+
+        // If the listener stopped the comparison, not all the packages 
+        // were compared, so the percentage change is not known
+        if (done_) {
+            Diff.closeDiffFile();
+            return;
+        }
 
 // The percent change statistic reported for all elements in each API is  
 // defined recursively as follows:
@@ -120,7 +285,7 @@ public class APIComparator {
 // XML was written out.
 // Note that this doesn't count changes in the modifiers of classes and 
 // packages. Other changes in members are counted.
-        Long denom = new Long(oldAPI.packages_.size() + newAPI.packages_.size());
+        Long denom = new Long(numPackages);
         // This should never be zero because an API always has packages?
         if (denom.intValue() == 0) {
             System.out.println("Error: no packages found in the APIs.");
@@ -144,6 +309,122 @@ public class APIComparator {
         Diff.closeDiffFile();
     }   
 
+    /** 
+     * Start the pool of threads on which packages and classes are compared,
+     * if more than one thread was requested, and open the diff cache, if 
+     * one was requested.
+     */
+    private void startPool() {
+        if (shared_)
+            return;
+        if (diffCacheFile != null)
+            diffCache_ = new ClassDiffCache(diffCacheFile);
+        if (compareThreads > 1)
+            pool_ = new ForkJoinPool(compareThreads);
+    }
+
+    /** 
+     * Stop the pool of threads, and save the diff cache, once all the 
+     * comparisons are done.
+     */
+    private void stopPool() {
+        if (shared_)
+            return;
+        if (pool_ != null) {
+            pool_.shutdown();
+            pool_ = null;
+        }
+        if (diffCache_ != null) {
+            diffCache_.save();
+            diffCache_ = null;
+        }
+    }
+
+    /**
+     * Compare two packages, or two classes in the package being compared,
+     * and add twice their difference to the list of differences. If there 
+     * is a pool of threads, then the comparison is started on the pool, 
+     * with its own comparator so that the changes which it finds are kept
+     * apart, and the task is added to the list instead.
+     */
+    private void addComparison(List differences, final Object oldElement, 
+                               final Object newElement) {
+        boolean isPackage = oldElement instanceof PackageAPI;
+        if (pool_ == null) {
+            if (isPackage)
+                differences.add(Double.valueOf(2.0 * comparePackages((PackageAPI)oldElement, (PackageAPI)newElement)));
+            else
+                differences.add(Double.valueOf(2.0 * compareClasses((ClassAPI)oldElement, (ClassAPI)newElement, pkgDiff)));
+            return;
+        }
+        final APIComparator comparator = new APIComparator(this);
+        if (!isPackage)
+            comparator.pkgDiff = new PackageDiff(pkgDiff.name_);
+        ForkJoinTask task = ForkJoinTask.adapt(() -> {
+            if (oldElement instanceof PackageAPI)
+                comparator.differs_ = comparator.comparePackages((PackageAPI)oldElement, (PackageAPI)newElement);
+            else
+                comparator.differs_ = comparator.compareClasses((ClassAPI)oldElement, (ClassAPI)newElement, comparator.pkgDiff);
+            return comparator;
+        });
+        if (ForkJoinTask.inForkJoinPool())
+            task.fork();
+        else
+            pool_.execute(task);
+        differences.add(task);
+    }
+
+    /**
+     * Wait for the comparisons in the list of differences to finish, 
+     * oldest first, until no more than the given number are left. The 
+     * changes which each one found are added to those found by this 
+     * comparator, in the same order as if the comparisons had been done
+     * one after another, and the comparison is replaced by its difference.
+     *
+     * @param ofClasses Set if the comparisons are of classes, rather than
+     *                  of packages.
+     */
+    private void joinComparisons(List differences, int maxLeft, boolean ofClasses) {
+        int numLeft = 0;
+        for (int i = 0; i < differences.size(); i++) {
+            if (differences.get(i) instanceof ForkJoinTask)
+                numLeft++;
+        }
+        for (int i = 0; i < differences.size() && numLeft > maxLeft && !done_; i++) {
+            if (!(differences.get(i) instanceof ForkJoinTask))
+                continue;
+            APIComparator comparator = (APIComparator)((ForkJoinTask)differences.get(i)).join();
+            if (ofClasses)
+                pkgDiff.classesChanged.addAll(comparator.pkgDiff.classesChanged);
+            else if (comparator.apiDiff.packagesChanged.size() != 0)
+                changedPackage((PackageDiff)(comparator.apiDiff.packagesChanged.get(0)));
+            differences.set(i, Double.valueOf(2.0 * comparator.differs_));
+            numLeft--;
+        }
+    }
+
+    /**
+     * Return the sum of the differences in the list, in order, once all 
+     * the comparisons in it have finished. If the listener wants no more
+     * changes, the comparisons which have not been joined are cancelled.
+     *
+     * @param ofClasses Set if the comparisons are of classes, rather than
+     *                  of packages.
+     */
+    private double addDifferences(List differences, boolean ofClasses) {
+        joinComparisons(differences, 0, ofClasses);
+        double differs = 0.0;
+        Iterator iter = differences.iterator();
+        while (iter.hasNext()) {
+            Object difference = iter.next();
+            if (difference instanceof ForkJoinTask)
+                ((ForkJoinTask)difference).cancel(false);
+            else
+                differs += ((Double)difference).doubleValue();
+        }
+        return differs;
+    }
+
     /** 
      * Compare two packages.
      */
@@ -151,11 +432,16 @@ public class APIComparator {
         if (trace)
             System.out.println("Comparing old package " + oldPkg.name_ + 
                                " and new package " + newPkg.name_);
+        if (sameFingerprints(oldPkg, newPkg)) {
+            if (trace)
+                System.out.println("Package " + oldPkg.name_ + " has the same fingerprint");
+            return 0.0;
+        }
         pkgDiff = new PackageDiff(oldPkg.name_);
-        double differs = 0.0;
+        List differences = new ArrayList(); // Double or ForkJoinTask
 
-        Collections.sort(oldPkg.classes_);
-        Collections.sort(newPkg.classes_);
+        sort(oldPkg.classes_);
+        sort(newPkg.classes_);
       
         // Find classes which were removed in the new package
         Iterator iter = oldPkg.classes_.iterator();
@@ -173,17 +459,17 @@ public class APIComparator {
                 if (existsNew != -1) {
                     // Class by the same name exists in both packages
                     // but there has been some or other change.
-                    differs += 2.0 * compareClasses(oldClass, (ClassAPI)(newPkg.classes_.get(existsNew)), pkgDiff);
+                    addComparison(differences, oldClass, newPkg.classes_.get(existsNew));
                 }  else {
                     if (trace)
                         System.out.println("  Class " + oldClass.name_ + " was removed");
                     pkgDiff.classesRemoved.add(oldClass);
-                    differs += 1.0;
+                    differences.add(Double.valueOf(1.0));
                 }
             } else {
                 // The class exists unchanged in name or modifiers, but may 
                 // differ in members, so it still needs to be compared.
-                differs += 2.0 * compareClasses(oldClass, (ClassAPI)(newPkg.classes_.get(idx)), pkgDiff);
+                addComparison(differences, oldClass, newPkg.classes_.get(idx));
             }
         } // while (iter.hasNext())
 
@@ -202,39 +488,92 @@ public class APIComparator {
                     if (trace)
                         System.out.println("  Class " + newClass.name_ + " was added");
                     pkgDiff.classesAdded.add(newClass);
-                    differs += 1.0;
+                    differences.add(Double.valueOf(1.0));
                 }
             } else {
                 // It will already have been compared above.
             }
         } // while (iter.hasNext())
+        double differs = addDifferences(differences, true);
 
         // Check if the only change was in documentation. Bug 472521.
         boolean differsFlag = false;
-        if (docChanged(oldPkg.doc_, newPkg.doc_)) {
+        if (docChanged(oldPkg.doc_, oldPkg.lazyDoc_, newPkg.doc_, newPkg.lazyDoc_)) {
             String link = "<a href=\"pkg_" + oldPkg.name_ + HTMLReportGenerator.reportFileExt + "\" class=\"hiddenlink\">";
             String id = oldPkg.name_ + "!package";
             String title = link + "Package <b>" + oldPkg.name_ + "</b></a>";
-            pkgDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, null, oldPkg.doc_, newPkg.doc_, id, title);
+            pkgDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, null, oldPkg.getDoc(), newPkg.getDoc(), id, title);
             differsFlag = true;
         }
 
-        // Only add to the parent Diff object if some difference has been found
-        if (differs != 0.0 || differsFlag) 
-            apiDiff.packagesChanged.add(pkgDiff);
-
         Long denom = new Long(oldPkg.classes_.size() + newPkg.classes_.size());
+        double res = 0.0;
         // This should never be zero because a package always has classes?
         if (denom.intValue() == 0) {
             System.out.println("Warning: no classes found in the package " + oldPkg.name_);
-            return 0.0;
+        } else {
+            if (trace)
+                System.out.println("Package " + pkgDiff.name_ + " had a difference of " + differs + "/" + denom.intValue());
+            pkgDiff.pdiff = 100.0 * differs/denom.doubleValue();
+            res = differs/denom.doubleValue();
         }
-        if (trace)
-            System.out.println("Package " + pkgDiff.name_ + " had a difference of " + differs + "/" + denom.intValue());
-        pkgDiff.pdiff = 100.0 * differs/denom.doubleValue();
-        return differs/denom.doubleValue();
+
+        // Only add to the parent Diff object if some difference has been found
+        if (differs != 0.0 || differsFlag) {
+            // Now that the numbers of members removed and added are known
+            // we can deduce more information about changes.
+            MergeChanges.mergeRemoveAdd(pkgDiff);
+            changedPackage(pkgDiff);
+        }
+        return res;
     } // comparePackages()
 
+    /**
+     * Record a package which was removed or added, and add its difference
+     * to the list of differences. If there is a listener, the comparisons
+     * of the packages before it are finished first, so that the listener 
+     * is told of the packages in order.
+     */
+    private void removedOrAdded(List differences, PackageAPI pkg, boolean removed) {
+        differences.add(Double.valueOf(1.0));
+        if (removed && keepChanges_)
+            apiDiff.packagesRemoved.add(pkg);
+        else if (keepChanges_)
+            apiDiff.packagesAdded.add(pkg);
+        if (listener_ == null)
+            return;
+        joinComparisons(differences, 0, false);
+        if (done_)
+            return;
+        if (removed)
+            listener_.packageRemoved(pkg);
+        else
+            listener_.packageAdded(pkg);
+        done_ = listener_.isDone();
+    }
+
+    /**
+     * Record a package which changed, and tell the listener of the changes
+     * to its classes and then of the package.
+     */
+    private void changedPackage(PackageDiff pkgDiff) {
+        if (keepChanges_)
+            apiDiff.packagesChanged.add(pkgDiff);
+        if (listener_ == null)
+            return;
+        Iterator iter = pkgDiff.classesRemoved.iterator();
+        while (iter.hasNext())
+            listener_.classRemoved(pkgDiff, (ClassAPI)(iter.next()));
+        iter = pkgDiff.classesAdded.iterator();
+        while (iter.hasNext())
+            listener_.classAdded(pkgDiff, (ClassAPI)(iter.next()));
+        iter = pkgDiff.classesChanged.iterator();
+        while (iter.hasNext())
+            listener_.classChanged(pkgDiff, (ClassDiff)(iter.next()));
+        listener_.packageChanged(pkgDiff);
+        done_ = listener_.isDone();
+    }
+
     /** 
      * Compare two classes. 
      *
@@ -244,6 +583,46 @@ public class APIComparator {
         if (trace)
             System.out.println("  Comparing old class " + oldClass.name_ + 
                                " and new class " + newClass.name_);
+        if (sameFingerprints(oldClass, newClass)) {
+            if (trace)
+                System.out.println("  Class " + oldClass.name_ + " has the same fingerprint");
+            return 0.0;
+        }
+        if (diffCache_ == null)
+            return diffClasses(oldClass, newClass, pkgDiff);
+
+        // Reuse the changes from an earlier run if the same two versions 
+        // of the class, and of the classes which it inherits from, were 
+        // compared then
+        String key = ClassDiffCache.key(pkgDiff.name_, oldClass, newClass, 
+                                        oldAPI_, newAPI_);
+        if (key == null)
+            return diffClasses(oldClass, newClass, pkgDiff);
+        ClassDiffCache.Entry entry = diffCache_.get(key, pkgDiff.name_, oldClass, newClass);
+        if (entry != null) {
+            if (trace)
+                System.out.println("  Class " + oldClass.name_ + " was found in the diff cache");
+            if (entry.classDiff_ != null)
+                pkgDiff.classesChanged.add(entry.classDiff_);
+            Diff.addDocDiffs(entry.docDiffs_);
+            return entry.differs_;
+        }
+        entry = new ClassDiffCache.Entry();
+        int numChanged = pkgDiff.classesChanged.size();
+        classDocDiffs_ = entry.docDiffs_;
+        entry.differs_ = diffClasses(oldClass, newClass, pkgDiff);
+        classDocDiffs_ = null;
+        if (pkgDiff.classesChanged.size() > numChanged)
+            entry.classDiff_ = (ClassDiff)pkgDiff.classesChanged.get(numChanged);
+        diffCache_.put(key, entry);
+        return entry.differs_;
+    } // compareClasses()
+
+    /** 
+     * Compare two classes which do not have the same fingerprints, and 
+     * add their changes to the package if they differ.
+     */
+    private double diffClasses(ClassAPI oldClass, ClassAPI newClass, PackageDiff pkgDiff) {
         boolean differsFlag = false;
         double differs = 0.0;
         ClassDiff classDiff = new ClassDiff(oldClass.name_);
@@ -275,13 +654,13 @@ public class APIComparator {
             differsFlag = true;
         }
         // Track changes in documentation
-        if (docChanged(oldClass.doc_, newClass.doc_)) {
+        if (docChanged(oldClass.doc_, oldClass.lazyDoc_, newClass.doc_, newClass.lazyDoc_)) {
             String fqName = pkgDiff.name_ + "." + classDiff.name_;
             String link = "<a href=\"" + fqName + HTMLReportGenerator.reportFileExt + "\" class=\"hiddenlink\">";
             String id = pkgDiff.name_ + "." + classDiff.name_ + "!class";
             String title = link + "Class <b>" + classDiff.name_ + "</b></a>";
             classDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_,
- classDiff.name_, oldClass.doc_, newClass.doc_, id, title);
+ classDiff.name_, oldClass.getDoc(), newClass.getDoc(), id, title, classDocDiffs_);
             differsFlag = true;
         }
         // All other modifiers
@@ -349,7 +728,7 @@ public class APIComparator {
              System.out.println("  Class " + classDiff.name_ + " had a difference of " + differs + "/" + denom.intValue());
          classDiff.pdiff = 100.0 * differs/denom.doubleValue();
          return differs/denom.doubleValue();
-    } // compareClasses()
+    } // diffClasses()
 
     /** 
      * Compare all the constructors in two classes. 
@@ -364,15 +743,16 @@ public class APIComparator {
         boolean differs = false;
         boolean singleCtor = false; // Set if there is only one ctor
         
-        Collections.sort(oldClass.ctors_);
-        Collections.sort(newClass.ctors_);
+        sort(oldClass.ctors_);
+        sort(newClass.ctors_);
+        Map oldByType = indexCtors(oldClass.ctors_);
+        Map newByType = indexCtors(newClass.ctors_);
       
         // Find ctors which were removed in the new class
         Iterator iter = oldClass.ctors_.iterator();
         while (iter.hasNext()) {
             ConstructorAPI oldCtor = (ConstructorAPI)(iter.next());
-            int idx = Collections.binarySearch(newClass.ctors_, oldCtor);
-            if (idx < 0) {
+            if (!containsSame(newByType, oldCtor.type_, oldCtor)) {
                 int oldSize = oldClass.ctors_.size();
                 int newSize = newClass.ctors_.size();
                 if (oldSize == 1 && oldSize == newSize) {
@@ -385,7 +765,7 @@ public class APIComparator {
                     memberDiff.newType_ = newCtor.type_;
                     memberDiff.newExceptions_ = newCtor.exceptions_;
                     // Track changes in documentation
-                    if (docChanged(oldCtor.doc_, newCtor.doc_)) {
+                    if (docChanged(oldCtor.doc_, oldCtor.lazyDoc_, newCtor.doc_, newCtor.lazyDoc_)) {
                         String type = memberDiff.newType_;
                         if (type.compareTo("void") == 0)
                             type = "";
@@ -396,7 +776,7 @@ public class APIComparator {
                         String title = link1 + "Class <b>" + classDiff.name_ + 
                             "</b></a>, " + link2 + "constructor <b>" + classDiff.name_ + "(" + HTMLReportGenerator.simpleName(type) + ")</b></a>";
                         memberDiff.documentationChange_ = Diff.saveDocDiffs(
-                            pkgDiff.name_, classDiff.name_, oldCtor.doc_, newCtor.doc_, id, title);
+                            pkgDiff.name_, classDiff.name_, oldCtor.getDoc(), newCtor.getDoc(), id, title, classDocDiffs_);
                     }
                     String modifiersChange = oldCtor.modifiers_.diff(newCtor.modifiers_);
                     if (modifiersChange != null && modifiersChange.indexOf("Change from deprecated to undeprecated") != -1) {
@@ -420,8 +800,7 @@ public class APIComparator {
         iter = newClass.ctors_.iterator();
         while (iter.hasNext()) {
             ConstructorAPI newCtor = (ConstructorAPI)(iter.next());
-            int idx = Collections.binarySearch(oldClass.ctors_, newCtor);
-            if (idx < 0) {
+            if (!containsSame(oldByType, newCtor.type_, newCtor)) {
                 if (!singleCtor) {
                     if (trace)
                         System.out.println("    Constructor " + oldClass.name_ + " was added");
@@ -446,6 +825,10 @@ public class APIComparator {
      * changing a parameter's type would cause the method to be seen as 
      * removed and added. To avoid this for the simple case, check for before 
      * recording a method as removed or added.
+     *
+     * The methods of each class are indexed by name, and by name and 
+     * signature, so that only the methods which could match are compared,
+     * rather than every method in the other class.
      */
     public boolean compareAllMethods(ClassAPI oldClass, ClassAPI newClass, ClassDiff classDiff) {
         if (trace)
@@ -454,47 +837,35 @@ public class APIComparator {
                                newClass.methods_.size());
         boolean differs = false;
         
-        Collections.sort(oldClass.methods_);
-        Collections.sort(newClass.methods_);
+        sort(oldClass.methods_);
+        sort(newClass.methods_);
+        Map oldByName = new HashMap(); // String -> List of MethodAPI
+        Map oldBySig = new HashMap(); // String -> List of MethodAPI
+        indexMethods(oldClass.methods_, oldByName, oldBySig);
+        Map newByName = new HashMap(); // String -> List of MethodAPI
+        Map newBySig = new HashMap(); // String -> List of MethodAPI
+        indexMethods(newClass.methods_, newByName, newBySig);
       
         // Find methods which were removed in the new class
         Iterator iter = oldClass.methods_.iterator();
         while (iter.hasNext()) {
             MethodAPI oldMethod = (MethodAPI)(iter.next());
-            int idx = -1;
-            MethodAPI[] methodArr = new MethodAPI[newClass.methods_.size()];
-            methodArr = (MethodAPI[])newClass.methods_.toArray(methodArr);
-            for (int methodIdx = 0; methodIdx < methodArr.length; methodIdx++) {
-                MethodAPI newMethod = methodArr[methodIdx];
-                if (oldMethod.compareTo(newMethod) == 0) {
-                    idx  = methodIdx;
-                    break;
-                }
-            }
 // NOTE: there was a problem with the binarySearch for 
 // java.lang.Byte.toString(byte b) returning -16 when the compareTo method
-// returned 0 on entry 13. Changed to use arrays instead, so maybe it was
-// an issue with methods having another List of params used indirectly by 
-// compareTo(), unlike constructors and fields?
-//            int idx = Collections.binarySearch(newClass.methods_, oldMethod);
-            if (idx < 0) {
+// returned 0 on entry 13, so the methods with the same name and signature
+// are searched instead.
+            if (!containsSame(newBySig, methodKey(oldMethod), oldMethod)) {
                 // If there is only one instance of a method with this name 
                 // in both the old and new class, then treat it as changed,
                 // rather than removed and added.
-                // Find how many instances of this method name there are in
-                // the old and new class. The equals comparator is just on 
-                // the method name.
-                int startOld = oldClass.methods_.indexOf(oldMethod); 
-                int endOld = oldClass.methods_.lastIndexOf(oldMethod);
-                int startNew = newClass.methods_.indexOf(oldMethod); 
-                int endNew = newClass.methods_.lastIndexOf(oldMethod);
-
-                if (startOld != -1 && startOld == endOld && 
-                    startNew != -1 && startNew == endNew) {
-                    MethodAPI newMethod = (MethodAPI)(newClass.methods_.get(startNew));
+                List sameNameNew = (List)newByName.get(oldMethod.name_);
+                if (((List)oldByName.get(oldMethod.name_)).size() == 1 &&
+                    sameNameNew != null && sameNameNew.size() == 1) {
+                    MethodAPI newMethod = (MethodAPI)(sameNameNew.get(0));
                     // Only one method with that name exists in both packages,
                     // so it is valid to compare the two methods. We know it 
-                    // has changed, because the binarySearch did not find it.
+                    // has changed, because no method with the same 
+                    // signature matched it.
                     if (oldMethod.inheritedFrom_ == null || 
                         newMethod.inheritedFrom_ == null) {
                         // We also know that at least one of the methods is 
@@ -521,27 +892,11 @@ public class APIComparator {
             // Only concerned with locally defined methods
             if (newMethod.inheritedFrom_ != null)
                 continue;
-            int idx = -1;
-            MethodAPI[] methodArr = new MethodAPI[oldClass.methods_.size()];
-            methodArr = (MethodAPI[])oldClass.methods_.toArray(methodArr);
-            for (int methodIdx = 0; methodIdx < methodArr.length; methodIdx++) {
-                MethodAPI oldMethod = methodArr[methodIdx];
-                if (newMethod.compareTo(oldMethod) == 0) {
-                    idx  = methodIdx;
-                    break;
-                }
-            }
-// See note above about searching an array instead of binarySearch
-//            int idx = Collections.binarySearch(oldClass.methods_, newMethod);
-            if (idx < 0) {
+            if (!containsSame(oldBySig, methodKey(newMethod), newMethod)) {
                 // See comments above
-                int startOld = oldClass.methods_.indexOf(newMethod); 
-                int endOld = oldClass.methods_.lastIndexOf(newMethod);
-                int startNew = newClass.methods_.indexOf(newMethod); 
-                int endNew = newClass.methods_.lastIndexOf(newMethod);
-
-                if (startOld != -1 && startOld == endOld && 
-                    startNew != -1 && startNew == endNew) {
+                List sameNameOld = (List)oldByName.get(newMethod.name_);
+                if (sameNameOld != null && sameNameOld.size() == 1 &&
+                    ((List)newByName.get(newMethod.name_)).size() == 1) {
                     // Don't mark a method as added if it was marked as changed
                     // The comparison will have been done just above here.
                 } else {
@@ -632,7 +987,7 @@ public class APIComparator {
         }
 
         // Track changes in documentation
-        if (docChanged(oldMethod.doc_, newMethod.doc_)) {
+        if (docChanged(oldMethod.doc_, oldMethod.lazyDoc_, newMethod.doc_, newMethod.lazyDoc_)) {
             String sig = methodDiff.newSignature_;
             if (sig.compareTo("void") == 0)
                 sig = "";
@@ -642,7 +997,7 @@ public class APIComparator {
             String id = pkgDiff.name_ + "." + classDiff.name_ + ".dmethod." + newMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")";
             String title = link1 + "Class <b>" + classDiff.name_ + "</b></a>, " +
                 link2 + HTMLReportGenerator.simpleName(methodDiff.newType_) + " <b>" + newMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")</b></a>";
-            methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, oldMethod.doc_, newMethod.doc_, id, title);
+            methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, oldMethod.getDoc(), newMethod.getDoc(), id, title, classDocDiffs_);
             differs = true;
         }
 
@@ -684,22 +1039,23 @@ public class APIComparator {
                                + newClass.fields_.size());
         boolean differs = false;
         
-        Collections.sort(oldClass.fields_);
-        Collections.sort(newClass.fields_);
+        sort(oldClass.fields_);
+        sort(newClass.fields_);
+        Map oldByName = indexFields(oldClass.fields_);
+        Map newByName = indexFields(newClass.fields_);
       
         // Find fields which were removed in the new class
         Iterator iter = oldClass.fields_.iterator();
         while (iter.hasNext()) {
             FieldAPI oldField = (FieldAPI)(iter.next());
-            int idx = Collections.binarySearch(newClass.fields_, oldField);
-            if (idx < 0) {
+            if (!containsSame(newByName, oldField.name_, oldField)) {
                 // If there an instance of a field with the same name 
                 // in both the old and new class, then treat it as changed,
                 // rather than removed and added. There will never be more than
                 // one instance of a field with the same name in a class.
-                int existsNew = newClass.fields_.indexOf(oldField);
-                if (existsNew != -1) {
-                    FieldAPI newField = (FieldAPI)(newClass.fields_.get(existsNew));
+                List sameNameNew = (List)newByName.get(oldField.name_);
+                if (sameNameNew != null) {
+                    FieldAPI newField = (FieldAPI)(sameNameNew.get(0));
                     if (oldField.inheritedFrom_ == null || 
                         newField.inheritedFrom_ == null) {
                         // We also know that one of the fields is locally defined.
@@ -749,14 +1105,14 @@ public class APIComparator {
                             differs = true;
                         }
                         // Track changes in documentation
-                        if (docChanged(oldField.doc_, newField.doc_)) {
+                        if (docChanged(oldField.doc_, oldField.lazyDoc_, newField.doc_, newField.lazyDoc_)) {
                             String fqName = pkgDiff.name_ + "." + classDiff.name_;
                             String link1 = "<a href=\"" + fqName + HTMLReportGenerator.reportFileExt + "\" class=\"hiddenlink\">";
                             String link2 = "<a href=\"" + fqName + HTMLReportGenerator.reportFileExt + "#" + fqName + "." + newField.name_ + "\" class=\"hiddenlink\">";
                             String id = pkgDiff.name_ + "." + classDiff.name_ + ".field." + newField.name_;
                             String title = link1 + "Class <b>" + classDiff.name_ + "</b></a>, " +
                                 link2 + HTMLReportGenerator.simpleName(memberDiff.newType_) + " <b>" + newField.name_ + "</b></a>";
-                            memberDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, oldField.doc_, newField.doc_, id, title);
+                            memberDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, oldField.getDoc(), newField.getDoc(), id, title, classDocDiffs_);
                             differs = true;
                         }
                         
@@ -787,11 +1143,9 @@ public class APIComparator {
             // Only concerned with locally defined fields
             if (newField.inheritedFrom_ != null)
                 continue;
-            int idx = Collections.binarySearch(oldClass.fields_, newField);
-            if (idx < 0) {
+            if (!containsSame(oldByName, newField.name_, newField)) {
                 // See comments above
-                int existsOld = oldClass.fields_.indexOf(newField);
-                if (existsOld != -1) {
+                if (oldByName.containsKey(newField.name_)) {
                     // Don't mark a field as added if it was marked as changed
                 } else {
                     if (trace)
@@ -805,6 +1159,74 @@ public class APIComparator {
         return differs;
     } // compareFields()
 
+    /** Return the constructors in a list by their type. */
+    private static Map indexCtors(List ctors) {
+        Map index = new HashMap(); // String -> List of ConstructorAPI
+        Iterator iter = ctors.iterator();
+        while (iter.hasNext()) {
+            ConstructorAPI ctor = (ConstructorAPI)(iter.next());
+            addToIndex(index, ctor.type_, ctor);
+        }
+        return index;
+    }
+
+    /** 
+     * Add the methods in a list to an index by their name, and to an index
+     * by their name and signature.
+     */
+    private static void indexMethods(List methods, Map byName, Map bySig) {
+        Iterator iter = methods.iterator();
+        while (iter.hasNext()) {
+            MethodAPI method = (MethodAPI)(iter.next());
+            addToIndex(byName, method.name_, method);
+            addToIndex(bySig, methodKey(method), method);
+        }
+    }
+
+    /** Return the key of a method in an index by name and signature. */
+    private static String methodKey(MethodAPI method) {
+        return method.name_ + "(" + method.getSignature() + ")";
+    }
+
+    /** Return the fields in a list by their name. */
+    private static Map indexFields(List fields) {
+        Map index = new HashMap(); // String -> List of FieldAPI
+        Iterator iter = fields.iterator();
+        while (iter.hasNext()) {
+            FieldAPI field = (FieldAPI)(iter.next());
+            addToIndex(index, field.name_, field);
+        }
+        return index;
+    }
+
+    /** 
+     * Add a member to an index, after the members already there with the 
+     * same key.
+     */
+    private static void addToIndex(Map index, String key, Object member) {
+        List members = (List)index.get(key);
+        if (members == null) {
+            members = new ArrayList(1);
+            index.put(key, members);
+        }
+        members.add(member);
+    }
+
+    /** 
+     * Return true if any of the members with the given key in an index 
+     * has no differences from the given member.
+     */
+    private static boolean containsSame(Map index, String key, Comparable member) {
+        List members = (List)index.get(key);
+        if (members == null)
+            return false;
+        for (int i = 0; i < members.size(); i++) {
+            if (member.compareTo(members.get(i)) == 0)
+                return true;
+        }
+        return false;
+    }
+
     /** 
      * Decide if two blocks of documentation changed. 
      *
@@ -823,6 +1245,126 @@ public class APIComparator {
         return false;
     }
 
+    /**
+     * Decide if two blocks of documentation changed, where each is either
+     * held as text, or as a LazyDoc which has not been read in yet. Two
+     * LazyDoc objects are compared by the hash of their text, so the text
+     * is only read in if one of the blocks is held as text. A LazyDoc 
+     * with only a digest is compared with the hash of the other text.
+     *
+     * @return true if both are non-null and differ,
+     *              or if one is null and the other is not.
+     */
+    public static boolean docChanged(String oldDoc, LazyDoc oldLazyDoc,
+                                     String newDoc, LazyDoc newLazyDoc) {
+        if (!HTMLReportGenerator.reportDocChanges)
+            return false; // Don't even count doc changes as changes
+        if (oldLazyDoc != null && newLazyDoc != null)
+            return !oldLazyDoc.sameText(newLazyDoc);
+        if (oldLazyDoc != null && !oldLazyDoc.hasText())
+            return newDoc == null || !oldLazyDoc.sameText(newDoc);
+        if (newLazyDoc != null && !newLazyDoc.hasText())
+            return oldDoc == null || !newLazyDoc.sameText(oldDoc);
+        if (oldLazyDoc != null)
+            oldDoc = oldLazyDoc.getText();
+        if (newLazyDoc != null)
+            newDoc = newLazyDoc.getText();
+        return docChanged(oldDoc, newDoc);
+    }
+
+    /**
+     * Sort the packages of an API, and the classes and members in them,
+     * so that it can be compared with several other APIs at the same time.
+     */
+    static void sortAPI(API api) {
+        Collections.sort(api.packages_);
+        Iterator iter = api.packages_.iterator();
+        while (iter.hasNext()) {
+            PackageAPI pkg = (PackageAPI)(iter.next());
+            Collections.sort(pkg.classes_);
+            Iterator iter2 = pkg.classes_.iterator();
+            while (iter2.hasNext()) {
+                ClassAPI cls = (ClassAPI)(iter2.next());
+                Collections.sort(cls.ctors_);
+                Collections.sort(cls.methods_);
+                Collections.sort(cls.fields_);
+            }
+        }
+    }
+
+    /**
+     * Sort a list of packages, classes or members, unless the APIs are 
+     * shared, in which case they were sorted with sortAPI before any were
+     * compared. A shared API is never changed while it is compared, since
+     * another comparison may be reading the same lists.
+     */
+    private void sort(List list) {
+        if (!shared_)
+            Collections.sort(list);
+    }
+
+    /**
+     * Decide if two packages are the same because their fingerprints are
+     * the same, and none of their classes inherit from a class whose 
+     * fingerprint has changed.
+     */
+    private boolean sameFingerprints(PackageAPI oldPkg, PackageAPI newPkg) {
+        if (oldPkg.fingerprint_ == null || 
+            !oldPkg.fingerprint_.equals(newPkg.fingerprint_))
+            return false;
+        Iterator iter = oldPkg.classes_.iterator();
+        while (iter.hasNext()) {
+            if (!sameParents((ClassAPI)(iter.next())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decide if two classes are the same because their fingerprints are 
+     * the same, and they do not inherit from a class whose fingerprint 
+     * has changed. The fingerprint of a class does not cover the methods 
+     * and fields which it inherits, since these are only added when the 
+     * XML is read in.
+     */
+    private boolean sameFingerprints(ClassAPI oldClass, ClassAPI newClass) {
+        if (oldClass.fingerprint_ == null || 
+            !oldClass.fingerprint_.equals(newClass.fingerprint_))
+            return false;
+        return sameParents(oldClass);
+    }
+
+    /**
+     * Decide if the classes which a class inherits from are the same in 
+     * the old and new APIs. The class has the same parents in both APIs,
+     * since it has the same fingerprint.
+     */
+    private boolean sameParents(ClassAPI cls) {
+        if (!sameParent(cls.extends_))
+            return false;
+        Iterator iter = cls.implements_.iterator();
+        while (iter.hasNext()) {
+            if (!sameParent((String)(iter.next())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decide if a class which is inherited from is the same in the old and
+     * new APIs. Only the classes in each API are looked up, as they are
+     * when the inherited methods and fields are added.
+     */
+    private boolean sameParent(String fqName) {
+        if (fqName == null)
+            return true;
+        ClassAPI oldParent = (ClassAPI)oldAPI_.classes_.get(fqName);
+        ClassAPI newParent = (ClassAPI)newAPI_.classes_.get(fqName);
+        if (oldParent == null || newParent == null)
+            return oldParent == newParent;
+        return sameFingerprints(oldParent, newParent);
+    }
+
     /** 
      * Decide if two elements changed where they were defined. 
      *
@@ -848,7 +1390,7 @@ public class APIComparator {
     /** 
      * Generate a link to the Javadoc page for the given method.
      */
-    public static String linkToClass(MethodAPI m, boolean useNew) {
+    public String linkToClass(MethodAPI m, boolean useNew) {
         String sig = m.getSignature();
         if (sig.compareTo("void") == 0)
             sig = "";
@@ -858,7 +1400,7 @@ public class APIComparator {
     /** 
      * Generate a link to the Javadoc page for the given field.
      */
-    public static String linkToClass(FieldAPI m, boolean useNew) {
+    public String linkToClass(FieldAPI m, boolean useNew) {
         return linkToClass(m.inheritedFrom_, m.name_, null, useNew);
     }
 
@@ -869,7 +1411,7 @@ public class APIComparator {
      * table. Since there was no easy way to tell which type the link
      * should be, it is now just a link to the relevant Javadoc page.
      */
-    public static String linkToClass(String className, String memberName, 
+    public String linkToClass(String className, String memberName, 
                                      String memberType, boolean useNew) {
         if (!useNew && HTMLReportGenerator.oldDocPrefix == null) {
             return "<tt>" + className + "</tt>"; // No link possible
@@ -929,6 +1471,20 @@ public class APIComparator {
         return res;
     }
 
+    /** 
+     * The number of threads on which the packages, and the classes in each
+     * package, are compared. The changes found are the same whatever the 
+     * number of threads. Default is 1.
+     */
+    static int compareThreads = 1;
+
+    /** 
+     * The file in which the changes found in each class are kept, so that
+     * they can be reused when the same two versions of a class are 
+     * compared again, or null for none. Default is null.
+     */
+    static String diffCacheFile = null;
+
     /** Set to enable increased logging verbosity for debugging. */
     private boolean trace = false;
 }
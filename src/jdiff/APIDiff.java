@@ -29,8 +29,21 @@ public class APIDiff {
 
     /** Default constructor. */
     public APIDiff() {
-        oldAPIName_ = null;
-        newAPIName_ = null;
+        this(true);
+    }   
+
+    /** 
+     * Constructor.
+     *
+     * @param resetNames If not set, then the names of the APIs are left as
+     *                   they are. This is for the changes in some of the 
+     *                   packages, which are found on another thread.
+     */
+    APIDiff(boolean resetNames) {
+        if (resetNames) {
+            oldAPIName_ = null;
+            newAPIName_ = null;
+        }
         packagesAdded = new ArrayList(); // PackageAPI[]
         packagesRemoved = new ArrayList(); // PackageAPI[]
         packagesChanged = new ArrayList(); // PackageDiff[]
@@ -0,0 +1,131 @@
+package jdiff;
+
+import java.util.*;
+
+/**
+ * Decides which packages and classes are read in from the XML files
+ * representing the APIs. Packages and classes which are not to be read
+ * are skipped by the XML parser, without any objects being created
+ * for them, so comparing a small part of a large API uses only a small
+ * part of the memory.
+ *
+ * A pattern is either the fully qualified name of a package or class,
+ * which matches just that package or class, or a name followed by ".*",
+ * which matches that package or class and every package or class whose
+ * name starts with it, such as "org.apache.hadoop.fs.*". Patterns are
+ * given as lists separated by colons, like the Javadoc -exclude option.
+ *
+ * If any include patterns are given, only the matching packages and
+ * classes are read. A package or class which matches an exclude pattern
+ * is never read. Methods and fields inherited from a class which is not
+ * read are not added to its subclasses.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class APIFilter {
+
+    /** The patterns for the packages and classes to read. */
+    private static List includes_ = new ArrayList(); // String
+
+    /** The patterns for the packages and classes not to read. */
+    private static List excludes_ = new ArrayList(); // String
+
+    /** Remove all the patterns, so that everything is read. */
+    public static void reset() {
+        includes_.clear();
+        excludes_.clear();
+    }
+
+    /** Add a list of patterns separated by colons to the include patterns. */
+    public static void addIncludes(String patterns) {
+        addPatterns(includes_, patterns);
+    }
+
+    /** Add a list of patterns separated by colons to the exclude patterns. */
+    public static void addExcludes(String patterns) {
+        addPatterns(excludes_, patterns);
+    }
+
+    /** Add each of the patterns in the list to the given patterns. */
+    private static void addPatterns(List list, String patterns) {
+        StringTokenizer st = new StringTokenizer(patterns, ":");
+        while (st.hasMoreTokens()) {
+            String pattern = st.nextToken().trim();
+            if (pattern.length() != 0)
+                list.add(pattern);
+        }
+    }
+
+    /** Return true if any patterns have been given. */
+    public static boolean isSet() {
+        return includes_.size() != 0 || excludes_.size() != 0;
+    }
+
+    /**
+     * Return true if the package should be read. This is true if it is
+     * not excluded, and either it is included, or a class in it may be.
+     */
+    public static boolean readPackage(String pkgName) {
+        if (matchesAny(excludes_, pkgName))
+            return false;
+        if (includes_.size() == 0)
+            return true;
+        String prefix = pkgName + ".";
+        Iterator iter = includes_.iterator();
+        while (iter.hasNext()) {
+            String pattern = (String)(iter.next());
+            if (matches(pattern, pkgName) || pattern.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the package as a whole should be read, rather than
+     * just being read in case it contains classes which are included.
+     */
+    public static boolean includesPackage(String pkgName) {
+        if (matchesAny(excludes_, pkgName))
+            return false;
+        return includes_.size() == 0 || matchesAny(includes_, pkgName);
+    }
+
+    /**
+     * Return true if the class, in a package which is being read, should
+     * be read. This is true if it is not excluded, and either it or its
+     * package is included.
+     *
+     * @param pkgName The name of the package.
+     * @param className The name of the class within the package.
+     */
+    public static boolean readClass(String pkgName, String className) {
+        if (!isSet())
+            return true;
+        String fqName = pkgName + "." + className;
+        if (matchesAny(excludes_, fqName))
+            return false;
+        if (includes_.size() == 0)
+            return true;
+        return matchesAny(includes_, pkgName) || matchesAny(includes_, fqName);
+    }
+
+    /** Return true if the name matches any of the patterns. */
+    private static boolean matchesAny(List patterns, String name) {
+        Iterator iter = patterns.iterator();
+        while (iter.hasNext()) {
+            if (matches((String)(iter.next()), name))
+                return true;
+        }
+        return false;
+    }
+
+    /** Return true if the name matches the pattern. */
+    private static boolean matches(String pattern, String name) {
+        if (pattern.endsWith(".*")) {
+            int len = pattern.length() - 2;
+            return name.startsWith(pattern.substring(0, len)) &&
+                (name.length() == len || name.charAt(len) == '.');
+        }
+        return name.equals(pattern);
+    }
+}
@@ -21,9 +21,13 @@ class APIHandler extends DefaultHandler {
     /** The API object which is populated from the XML file. */
     public API api_;
 
+    /** The loader which adds each program element to the API object. */
+    XMLToAPI loader_;
+
     /** Default constructor. */
-    public APIHandler(API api, boolean createGlobalComments) {
-        api_ = api;
+    public APIHandler(XMLToAPI loader, boolean createGlobalComments) {
+        loader_ = loader;
+        api_ = loader.getAPI();
         createGlobalComments_ = createGlobalComments;
         tagStack = new LinkedList();
     }   
@@ -31,31 +35,54 @@ class APIHandler extends DefaultHandler {
     /** If set, then check that each comment is a sentence. */
     public static boolean checkIsSentence = false;
 
+    /** 
+     * If set, then check that each comment in this file is a sentence.
+     * Cleared when a file is read a second time, so that the warnings 
+     * are not repeated.
+     */
+    boolean checkSentences_ = checkIsSentence;
+
     /** 
      * Contains the name of the current package element type
      * where documentation is being added. Also used as the level
      * at which to add documentation into an element, i.e. class-level
      * or package-level.
      */
-    private String currentElement = null;
+    String currentElement = null;
 
     /** If set, then create the global list of comments. */
     private boolean createGlobalComments_ = false;
 
     /** Set if inside a doc element. */
-    private boolean inDoc = false;
+    boolean inDoc = false;
 
-    /** The current comment text being assembled. */
-    private String currentText = null;
+    /** 
+     * The depth within a package or class element which is being skipped
+     * because it is not to be read, or 0 if no element is being skipped.
+     */
+    private int skipDepth = 0;
+
+    /** 
+     * The current comment text being assembled. The buffer is reused for
+     * every doc block, so that the text is built in linear time and only
+     * one String is created for each doc block.
+     */
+    StringBuilder currentText = new StringBuilder(1024);
 
     /** The current text from deprecation, null if empty. */
-    private String currentDepText = null;
+    String currentDepText = null;
+
+    /** 
+     * The digest of the current doc block, if the XML file has only 
+     * digests of the doc blocks, or null.
+     */
+    String currentDigest = null;
 
     /** 
      * The stack of SingleComment objects awaiting the comment text 
      * currently being assembled. 
      */
-    private LinkedList tagStack = null;
+    LinkedList tagStack = null;
 
     /** Called at the start of the document. */
     public void startDocument() {
@@ -65,7 +92,6 @@ class APIHandler extends DefaultHandler {
     public void endDocument() {
         if (trace)
             api_.dump();
-        System.out.println(" finished");
     }
 
     /** Called when a new element is started. */
@@ -74,37 +100,57 @@ class APIHandler extends DefaultHandler {
 	 // The change to JAXP compliance produced this change.
 	if (localName.equals(""))
 	    localName = qName;
+        if (skipDepth != 0) {
+            skipDepth++;
+            return;
+        }
         if (localName.compareTo("api") == 0) {
             String apiName = attributes.getValue("name");
             String version = attributes.getValue("jdversion"); // Not used yet
-            XMLToAPI.nameAPI(apiName);
+            loader_.nameAPI(apiName);
         } else if (localName.compareTo("package") == 0) {
             currentElement = localName;
             String pkgName = attributes.getValue("name");
-            XMLToAPI.addPackage(pkgName);
+            if (!APIFilter.readPackage(pkgName)) {
+                skipDepth = 1;
+                return;
+            }
+            loader_.addPackage(pkgName);
+            api_.currPkg_.fingerprint_ = attributes.getValue("fingerprint");
+            api_.currPkg_.module_ = attributes.getValue("module");
         } else if (localName.compareTo("class") == 0) {
-            currentElement = localName;
             String className = attributes.getValue("name");
+            if (!APIFilter.readClass(api_.currPkg_.name_, className)) {
+                skipDepth = 1;
+                return;
+            }
+            currentElement = localName;
             String parentName = attributes.getValue("extends");
             boolean isAbstract = false;
             if (attributes.getValue("abstract").compareTo("true") == 0)
                 isAbstract = true;
-            XMLToAPI.addClass(className, parentName, isAbstract, getModifiers(attributes));
+            loader_.addClass(className, parentName, isAbstract, getModifiers(attributes));
+            api_.currClass_.fingerprint_ = attributes.getValue("fingerprint");
         } else if (localName.compareTo("interface") == 0) {
-            currentElement = localName;
             String className = attributes.getValue("name");
+            if (!APIFilter.readClass(api_.currPkg_.name_, className)) {
+                skipDepth = 1;
+                return;
+            }
+            currentElement = localName;
             String parentName = attributes.getValue("extends");
             boolean isAbstract = false;
             if (attributes.getValue("abstract").compareTo("true") == 0)
                 isAbstract = true;
-            XMLToAPI.addInterface(className, parentName, isAbstract, getModifiers(attributes));
+            loader_.addInterface(className, parentName, isAbstract, getModifiers(attributes));
+            api_.currClass_.fingerprint_ = attributes.getValue("fingerprint");
         } else if (localName.compareTo("implements") == 0) {
             String interfaceName = attributes.getValue("name");
-            XMLToAPI.addImplements(interfaceName);
+            loader_.addImplements(interfaceName);
         } else if (localName.compareTo("constructor") == 0) {
             currentElement = localName;
             String ctorType = attributes.getValue("type");
-            XMLToAPI.addCtor(ctorType, getModifiers(attributes));
+            loader_.addCtor(ctorType, getModifiers(attributes));
         } else if (localName.compareTo("method") == 0) {
             currentElement = localName;
             String methodName = attributes.getValue("name");
@@ -118,8 +164,8 @@ class APIHandler extends DefaultHandler {
             boolean isSynchronized = false;
             if (attributes.getValue("synchronized").compareTo("true") == 0)
                 isSynchronized = true;
-            XMLToAPI.addMethod(methodName, returnType, isAbstract, isNative, 
-                               isSynchronized, getModifiers(attributes));
+            loader_.addMethod(methodName, returnType, isAbstract, isNative, 
+                              isSynchronized, getModifiers(attributes));
         } else if (localName.compareTo("field") == 0) {
             currentElement = localName;
             String fieldName = attributes.getValue("name");
@@ -131,19 +177,20 @@ class APIHandler extends DefaultHandler {
             if (attributes.getValue("volatile").compareTo("true") == 0)
                 isVolatile = true;
             String value = attributes.getValue("value");
-            XMLToAPI.addField(fieldName, fieldType, isTransient, isVolatile, 
-                              value, getModifiers(attributes));
+            loader_.addField(fieldName, fieldType, isTransient, isVolatile, 
+                             value, getModifiers(attributes));
         } else if (localName.compareTo("param") == 0) {
             String paramName = attributes.getValue("name");
             String paramType = attributes.getValue("type");
-            XMLToAPI.addParam(paramName, paramType);
+            loader_.addParam(paramName, paramType);
         } else if (localName.compareTo("exception") == 0) {
             String paramName = attributes.getValue("name");
             String paramType = attributes.getValue("type");
-            XMLToAPI.addException(paramName, paramType, currentElement);
+            loader_.addException(paramName, paramType, currentElement);
         } else if (localName.compareTo("doc") == 0) {
             inDoc = true;
-            currentText = null;
+            currentText.setLength(0);
+            currentDigest = attributes.getValue("digest");
         } else {
             if (inDoc) {
                 // Start of an element, probably an HTML element
@@ -160,6 +207,10 @@ class APIHandler extends DefaultHandler {
                            java.lang.String qName) {
 	if (localName.equals(""))
 	    localName = qName;
+        if (skipDepth != 0) {
+            skipDepth--;
+            return;
+        }
         // Deal with the end of doc blocks
         if (localName.compareTo("doc") == 0) {
             inDoc = false;
@@ -171,9 +222,11 @@ class APIHandler extends DefaultHandler {
             addEndTagToText(localName);
         } else if (currentElement.compareTo("constructor") == 0 && 
                    localName.compareTo("constructor") == 0) {
+            loader_.endExceptions(currentElement);
             currentElement = "class";
         } else if (currentElement.compareTo("method") == 0 && 
                    localName.compareTo("method") == 0) {
+            loader_.endExceptions(currentElement);
             currentElement = "class";
         } else if (currentElement.compareTo("field") == 0 && 
                    localName.compareTo("field") == 0) {
@@ -194,11 +247,7 @@ class APIHandler extends DefaultHandler {
     /** Called to process text. */
     public void characters(char[] ch, int start, int length) {
          if (inDoc) {
-            String chunk = new String(ch, start, length);
-            if (currentText == null)
-                currentText = chunk;
-            else
-                currentText += chunk;
+            currentText.append(ch, start, length);
          }
     }
 
@@ -207,18 +256,50 @@ class APIHandler extends DefaultHandler {
      * current program element. 
      */
     public void addTextToComments() {
+        if (addDigestToComments())
+            return;
         // Eliminate any whitespace at each end of the text.
-        currentText = currentText.trim();        
+        String rawText = Comments.trimmedText(currentText);
+        String text = rawText;
         // Convert any @link tags to HTML links.
         if (convertAtLinks) {
-            currentText = Comments.convertAtLinks(currentText, currentElement, 
-                                                  api_.currPkg_, api_.currClass_);
+            text = Comments.convertAtLinks(text, currentElement, 
+                                           api_.currPkg_, api_.currClass_);
         }
         // Check that it is a sentence
-        if (checkIsSentence && !currentText.endsWith(".") && 
-            currentText.compareTo(Comments.placeHolderText) != 0) {
-            System.out.println("Warning: text of comment does not end in a period: " + currentText);
+        if (checkSentences_ && !text.endsWith(".") && 
+            text.compareTo(Comments.placeHolderText) != 0) {
+            System.out.println("Warning: text of comment does not end in a period: " + text);
         }
+        if (text.equals(rawText)) {
+            addDoc(text, null);
+        } else {
+            // Keep the hash of the text as it was in the XML file, which
+            // is what a digest of the doc block in another API is of
+            addDoc(null, LazyDoc.withText(rawText, text));
+        }
+    }
+
+    /**
+     * If the current doc block has only a digest, add it to the current
+     * program element and return true.
+     */
+    boolean addDigestToComments() {
+        if (currentDigest == null)
+            return false;
+        LazyDoc lazyDoc = LazyDoc.fromDigest(currentDigest);
+        currentDigest = null;
+        if (lazyDoc != null)
+            addDoc(null, lazyDoc);
+        return true;
+    }
+
+    /** 
+     * Add the doc block to the current program element, and to the list
+     * of possible comments. The doc block is either held as text, or as
+     * a LazyDoc if it is to be read in only when it is needed.
+     */
+    void addDoc(String text, LazyDoc lazyDoc) {
         // The construction of the commentID assumes that the 
         // documentation is the final element to be parsed. The format matches
         // the format used in the report generator to look up comments in the
@@ -226,14 +307,17 @@ class APIHandler extends DefaultHandler {
         String commentID = null;
         // Add this comment to the current API element.
         if (currentElement.compareTo("package") == 0) {
-            api_.currPkg_.doc_ = currentText;
+            api_.currPkg_.doc_ = text;
+            api_.currPkg_.lazyDoc_ = lazyDoc;
             commentID = api_.currPkg_.name_;
         } else if (currentElement.compareTo("class") == 0 ||
                    currentElement.compareTo("interface") == 0) {
-            api_.currClass_.doc_ = currentText;
+            api_.currClass_.doc_ = text;
+            api_.currClass_.lazyDoc_ = lazyDoc;
             commentID = api_.currPkg_.name_ + "." + api_.currClass_.name_;
         } else if (currentElement.compareTo("constructor") == 0) {
-            api_.currCtor_.doc_ = currentText;
+            api_.currCtor_.doc_ = text;
+            api_.currCtor_.lazyDoc_ = lazyDoc;
             commentID = api_.currPkg_.name_ + "." + api_.currClass_.name_ +
                 ".ctor_changed(";
             if (api_.currCtor_.type_.compareTo("void") == 0)
@@ -241,30 +325,30 @@ class APIHandler extends DefaultHandler {
             else
                 commentID = commentID + api_.currCtor_.type_ + ")";
         } else if (currentElement.compareTo("method") == 0) {
-            api_.currMethod_.doc_ = currentText;
+            api_.currMethod_.doc_ = text;
+            api_.currMethod_.lazyDoc_ = lazyDoc;
             commentID = api_.currPkg_.name_ + "." + api_.currClass_.name_ +
                 "." + api_.currMethod_.name_ + "_changed(" + 
                 api_.currMethod_.getSignature() + ")";
         } else if (currentElement.compareTo("field") == 0) {
-            api_.currField_.doc_ = currentText;
+            api_.currField_.doc_ = text;
+            api_.currField_.lazyDoc_ = lazyDoc;
             commentID = api_.currPkg_.name_ + "." + api_.currClass_.name_ +
                 "." + api_.currField_.name_;
         }            
         // Add to the list of possible comments for use when an
         // element has changed (not removed or added).
         if (createGlobalComments_ && commentID != null) {
-            String ct = currentText;
+            Object ct = text;
+            if (lazyDoc != null)
+                ct = lazyDoc;
             // Use any deprecation text as the possible comment, ignoring 
             // any other comment text.
             if (currentDepText != null) {
                 ct = currentDepText;
                 currentDepText = null; // Never reuse it. Bug 469794
             }
-            String ctOld = (String)(Comments.allPossibleComments.put(commentID, ct));
-            if (ctOld != null) {
-                System.out.println("Error: duplicate comment id: " + commentID);
-                System.exit(5);
-            }
+            loader_.addPossibleComment(commentID, ct);
         }
     }
 
@@ -276,26 +360,21 @@ class APIHandler extends DefaultHandler {
         String currentHTMLTag = localName;
         // Save the tag in a stack
         tagStack.add(currentHTMLTag);
-        String tag = "<" + currentHTMLTag;
+        currentText.append('<').append(currentHTMLTag);
         // Now add all the attributes into the current text
         int len = attributes.getLength();
         for (int i = 0; i < len; i++) {
             String name = attributes.getLocalName(i);
             String value = attributes.getValue(i);
-            tag += " " + name + "=\"" + value+ "\"";
+            currentText.append(' ').append(name).append("=\"").append(value).append('"');
         }
 
         // End the tag
         if (Comments.isMinimizedTag(currentHTMLTag)) {
-            tag += "/>";
+            currentText.append("/>");
         } else {
-            tag += ">";
+            currentText.append('>');
         }
-        // Now insert the HTML tag into the current text
-        if (currentText == null)
-            currentText = tag;
-        else
-            currentText += tag;
     }
 
     /** 
@@ -305,20 +384,27 @@ class APIHandler extends DefaultHandler {
         // Close the current HTML tag
         String currentHTMLTag = (String)(tagStack.removeLast());
         if (!Comments.isMinimizedTag(currentHTMLTag))
-            currentText += "</" + currentHTMLTag + ">";
+            currentText.append("</").append(currentHTMLTag).append('>');
     }
 
     /** Extra modifiers which are common to all program elements. */
     public Modifiers getModifiers(Attributes attributes) {
+        return getModifiers(attributes.getValue("static").compareTo("true") == 0,
+                            attributes.getValue("final").compareTo("true") == 0,
+                            attributes.getValue("deprecated"),
+                            attributes.getValue("visibility"));
+    }
+
+    /**
+     * Extra modifiers which are common to all program elements, from
+     * attribute values which have already been decoded.
+     */
+    public Modifiers getModifiers(boolean isStatic, boolean isFinal,
+                                  String cdt, String visibility) {
         Modifiers modifiers = new Modifiers();
-        modifiers.isStatic = false;
-        if (attributes.getValue("static").compareTo("true") == 0)
-            modifiers.isStatic = true;
-        modifiers.isFinal = false;
-        if (attributes.getValue("final").compareTo("true") == 0)
-            modifiers.isFinal = true;
+        modifiers.isStatic = isStatic;
+        modifiers.isFinal = isFinal;
         modifiers.isDeprecated = false;
-        String cdt = attributes.getValue("deprecated");
         if (cdt.compareTo("not deprecated") == 0) {
             modifiers.isDeprecated = false;
             currentDepText = null;
@@ -329,7 +415,7 @@ class APIHandler extends DefaultHandler {
             modifiers.isDeprecated = true;
             currentDepText = API.showHTMLTags(cdt);
         }
-        modifiers.visibility = attributes.getValue("visibility");
+        modifiers.visibility = loader_.symbol(visibility);
         return modifiers;
     }
 
@@ -354,7 +440,7 @@ class APIHandler extends DefaultHandler {
      * If set, then attempt to convert @link tags to HTML links. 
      * A few of the HTML links may be broken links.
      */
-    private static boolean convertAtLinks = true;
+    static boolean convertAtLinks = true;
 
     /** Set to enable increased logging verbosity for debugging. */
     private static boolean trace = false;
@@ -0,0 +1,353 @@
+package jdiff;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.io.*;
+
+/**
+ * Compares several versions of an API in one run, such as to publish a
+ * table of the changes across a series of releases. Either each API is
+ * compared with the one after it, or every API is compared with every
+ * later one.
+ *
+ * Each API is read in once, however many pairs it is in. All the APIs
+ * share one table of names and types, and the pairs share the APIs, the
+ * fingerprints of their classes, the pool of threads and the diff cache.
+ * The pairs are compared at the same time on the pool of threads. Each
+ * API is sorted as it is read in, so that it is never changed while it
+ * is compared with the APIs before and after it at the same time.
+ *
+ * The numbers of changes between each pair of APIs are printed in a
+ * table. If asked for, a report is also generated for each pair, in its
+ * own subdirectory. Only one report can be generated at a time, so the
+ * reports are generated once all the pairs have been compared. If the
+ * differences in documentation are reported, each pair is compared and
+ * its report generated in turn instead, since the differences in
+ * documentation are only kept for one pair of APIs at a time.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class APIMatrix {
+
+    /**
+     * A pair of APIs to compare, which counts the changes between them as
+     * they are found.
+     */
+    private static class Pair implements ChangeListener {
+
+        /** The index of the old API. */
+        int oldIndex_;
+
+        /** The index of the new API. */
+        int newIndex_;
+
+        /**
+         * The comparator for the pair, which keeps the changes until the
+         * report is generated, if there is one.
+         */
+        APIComparator comp_ = new APIComparator();
+
+        /** The percentage difference between the APIs. */
+        double pdiff_ = 0.0;
+
+        /** Counts the incompatible changes. */
+        CompatibilityCheck check_ = new CompatibilityCheck(0);
+
+        /** The numbers of packages removed, added and changed. */
+        int[] packages_ = new int[3];
+
+        /** The numbers of classes removed, added and changed. */
+        int[] classes_ = new int[3];
+
+        /**
+         * The numbers of constructors, methods and fields removed, added
+         * and changed.
+         */
+        int[] members_ = new int[3];
+
+        /** Constructor. */
+        Pair(int oldIndex, int newIndex) {
+            oldIndex_ = oldIndex;
+            newIndex_ = newIndex;
+        }
+
+        /** Compare the two APIs of the pair. */
+        void compare(API[] apis, ForkJoinPool pool, ClassDiffCache diffCache) {
+            comp_.share(pool, diffCache);
+            comp_.setListener(this, writeReports);
+            comp_.compareAPIs(apis[oldIndex_], apis[newIndex_]);
+            pdiff_ = comp_.apiDiff.pdiff;
+        }
+
+        public void packageRemoved(PackageAPI pkg) {
+            packages_[0]++;
+            classes_[0] += pkg.classes_.size();
+            check_.packageRemoved(pkg);
+        }
+
+        public void packageAdded(PackageAPI pkg) {
+            packages_[1]++;
+            classes_[1] += pkg.classes_.size();
+        }
+
+        public void classRemoved(PackageDiff pkgDiff, ClassAPI cls) {
+            classes_[0]++;
+            check_.classRemoved(pkgDiff, cls);
+        }
+
+        public void classAdded(PackageDiff pkgDiff, ClassAPI cls) {
+            classes_[1]++;
+        }
+
+        public void classChanged(PackageDiff pkgDiff, ClassDiff classDiff) {
+            classes_[2]++;
+            members_[0] += classDiff.ctorsRemoved.size() +
+                classDiff.methodsRemoved.size() + classDiff.fieldsRemoved.size();
+            members_[1] += classDiff.ctorsAdded.size() +
+                classDiff.methodsAdded.size() + classDiff.fieldsAdded.size();
+            members_[2] += classDiff.ctorsChanged.size() +
+                classDiff.methodsChanged.size() + classDiff.fieldsChanged.size();
+            check_.classChanged(pkgDiff, classDiff);
+        }
+
+        public void packageChanged(PackageDiff pkgDiff) {
+            packages_[2]++;
+        }
+
+        public boolean isDone() {
+            return false;
+        }
+    }
+
+    /**
+     * Compare the APIs named with the -apimatrix option, print a table of
+     * the changes between each pair, and generate their reports if asked.
+     *
+     * @param dirName The directory of the XML files for the APIs, or null
+     *                for the current directory.
+     * @return true if the APIs were compared
+     */
+    public static boolean compare(String dirName) {
+        int numAPIs = apiNames.size();
+        String[] fileNames = new String[numAPIs];
+        String[] fullNames = new String[numAPIs];
+        for (int i = 0; i < numAPIs; i++) {
+            fileNames[i] = ((String)apiNames.get(i)).replace(' ', '_') + ".xml";
+            fullNames[i] = fileNames[i];
+            if (dirName != null) {
+                fullNames[i] = dirName;
+                if (!fullNames[i].endsWith(JDiff.DIR_SEP))
+                    fullNames[i] += JDiff.DIR_SEP;
+                fullNames[i] += fileNames[i];
+            }
+            // The file may have been compressed, or written as shards
+            fullNames[i] = APIShards.findAPI(fullNames[i]);
+            if (!new File(fullNames[i]).exists()) {
+                System.out.println("Error: file '" + fullNames[i] + "' does not exist for the API '" + apiNames.get(i) + "'");
+                return false;
+            }
+        }
+        if (XMLToAPI.streamPackages)
+            System.out.println("Warning: the APIs are read in whole when several are compared, so the -streaming option is ignored");
+
+        Hashtable[] possibleComments = new Hashtable[numAPIs];
+        API[] apis = readAPIs(fullNames, fileNames, possibleComments);
+        if (apis == null)
+            return false;
+
+        List pairs = new ArrayList(); // Pair
+        for (int i = 0; i < numAPIs; i++) {
+            for (int j = i + 1; j < numAPIs; j++) {
+                if (allPairs || j == i + 1)
+                    pairs.add(new Pair(i, j));
+            }
+        }
+
+        // The differences in documentation are only needed for the reports
+        if (!writeReports)
+            Diff.noDocDiffs = true;
+        ClassDiffCache diffCache = null;
+        if (APIComparator.diffCacheFile != null)
+            diffCache = new ClassDiffCache(APIComparator.diffCacheFile);
+        ForkJoinPool pool = null;
+        if (APIComparator.compareThreads > 1)
+            pool = new ForkJoinPool(APIComparator.compareThreads);
+        String outputDir = HTMLReportGenerator.outputDir;
+        try {
+            if (pool == null || !Diff.noDocDiffs) {
+                // Compare the pairs in turn, with the packages and classes
+                // of each pair still compared on the pool of threads
+                Iterator iter = pairs.iterator();
+                while (iter.hasNext()) {
+                    Pair pair = (Pair)(iter.next());
+                    pair.compare(apis, pool, diffCache);
+                    if (writeReports)
+                        generateReport(pair, apis, fileNames, possibleComments, outputDir);
+                }
+            } else {
+                List tasks = new ArrayList(); // ForkJoinTask
+                Iterator iter = pairs.iterator();
+                while (iter.hasNext()) {
+                    final Pair pair = (Pair)(iter.next());
+                    final ClassDiffCache pairDiffCache = diffCache;
+                    final ForkJoinPool pairPool = pool;
+                    tasks.add(pool.submit(() -> pair.compare(apis, pairPool, pairDiffCache)));
+                }
+                iter = tasks.iterator();
+                while (iter.hasNext())
+                    ((ForkJoinTask)(iter.next())).join();
+                if (writeReports) {
+                    iter = pairs.iterator();
+                    while (iter.hasNext())
+                        generateReport((Pair)(iter.next()), apis, fileNames, possibleComments, outputDir);
+                }
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+            HTMLReportGenerator.outputDir = outputDir;
+        }
+        if (diffCache != null)
+            diffCache.save();
+
+        printSummary(pairs, apis);
+        return true;
+    }
+
+    /**
+     * Read the APIs in from their XML files, several at a time, and sort
+     * them so that they can be compared with each other at the same time.
+     *
+     * @param fullNames The names of the XML files.
+     * @param fileNames The simple names of the XML files.
+     * @param possibleComments Set to the possible comments for each API,
+     *                         if they are needed for the reports.
+     * @return the API objects, or null if any failed
+     */
+    private static API[] readAPIs(final String[] fullNames, final String[] fileNames,
+                                  final Hashtable[] possibleComments) {
+        int numThreads = Math.min(fullNames.length, Math.max(2, APIComparator.compareThreads));
+        ExecutorService loaders = Executors.newFixedThreadPool(numThreads);
+        // Equal names and types in all the APIs share one instance
+        final SymbolTable symbols = new SymbolTable();
+        try {
+            List<Future<API>> loads = new ArrayList<Future<API>>();
+            for (int i = 0; i < fullNames.length; i++) {
+                System.out.println("JDiff: reading the API '" + apiNames.get(i) + "' in from file '" + fullNames[i] + "'...");
+                final int idx = i;
+                loads.add(loaders.submit(() -> {
+                    // Only the new API of a pair has possible comments
+                    XMLToAPI loader = new XMLToAPI(symbols);
+                    API api = loader.read(fullNames[idx], writeReports && idx > 0, fileNames[idx]);
+                    possibleComments[idx] = loader.getPossibleComments();
+                    APIComparator.sortAPI(api);
+                    return api;
+                }));
+            }
+            API[] apis = new API[fullNames.length];
+            for (int i = 0; i < apis.length; i++)
+                apis[i] = loads.get(i).get();
+            System.out.println("JDiff: finished reading the " + apis.length + " APIs");
+            return apis;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while reading the APIs");
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Error: failed to read the APIs: " + e.getCause());
+            e.getCause().printStackTrace();
+            return null;
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    /**
+     * Generate the report for a pair of APIs, in a subdirectory of the
+     * output directory named after the two APIs. The changes are then
+     * forgotten.
+     *
+     * @param outputDir The output directory, or null for the current
+     *                  directory.
+     */
+    private static void generateReport(Pair pair, API[] apis, String[] fileNames,
+                                       Hashtable[] possibleComments, String outputDir) {
+        String oldFileName = fileNames[pair.oldIndex_];
+        String newFileName = fileNames[pair.newIndex_];
+        String dirName = oldFileName.substring(0, oldFileName.lastIndexOf('.')) +
+            "_to_" + newFileName.substring(0, newFileName.lastIndexOf('.'));
+        if (outputDir != null)
+            dirName = outputDir + JDiff.DIR_SEP + dirName;
+        File dir = new File(dirName);
+        if (!dir.mkdirs() && !dir.exists()) {
+            System.out.println("Error: could not create the directory '" + dirName + "'");
+            System.exit(3);
+        }
+        HTMLReportGenerator.outputDir = dirName;
+        JDiff.oldFileName = oldFileName;
+        JDiff.newFileName = newFileName;
+        // The names may have been set by another pair since these were
+        // compared
+        APIDiff.oldAPIName_ = apis[pair.oldIndex_].name_;
+        APIDiff.newAPIName_ = apis[pair.newIndex_].name_;
+        Comments.allPossibleComments.clear();
+        if (possibleComments[pair.newIndex_] != null)
+            Comments.allPossibleComments.putAll(possibleComments[pair.newIndex_]);
+        JDiff.generateReport(pair.comp_);
+        pair.comp_ = null;
+    }
+
+    /**
+     * Print a table of the numbers of changes between each pair of APIs.
+     * The numbers of packages, classes and members are those removed,
+     * added and changed, and classes in removed or added packages are
+     * counted as removed or added.
+     */
+    private static void printSummary(List pairs, API[] apis) {
+        int width = "Old API".length();
+        for (int i = 0; i < apis.length; i++)
+            width = Math.max(width, apis[i].name_.length());
+        String format = "%-" + width + "s  %-" + width + "s  %8s  %-15s  %-15s  %-17s  %12s";
+        System.out.println("JDiff: changes between the APIs:");
+        System.out.println(String.format(format, "Old API", "New API", "Change",
+                                         "Packages -/+/~", "Classes -/+/~",
+                                         "Members -/+/~", "Incompatible"));
+        Iterator iter = pairs.iterator();
+        while (iter.hasNext()) {
+            Pair pair = (Pair)(iter.next());
+            System.out.println(String.format(format,
+                apis[pair.oldIndex_].name_, apis[pair.newIndex_].name_,
+                String.format("%.2f%%", pair.pdiff_),
+                counts(pair.packages_), counts(pair.classes_),
+                counts(pair.members_), Integer.toString(pair.check_.numChanges())));
+        }
+    }
+
+    /** Return the numbers removed, added and changed, as "r/a/c". */
+    private static String counts(int[] numbers) {
+        return numbers[0] + "/" + numbers[1] + "/" + numbers[2];
+    }
+
+    /**
+     * The names of the APIs to compare, oldest first, or null if several
+     * APIs are not being compared.
+     */
+    static List apiNames = null; // String
+
+    /**
+     * If set, compare every API with every later API, rather than only
+     * with the next one. Default is false.
+     */
+    static boolean allPairs = false;
+
+    /**
+     * If set, generate a report for each pair of APIs, as well as the
+     * table of changes. Default is false.
+     */
+    static boolean writeReports = false;
+}
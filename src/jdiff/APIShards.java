@@ -0,0 +1,118 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+
+/* For StAX parsing of the manifest */
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Names and reads the directories in which an API is written as one XML
+ * file, or shard, for each package, instead of as a single XML file.
+ *
+ * The directory has the name of the XML file without its ".xml" suffix.
+ * Each shard is a complete API XML file which contains just one package.
+ * The manifest file in the directory lists the shards in the order of
+ * their packages, for example:
+ * <pre>
+ * &lt;shards name="Old Test API" jdversion="1.1.1"&gt;
+ *   &lt;shard package="ChangedPackage" file="ChangedPackage.xml"/&gt;
+ * &lt;/shards&gt;
+ * </pre>
+ * The shards can then be read in on different threads at the same time.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class APIShards {
+
+    /** The name of the manifest file in a shard directory. */
+    public static final String MANIFEST = "manifest.xml";
+
+    /**
+     * Return the name of the shard directory for an API XML file, which is
+     * the name of the file without any ".gz" and ".xml" suffixes.
+     */
+    public static String shardDirectory(String filename) {
+        String dirName = FileStreams.uncompressedName(filename);
+        if (dirName.endsWith(".xml"))
+            dirName = dirName.substring(0, dirName.length() - 4);
+        return dirName;
+    }
+
+    /** Return the name of the shard file for a package. */
+    public static String shardFileName(String pkgName) {
+        // "package" is a keyword, so it is never the name of a package
+        if (pkgName.length() == 0)
+            return "package.xml";
+        return pkgName + ".xml";
+    }
+
+    /** Return true if the name is that of a shard directory. */
+    public static boolean isShardDirectory(String dirName) {
+        return new File(dirName, MANIFEST).isFile();
+    }
+
+    /**
+     * Return the name of the file or shard directory to read for an API.
+     * This is the name of the XML file if it exists, or that of the
+     * compressed file, or else that of the shard directory if there is one.
+     */
+    public static String findAPI(String filename) {
+        String found = FileStreams.findFile(filename);
+        if (!new File(found).exists()) {
+            String dirName = shardDirectory(filename);
+            if (isShardDirectory(dirName))
+                return dirName;
+        }
+        return found;
+    }
+
+    /**
+     * Return the time at which an API XML file, or the manifest of a
+     * shard directory, was last modified.
+     */
+    public static long lastModified(String filename) {
+        if (isShardDirectory(filename))
+            return new File(filename, MANIFEST).lastModified();
+        return new File(filename).lastModified();
+    }
+
+    /**
+     * Read the manifest in a shard directory.
+     *
+     * @param dirName The name of the shard directory.
+     * @param shards Set to a list of the package name and full file name 
+     *               of each shard, in the order in which they appear in 
+     *               the manifest.
+     * @return the name of the API.
+     */
+    public static String readManifest(String dirName, List shards) 
+        throws IOException {
+        String apiName = null;
+        String manifestName = dirName + JDiff.DIR_SEP + MANIFEST;
+        InputStream in = FileStreams.openInput(manifestName);
+        try {
+            XMLStreamReader reader = XMLToAPI.createStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                if (reader.getLocalName().equals("shards")) {
+                    apiName = reader.getAttributeValue(null, "name");
+                } else if (reader.getLocalName().equals("shard")) {
+                    String[] shard = new String[2];
+                    shard[0] = reader.getAttributeValue(null, "package");
+                    shard[1] = dirName + JDiff.DIR_SEP + reader.getAttributeValue(null, "file");
+                    shards.add(shard);
+                }
+            }
+            reader.close();
+        } catch(XMLStreamException xse) {
+            throw new IOException("Unable to parse the manifest '" + manifestName + "' : " + xse);
+        } finally {
+            in.close();
+        }
+        return apiName;
+    }
+}
@@ -0,0 +1,504 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes and reads a compact binary snapshot of an API object, stored in a
+ * file with the suffix ".jdapi". Loading a snapshot is much quicker than
+ * parsing the XML file which represents the same API, since the file is
+ * memory-mapped and read sequentially, with no parsing of text.
+ *
+ * The snapshot is written after the inherited methods and fields have been
+ * added to each class, so they do not have to be worked out again when the
+ * snapshot is loaded. The possible comments for each program element are
+ * also stored, since the deprecation text which they may use is not kept
+ * in the API object.
+ *
+ * The format of the file is:
+ * <pre>
+ *   magic number, version
+ *   string table: count, then each string as a length and UTF-8 bytes
+ *   API name, possible comments
+ *   packages, each with its classes, each with its members
+ * </pre>
+ * All strings after the string table are stored as an index into it, or
+ * -1 for null, so each distinct string is stored and loaded only once.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class APISnapshot {
+
+    /** The first four bytes of every snapshot file, "JDAP". */
+    private static final int MAGIC = 0x4A444150;
+
+    /** The version of the snapshot format. */
+    private static final int VERSION = 6;
+
+    /** The suffix of snapshot files. */
+    public static final String SUFFIX = ".jdapi";
+
+    /**
+     * Return the name of the snapshot file for the given XML file,
+     * which is in the same directory.
+     */
+    public static String snapshotFileName(String filename) {
+        filename = FileStreams.uncompressedName(filename);
+        if (filename.endsWith(".xml"))
+            return filename.substring(0, filename.length() - 4) + SUFFIX;
+        return filename + SUFFIX;
+    }
+
+//
+// Writing a snapshot
+//
+
+    /** Maps each string written to its index in the string table. */
+    private Map stringIndex_ = new HashMap(); // String -> Integer
+
+    /** The strings in the string table, in the order they were added. */
+    private List strings_ = new ArrayList(); // String[]
+
+    /** The body of the snapshot, written after the string table. */
+    private DataOutputStream body_ = null;
+
+    /**
+     * Write a snapshot of the API to the given file.
+     *
+     * @param api The API object, with its inherited elements already added.
+     * @param possibleComments The possible comments for each program
+     *                         element, or null if there are none.
+     * @param filename The name of the snapshot file.
+     */
+    public static void write(API api, Map possibleComments, String filename)
+        throws IOException {
+        APISnapshot snapshot = new APISnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        snapshot.body_ = new DataOutputStream(bytes);
+        snapshot.writeAPI(api, possibleComments);
+        snapshot.body_.flush();
+
+        // Write to a temporary file first so that a partly written
+        // snapshot is never loaded.
+        File file = new File(filename);
+        File tmpFile = new File(filename + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.strings_.size());
+            Iterator iter = snapshot.strings_.iterator();
+            while (iter.hasNext()) {
+                byte[] b = ((String)(iter.next())).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            bytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file))
+            throw new IOException("Unable to rename '" + tmpFile + "' to '" + file + "'");
+    }
+
+    /** Write the whole API to the body. */
+    private void writeAPI(API api, Map possibleComments) throws IOException {
+        writeString(api.name_);
+        if (possibleComments == null) {
+            body_.writeInt(0);
+        } else {
+            body_.writeInt(possibleComments.size());
+            Iterator iter = possibleComments.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry entry = (Map.Entry)(iter.next());
+                writeString((String)(entry.getKey()));
+                Object ct = entry.getValue();
+                writeDoc(LazyDoc.text(ct), (ct instanceof LazyDoc) ? (LazyDoc)ct : null);
+            }
+        }
+        body_.writeInt(api.packages_.size());
+        Iterator iter = api.packages_.iterator();
+        while (iter.hasNext()) {
+            PackageAPI pkg = (PackageAPI)(iter.next());
+            writeString(pkg.name_);
+            writeString(pkg.fingerprint_);
+            writeString(pkg.module_);
+            writeDoc(pkg.getDoc(), pkg.lazyDoc_);
+            body_.writeInt(pkg.classes_.size());
+            Iterator iter2 = pkg.classes_.iterator();
+            while (iter2.hasNext()) {
+                writeClass((ClassAPI)(iter2.next()));
+            }
+        }
+    }
+
+    /** Write a class or interface and all its members to the body. */
+    private void writeClass(ClassAPI cls) throws IOException {
+        writeString(cls.name_);
+        writeString(cls.extends_);
+        body_.writeBoolean(cls.isInterface_);
+        body_.writeBoolean(cls.isAbstract_);
+        writeModifiers(cls.modifiers_);
+        writeString(cls.fingerprint_);
+        writeDoc(cls.getDoc(), cls.lazyDoc_);
+        body_.writeInt(cls.implements_.size());
+        Iterator iter = cls.implements_.iterator();
+        while (iter.hasNext()) {
+            writeString((String)(iter.next()));
+        }
+        body_.writeInt(cls.ctors_.size());
+        iter = cls.ctors_.iterator();
+        while (iter.hasNext()) {
+            ConstructorAPI ctor = (ConstructorAPI)(iter.next());
+            writeString(ctor.type_);
+            writeString(ctor.exceptions_);
+            writeModifiers(ctor.modifiers_);
+            writeDoc(ctor.getDoc(), ctor.lazyDoc_);
+        }
+        body_.writeInt(cls.methods_.size());
+        iter = cls.methods_.iterator();
+        while (iter.hasNext()) {
+            MethodAPI m = (MethodAPI)(iter.next());
+            writeString(m.name_);
+            writeString(m.returnType_);
+            writeString(m.inheritedFrom_);
+            writeString(m.exceptions_);
+            body_.writeBoolean(m.isAbstract_);
+            body_.writeBoolean(m.isNative_);
+            body_.writeBoolean(m.isSynchronized_);
+            writeModifiers(m.modifiers_);
+            writeDoc(m.getDoc(), m.lazyDoc_);
+            body_.writeInt(m.params_.size());
+            Iterator iter2 = m.params_.iterator();
+            while (iter2.hasNext()) {
+                ParamAPI param = (ParamAPI)(iter2.next());
+                writeString(param.name_);
+                writeString(param.type_);
+            }
+        }
+        body_.writeInt(cls.fields_.size());
+        iter = cls.fields_.iterator();
+        while (iter.hasNext()) {
+            FieldAPI f = (FieldAPI)(iter.next());
+            writeString(f.name_);
+            writeString(f.type_);
+            writeString(f.inheritedFrom_);
+            body_.writeBoolean(f.isTransient_);
+            body_.writeBoolean(f.isVolatile_);
+            writeString(f.value_);
+            writeModifiers(f.modifiers_);
+            writeDoc(f.getDoc(), f.lazyDoc_);
+        }
+    }
+
+    /** A doc block stored as its text. */
+    private static final byte DOC_TEXT = 0;
+
+    /** A doc block stored as its digest, with no text. */
+    private static final byte DOC_DIGEST = 1;
+
+    /** 
+     * A doc block stored as its text and the digest of its text before 
+     * any @link tags were converted.
+     */
+    private static final byte DOC_TEXT_AND_DIGEST = 2;
+
+    /**
+     * Write a doc block to the body, as its text, as its digest if there
+     * is no text, or as both if it is a LazyDoc with text.
+     */
+    private void writeDoc(String text, LazyDoc lazyDoc) throws IOException {
+        if (lazyDoc == null) {
+            body_.writeByte(DOC_TEXT);
+            writeString(text);
+        } else if (!lazyDoc.hasText()) {
+            body_.writeByte(DOC_DIGEST);
+            writeString(lazyDoc.digest());
+        } else {
+            body_.writeByte(DOC_TEXT_AND_DIGEST);
+            writeString(text);
+            writeString(lazyDoc.digest());
+        }
+    }
+
+    /** Write the modifiers of a program element to the body. */
+    private void writeModifiers(Modifiers modifiers) throws IOException {
+        body_.writeBoolean(modifiers.isStatic);
+        body_.writeBoolean(modifiers.isFinal);
+        body_.writeBoolean(modifiers.isDeprecated);
+        writeString(modifiers.visibility);
+    }
+
+    /**
+     * Write the index of a string in the string table to the body,
+     * adding the string to the table if it is not there already.
+     */
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            body_.writeInt(-1);
+            return;
+        }
+        Integer index = (Integer)(stringIndex_.get(s));
+        if (index == null) {
+            index = Integer.valueOf(strings_.size());
+            stringIndex_.put(s, index);
+            strings_.add(s);
+        }
+        body_.writeInt(index.intValue());
+    }
+
+//
+// Reading a snapshot
+//
+
+    /** The contents of the snapshot file, usually memory-mapped. */
+    private ByteBuffer in_ = null;
+
+    /** The string table, read in when the snapshot is loaded. */
+    private String[] table_ = null;
+
+    /** 
+     * Set for each entry in the string table which has been replaced by
+     * its instance in the symbol table.
+     */
+    private boolean[] isSymbol_ = null;
+
+    /** The table which names, types and visibilities are added to. */
+    private SymbolTable symbols_ = null;
+
+    /**
+     * Read a snapshot into a new API object. A snapshot which has been
+     * compressed with gzip is decompressed into memory, rather than 
+     * being memory-mapped.
+     *
+     * @param filename The name of the snapshot file.
+     * @param possibleComments If non-null, the possible comments stored
+     *                         in the snapshot are added to this.
+     * @param symbols The table which the names, types and visibilities
+     *                are added to. Doc blocks are not added to it.
+     * @return The API object, with inherited elements already added.
+     */
+    public static API read(String filename, Map possibleComments,
+                           SymbolTable symbols) throws IOException {
+        APISnapshot snapshot = new APISnapshot();
+        if (FileStreams.isCompressed(filename)) {
+            snapshot.in_ = ByteBuffer.wrap(readCompressed(filename));
+        } else {
+            RandomAccessFile file = new RandomAccessFile(filename, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                snapshot.in_ = channel.map(FileChannel.MapMode.READ_ONLY,
+                                           0, channel.size());
+            } finally {
+                file.close();
+            }
+        }
+        try {
+            return snapshot.readAPI(filename, possibleComments, symbols);
+        } catch (RuntimeException re) {
+            // A truncated or corrupted snapshot
+            throw new IOException("Invalid snapshot file '" + filename + "' : " + re, re);
+        }
+    }
+
+    /** Return the decompressed contents of a compressed snapshot file. */
+    private static byte[] readCompressed(String filename) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(FileStreams.BUFFER_SIZE);
+        InputStream in = FileStreams.openInput(filename);
+        try {
+            byte[] b = new byte[FileStreams.BUFFER_SIZE];
+            int n;
+            while ((n = in.read(b)) != -1)
+                bytes.write(b, 0, n);
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Read the whole API from the mapped file. */
+    private API readAPI(String filename, Map possibleComments,
+                        SymbolTable symbols) throws IOException {
+        if (in_.getInt() != MAGIC || in_.getInt() != VERSION)
+            throw new IOException("File '" + filename + "' is not a snapshot in the current format");
+        int numStrings = in_.getInt();
+        table_ = new String[numStrings];
+        isSymbol_ = new boolean[numStrings];
+        symbols_ = symbols;
+        for (int i = 0; i < numStrings; i++) {
+            int len = in_.getInt();
+            byte[] b = new byte[len];
+            in_.get(b);
+            table_[i] = new String(b, StandardCharsets.UTF_8);
+        }
+
+        API api = new API();
+        api.name_ = readString();
+        int numComments = in_.getInt();
+        for (int i = 0; i < numComments; i++) {
+            String commentID = readString();
+            Object ct = readDoc();
+            if (possibleComments != null && ct != null)
+                possibleComments.put(commentID, ct);
+        }
+        int numPkgs = in_.getInt();
+        for (int i = 0; i < numPkgs; i++) {
+            PackageAPI pkg = new PackageAPI(readSymbol());
+            pkg.fingerprint_ = readString();
+            pkg.module_ = readString();
+            Object pkgDoc = readDoc();
+            if (pkgDoc instanceof LazyDoc)
+                pkg.lazyDoc_ = (LazyDoc)pkgDoc;
+            else
+                pkg.doc_ = (String)pkgDoc;
+            api.packages_.add(pkg);
+            int numClasses = in_.getInt();
+            for (int j = 0; j < numClasses; j++) {
+                ClassAPI cls = readClass();
+                pkg.classes_.add(cls);
+                // Only classes are looked up when adding inherited elements
+                if (!cls.isInterface_)
+                    api.classes_.put(pkg.name_ + "." + cls.name_, cls);
+            }
+        }
+        return api;
+    }
+
+    /** Read a class or interface and all its members. */
+    private ClassAPI readClass() {
+        String name = readSymbol();
+        String parent = readSymbol();
+        boolean isInterface = readBoolean();
+        boolean isAbstract = readBoolean();
+        ClassAPI cls = new ClassAPI(name, parent, isInterface, isAbstract,
+                                    readModifiers());
+        cls.fingerprint_ = readString();
+        Object clsDoc = readDoc();
+        if (clsDoc instanceof LazyDoc)
+            cls.lazyDoc_ = (LazyDoc)clsDoc;
+        else
+            cls.doc_ = (String)clsDoc;
+        int numImpls = in_.getInt();
+        for (int i = 0; i < numImpls; i++) {
+            cls.implements_.add(readSymbol());
+        }
+        int numCtors = in_.getInt();
+        for (int i = 0; i < numCtors; i++) {
+            String type = readSymbol();
+            String exceptions = readSymbol();
+            ConstructorAPI ctor = new ConstructorAPI(type, readModifiers());
+            ctor.exceptions_ = exceptions;
+            Object ctorDoc = readDoc();
+            if (ctorDoc instanceof LazyDoc)
+                ctor.lazyDoc_ = (LazyDoc)ctorDoc;
+            else
+                ctor.doc_ = (String)ctorDoc;
+            cls.ctors_.add(ctor);
+        }
+        int numMethods = in_.getInt();
+        for (int i = 0; i < numMethods; i++) {
+            String methodName = readSymbol();
+            String returnType = readSymbol();
+            String inheritedFrom = readSymbol();
+            String exceptions = readSymbol();
+            boolean isMethodAbstract = readBoolean();
+            boolean isNative = readBoolean();
+            boolean isSynchronized = readBoolean();
+            MethodAPI m = new MethodAPI(methodName, returnType, isMethodAbstract,
+                                        isNative, isSynchronized,
+                                        readModifiers());
+            m.inheritedFrom_ = inheritedFrom;
+            m.exceptions_ = exceptions;
+            Object mDoc = readDoc();
+            if (mDoc instanceof LazyDoc)
+                m.lazyDoc_ = (LazyDoc)mDoc;
+            else
+                m.doc_ = (String)mDoc;
+            int numParams = in_.getInt();
+            for (int j = 0; j < numParams; j++) {
+                String paramName = readSymbol();
+                m.params_.add(new ParamAPI(paramName, readSymbol()));
+            }
+            cls.methods_.add(m);
+        }
+        int numFields = in_.getInt();
+        for (int i = 0; i < numFields; i++) {
+            String fieldName = readSymbol();
+            String type = readSymbol();
+            String inheritedFrom = readSymbol();
+            boolean isTransient = readBoolean();
+            boolean isVolatile = readBoolean();
+            String value = readString();
+            FieldAPI f = new FieldAPI(fieldName, type, isTransient, isVolatile,
+                                      value, readModifiers());
+            f.inheritedFrom_ = inheritedFrom;
+            Object fDoc = readDoc();
+            if (fDoc instanceof LazyDoc)
+                f.lazyDoc_ = (LazyDoc)fDoc;
+            else
+                f.doc_ = (String)fDoc;
+            cls.fields_.add(f);
+        }
+        return cls;
+    }
+
+    /** Read the modifiers of a program element. */
+    private Modifiers readModifiers() {
+        Modifiers modifiers = new Modifiers();
+        modifiers.isStatic = readBoolean();
+        modifiers.isFinal = readBoolean();
+        modifiers.isDeprecated = readBoolean();
+        modifiers.visibility = readSymbol();
+        return modifiers;
+    }
+
+    /** Read a boolean, written as a single byte. */
+    private boolean readBoolean() {
+        return in_.get() != 0;
+    }
+
+    /** 
+     * Read a doc block, returning either its text, or a LazyDoc with its
+     * digest.
+     */
+    private Object readDoc() {
+        byte kind = in_.get();
+        String doc = readString();
+        if (kind == DOC_DIGEST && doc != null)
+            return LazyDoc.fromDigest(doc);
+        if (kind == DOC_TEXT_AND_DIGEST) {
+            String digest = readString();
+            if (doc != null && digest != null)
+                return LazyDoc.fromDigest(digest, doc);
+        }
+        return doc;
+    }
+
+    /** Read a string as an index into the string table. */
+    private String readString() {
+        int index = in_.getInt();
+        if (index == -1)
+            return null;
+        return table_[index];
+    }
+
+    /** 
+     * Read a name, type or visibility as an index into the string table,
+     * returning its instance in the symbol table.
+     */
+    private String readSymbol() {
+        int index = in_.getInt();
+        if (index == -1)
+            return null;
+        if (!isSymbol_[index]) {
+            table_[index] = symbols_.symbol(table_[index]);
+            isSymbol_[index] = true;
+        }
+        return table_[index];
+    }
+}
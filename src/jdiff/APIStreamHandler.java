@@ -0,0 +1,343 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+
+/* For StAX parsing */
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Handle the parsing of an XML file with a StAX pull parser and the
+ * generation of an API object. This is an alternative to the SAX parsing
+ * in APIHandler, and produces an identical API object.
+ *
+ * Element names are dispatched with a single switch, and the attributes of
+ * each element are decoded once, in one pass, straight into the values
+ * needed for the API object. The handling of documentation blocks is
+ * shared with APIHandler.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class APIStreamHandler extends APIHandler {
+
+    /** 
+     * The XML file being parsed, if doc blocks are to be read in from it
+     * only when they are needed, otherwise null.
+     */
+    private LazyDoc.Source docSource_ = null;
+
+    /** 
+     * The stream which the XML file is read through, which records the 
+     * offsets of its doc elements.
+     */
+    private LazyDoc.OffsetStream docOffsets_ = null;
+
+    /** The offset of the end of the current &lt;doc&gt; tag. */
+    private int docStart_ = 0;
+
+    /** The offset of the end of the current &lt;/doc&gt; tag. */
+    private int docEnd_ = 0;
+
+    /** Default constructor. */
+    public APIStreamHandler(XMLToAPI loader, boolean createGlobalComments) {
+        super(loader, createGlobalComments);
+    }
+
+    /**
+     * Read the doc blocks in from the XML file only when they are needed,
+     * if the file allows that.
+     *
+     * @param filename The name of the XML file.
+     * @param reader The parser which is reading the file.
+     * @param offsets The stream which the parser reads the file through,
+     *                or null if the file is compressed.
+     * @return null, or the reason why the doc blocks must be read in now.
+     */
+    public String readDocsLazily(String filename, XMLStreamReader reader,
+                                 LazyDoc.OffsetStream offsets) {
+        if (offsets == null)
+            return "the file is compressed";
+        if (!LazyDoc.Source.isSingleByte(reader.getCharacterEncodingScheme()))
+            return "the file is not in a single byte encoding";
+        if (new File(filename).length() > Integer.MAX_VALUE)
+            return "the file is larger than 2GB";
+        docSource_ = new LazyDoc.Source(filename);
+        docOffsets_ = offsets;
+        return null;
+    }
+
+    /**
+     * Pull every event from the reader and add the program elements
+     * found to the API object.
+     */
+    public void parse(XMLStreamReader reader) throws XMLStreamException {
+        startDocument();
+        while (reader.hasNext()) {
+            handleEvent(reader, reader.next());
+        }
+    }
+
+    /**
+     * Pull events from the reader until the end of the next package, and 
+     * add the program elements found to the API object.
+     *
+     * @return false if the end of the document was reached before the
+     *         end of another package.
+     */
+    public boolean parsePackage(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            handleEvent(reader, event);
+            if (event == XMLStreamConstants.END_ELEMENT && !inDoc &&
+                reader.getLocalName().equals("package"))
+                return true;
+        }
+        return false;
+    }
+
+    /** Handle one event pulled from the reader. */
+    private void handleEvent(XMLStreamReader reader, int event) 
+        throws XMLStreamException {
+        switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+            startElement(reader);
+            break;
+        case XMLStreamConstants.END_ELEMENT:
+            String localName = reader.getLocalName();
+            if (docSource_ != null && localName.equals("doc"))
+                docEnd_ = docOffsets_.nextEnd();
+            endElement(null, localName, localName);
+            break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+            if (inDoc)
+                characters(reader.getTextCharacters(),
+                           reader.getTextStart(), reader.getTextLength());
+            break;
+        case XMLStreamConstants.END_DOCUMENT:
+            endDocument();
+            break;
+        default:
+            // Comments, processing instructions and the like are ignored
+            break;
+        }
+    }
+
+    /** Called when a new element is started. */
+    private void startElement(XMLStreamReader reader) 
+        throws XMLStreamException {
+        String localName = reader.getLocalName();
+        switch (localName) {
+        case "api":
+            loader_.nameAPI(reader.getAttributeValue(null, "name"));
+            return;
+        case "package":
+            String pkgName = reader.getAttributeValue(null, "name");
+            if (!APIFilter.readPackage(pkgName)) {
+                skipElement(reader);
+                return;
+            }
+            currentElement = localName;
+            loader_.addPackage(pkgName);
+            api_.currPkg_.fingerprint_ = reader.getAttributeValue(null, "fingerprint");
+            api_.currPkg_.module_ = reader.getAttributeValue(null, "module");
+            return;
+        case "class":
+        case "interface":
+            if (!APIFilter.readClass(api_.currPkg_.name_, 
+                                     reader.getAttributeValue(null, "name"))) {
+                skipElement(reader);
+                return;
+            }
+            currentElement = localName;
+            addMember(localName, reader);
+            return;
+        case "constructor":
+        case "method":
+        case "field":
+            currentElement = localName;
+            addMember(localName, reader);
+            return;
+        case "implements":
+            loader_.addImplements(reader.getAttributeValue(null, "name"));
+            return;
+        case "param":
+            loader_.addParam(reader.getAttributeValue(null, "name"),
+                             reader.getAttributeValue(null, "type"));
+            return;
+        case "exception":
+            loader_.addException(reader.getAttributeValue(null, "name"),
+                                 reader.getAttributeValue(null, "type"),
+                                 currentElement);
+            return;
+        case "doc":
+            inDoc = true;
+            currentText.setLength(0);
+            currentDigest = reader.getAttributeValue(null, "digest");
+            if (docSource_ != null)
+                docStart_ = docOffsets_.nextStart();
+            return;
+        default:
+            if (inDoc) {
+                // Start of an element, probably an HTML element
+                addStartTagToText(localName, reader);
+            } else {
+                System.out.println("Error: unknown element type: " + localName);
+                System.exit(-1);
+            }
+        }
+    }
+
+    /**
+     * Skip the current element and everything within it, up to and 
+     * including its end tag, without handling any of the events.
+     */
+    private static void skipElement(XMLStreamReader reader) 
+        throws XMLStreamException {
+        int depth = 1;
+        while (depth != 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    /**
+     * Decode all the attributes of a class, interface, constructor, method
+     * or field element in one pass, and add the element to the API.
+     */
+    private void addMember(String localName, XMLStreamReader reader) {
+        String name = null;
+        String type = null;
+        String extendsName = null;
+        String returnType = null;
+        String value = null;
+        String fingerprint = null;
+        String visibility = null;
+        String deprecated = "not deprecated";
+        boolean isAbstract = false;
+        boolean isNative = false;
+        boolean isSynchronized = false;
+        boolean isTransient = false;
+        boolean isVolatile = false;
+        boolean isStatic = false;
+        boolean isFinal = false;
+        int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            String attrValue = reader.getAttributeValue(i);
+            switch (reader.getAttributeLocalName(i)) {
+            case "name":         name = attrValue; break;
+            case "type":         type = attrValue; break;
+            case "extends":      extendsName = attrValue; break;
+            case "return":       returnType = attrValue; break;
+            case "value":        value = attrValue; break;
+            case "fingerprint":  fingerprint = attrValue; break;
+            case "visibility":   visibility = attrValue; break;
+            case "deprecated":   deprecated = attrValue; break;
+            case "abstract":     isAbstract = isTrue(attrValue); break;
+            case "native":       isNative = isTrue(attrValue); break;
+            case "synchronized": isSynchronized = isTrue(attrValue); break;
+            case "transient":    isTransient = isTrue(attrValue); break;
+            case "volatile":     isVolatile = isTrue(attrValue); break;
+            case "static":       isStatic = isTrue(attrValue); break;
+            case "final":        isFinal = isTrue(attrValue); break;
+            default:             break; // e.g. src
+            }
+        }
+        Modifiers modifiers = getModifiers(isStatic, isFinal, deprecated, visibility);
+        switch (localName) {
+        case "class":
+            loader_.addClass(name, extendsName, isAbstract, modifiers);
+            api_.currClass_.fingerprint_ = fingerprint;
+            break;
+        case "interface":
+            loader_.addInterface(name, extendsName, isAbstract, modifiers);
+            api_.currClass_.fingerprint_ = fingerprint;
+            break;
+        case "constructor":
+            loader_.addCtor(type, modifiers);
+            break;
+        case "method":
+            loader_.addMethod(name, returnType, isAbstract, isNative,
+                              isSynchronized, modifiers);
+            break;
+        case "field":
+            loader_.addField(name, type, isTransient, isVolatile,
+                             value, modifiers);
+            break;
+        }
+    }
+
+    /** Return true if the attribute value is exactly "true". */
+    private static boolean isTrue(String attrValue) {
+        return attrValue.length() == 4 && attrValue.equals("true");
+    }
+
+    /**
+     * Add the start tag to the current comment text.
+     */
+    private void addStartTagToText(String localName, XMLStreamReader reader) {
+        // Save the tag in a stack
+        tagStack.add(localName);
+        appendStartTag(currentText, localName, reader);
+    }
+
+    /**
+     * Append the start tag of the current element, with its attributes,
+     * to the text.
+     */
+    static void appendStartTag(StringBuilder text, String localName,
+                               XMLStreamReader reader) {
+        text.append('<').append(localName);
+        // Now add all the attributes into the current text
+        int len = reader.getAttributeCount();
+        for (int i = 0; i < len; i++) {
+            text.append(' ').append(reader.getAttributeLocalName(i));
+            text.append("=\"").append(reader.getAttributeValue(i)).append('"');
+        }
+        // End the tag
+        if (Comments.isMinimizedTag(localName)) {
+            text.append("/>");
+        } else {
+            text.append('>');
+        }
+    }
+
+    /** 
+     * Add the current doc block to the current program element. If the 
+     * doc blocks are to be read in only when needed, just the position 
+     * of the doc element and the hash of its text are kept.
+     */
+    public void addTextToComments() {
+        if (addDigestToComments())
+            return;
+        if (docSource_ == null || docStart_ == -1 || docEnd_ < docStart_) {
+            // The text is kept if the doc element cannot be found again
+            super.addTextToComments();
+            return;
+        }
+        int start = LazyDoc.trimStart(currentText);
+        int end = LazyDoc.trimEnd(currentText, start);
+        if (checkSentences_) {
+            String text = currentText.substring(start, end);
+            if (convertAtLinks) {
+                text = Comments.convertAtLinks(text, currentElement, 
+                                               api_.currPkg_, api_.currClass_);
+            }
+            if (!text.endsWith(".") && 
+                text.compareTo(Comments.placeHolderText) != 0) {
+                System.out.println("Warning: text of comment does not end in a period: " + text);
+            }
+        }
+        LazyDoc lazyDoc = new LazyDoc(docSource_, docStart_, docEnd_,
+                                      LazyDoc.hash(currentText, start, end),
+                                      end - start, currentElement,
+                                      api_.currPkg_, api_.currClass_);
+        addDoc(null, lazyDoc);
+    }
+}
@@ -0,0 +1,128 @@
+package jdiff;
+
+import java.util.*;
+
+/**
+ * Decides which program elements are written to the XML file from their
+ * annotations, such as the InterfaceAudience and InterfaceStability
+ * annotations which Hadoop uses to mark which parts of its API are public
+ * and stable. Elements which are not written are never compared, so
+ * leaving out the private parts of a large API makes the XML files much
+ * smaller and every later step quicker.
+ *
+ * An annotation is given by its qualified name, such as
+ * "org.apache.hadoop.classification.InterfaceAudience.Private", or by the
+ * end of it after a dot, such as "InterfaceAudience.Private". Names are
+ * given as lists separated by colons, like the patterns for APIFilter.
+ *
+ * The rule for a program element comes from its own annotations, or if it
+ * has none of the given annotations, from those of its nearest enclosing
+ * class which has, or else from those of its package. An element whose
+ * rule comes from an exclude annotation is not written. If any include
+ * annotations are given, then an element is only written if its rule
+ * comes from an include annotation. A package is only left out if none
+ * of its classes are written.
+ *
+ * Annotations which are only kept in the source files cannot be used when
+ * the API is read from class files.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class AnnotationFilter {
+
+    /** The rule when an element has none of the given annotations. */
+    public static final int NONE = 0;
+
+    /** The rule when an element has an include annotation. */
+    public static final int INCLUDE = 1;
+
+    /** The rule when an element has an exclude annotation. */
+    public static final int EXCLUDE = 2;
+
+    /** The names of the annotations which mark elements to write. */
+    private static List includes_ = new ArrayList(); // String
+
+    /** The names of the annotations which mark elements not to write. */
+    private static List excludes_ = new ArrayList(); // String
+
+    /** Remove all the annotations, so that everything is written. */
+    public static void reset() {
+        includes_.clear();
+        excludes_.clear();
+    }
+
+    /** Add a list of names separated by colons to the include annotations. */
+    public static void addIncludes(String names) {
+        addNames(includes_, names);
+    }
+
+    /** Add a list of names separated by colons to the exclude annotations. */
+    public static void addExcludes(String names) {
+        addNames(excludes_, names);
+    }
+
+    /** Add each of the names in the list to the given names. */
+    private static void addNames(List list, String names) {
+        StringTokenizer st = new StringTokenizer(names, ":");
+        while (st.hasMoreTokens()) {
+            String name = st.nextToken().trim();
+            if (name.startsWith("@"))
+                name = name.substring(1);
+            if (name.length() != 0)
+                list.add(name);
+        }
+    }
+
+    /** Return true if any annotations have been given. */
+    public static boolean isSet() {
+        return includes_.size() != 0 || excludes_.size() != 0;
+    }
+
+    /**
+     * Return the rule for a program element from its annotations. An
+     * exclude annotation is used before an include annotation.
+     *
+     * @param annotations The qualified names of the annotations on the
+     *                    element, with dots between nested names.
+     * @return EXCLUDE, INCLUDE or NONE.
+     */
+    public static int rule(Collection annotations) {
+        int rule = NONE;
+        Iterator iter = annotations.iterator();
+        while (iter.hasNext()) {
+            String name = (String)(iter.next());
+            if (matchesAny(excludes_, name))
+                return EXCLUDE;
+            if (matchesAny(includes_, name))
+                rule = INCLUDE;
+        }
+        return rule;
+    }
+
+    /**
+     * Return true if a class or member is written, given the rule from
+     * the nearest of it and its enclosing elements which has one.
+     *
+     * @param rule The rule, or NONE if none of them has one.
+     */
+    public static boolean shown(int rule) {
+        if (rule == EXCLUDE)
+            return false;
+        if (rule == INCLUDE)
+            return true;
+        return includes_.size() == 0;
+    }
+
+    /** Return true if the annotation name matches any of the names. */
+    private static boolean matchesAny(List names, String annotation) {
+        Iterator iter = names.iterator();
+        while (iter.hasNext()) {
+            String name = (String)(iter.next());
+            if (annotation.endsWith(name) &&
+                (annotation.length() == name.length() ||
+                 annotation.charAt(annotation.length() - name.length() - 1) == '.'))
+                return true;
+        }
+        return false;
+    }
+}
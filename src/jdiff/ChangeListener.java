@@ -0,0 +1,47 @@
+package jdiff;
+
+/**
+ * Is told of each change between two APIs as soon as it is settled by
+ * APIComparator, so that the changes can be counted or written out one
+ * package at a time, rather than walking the whole APIDiff object once
+ * the comparison is over.
+ *
+ * A changed package is settled once all its classes have been compared,
+ * and the members which were removed and added have been merged into
+ * changes by MergeChanges. Its removed, added and changed classes are
+ * reported, followed by the package itself. Each ClassDiff holds the
+ * changes to the members of its class.
+ *
+ * The listener is always called on the thread which started the
+ * comparison, in the order of the packages, whatever the number of threads
+ * the packages and classes are compared on.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+interface ChangeListener {
+
+    /** A package which is in the old API but not the new API. */
+    void packageRemoved(PackageAPI pkg);
+
+    /** A package which is in the new API but not the old API. */
+    void packageAdded(PackageAPI pkg);
+
+    /** A class which is in the old package but not the new package. */
+    void classRemoved(PackageDiff pkgDiff, ClassAPI cls);
+
+    /** A class which is in the new package but not the old package. */
+    void classAdded(PackageDiff pkgDiff, ClassAPI cls);
+
+    /** A class which changed, with the changes to its members. */
+    void classChanged(PackageDiff pkgDiff, ClassDiff classDiff);
+
+    /** A package which changed, after all of its classes. */
+    void packageChanged(PackageDiff pkgDiff);
+
+    /**
+     * Return true if no more changes are wanted. This is asked after each
+     * package is reported, and if it is true, no more packages are
+     * compared.
+     */
+    boolean isDone();
+}
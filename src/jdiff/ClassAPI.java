@@ -45,6 +45,20 @@ class ClassAPI implements Comparable {
     /** The doc block, default is null. */
     public String doc_ = null;
 
+    /** 
+     * The doc block, if it is only read in from the XML file when it is
+     * needed. If this is set, then doc_ is null.
+     */
+    public LazyDoc lazyDoc_ = null;
+
+    /** 
+     * The fingerprint of the XML for the class, or if the XML file has
+     * none, the fingerprint of its structure from structuralFingerprint().
+     * Two classes with the same fingerprint are the same, apart from what
+     * they inherit.
+     */
+    public String fingerprint_ = null;
+
     /** Constructor. */
     public ClassAPI(String name, String parent, boolean isInterface, 
                     boolean isAbstract, Modifiers modifiers) {
@@ -60,10 +74,117 @@ class ClassAPI implements Comparable {
         fields_ = new ArrayList(); // FieldAPI[]
     }
 
+    /** Return the doc block, reading it in from the XML file if necessary. */
+    public String getDoc() {
+        if (lazyDoc_ != null)
+            return lazyDoc_.getText();
+        return doc_;
+    }
+
+    /**
+     * Return a fingerprint of everything about the class which is compared,
+     * for a class whose XML has no fingerprint. It must be worked out before
+     * the inherited methods and fields are added to the class.
+     *
+     * The fingerprint is a 64-bit hash of the modifiers, parents and doc 
+     * block of the class, and of each of its members. The hashes of the 
+     * members are added together, so the order of the members in the XML 
+     * does not matter, and they do not have to be sorted. It starts with 
+     * an "s", so it never equals a fingerprint from an XML file.
+     */
+    public String structuralFingerprint() {
+        long h = LazyDoc.hash(name_, 0, name_.length());
+        h = hash(h, isInterface_);
+        h = hash(h, isAbstract_);
+        h = hash(h, modifiers_);
+        h = hash(h, extends_);
+        Iterator iter = implements_.iterator();
+        while (iter.hasNext())
+            h = hash(h, (String)(iter.next()));
+        h = hashDoc(h, doc_, lazyDoc_);
+        long members = 0;
+        iter = ctors_.iterator();
+        while (iter.hasNext()) {
+            ConstructorAPI ctor = (ConstructorAPI)(iter.next());
+            long m = hash(1, ctor.type_);
+            m = hash(m, ctor.exceptions_);
+            m = hash(m, ctor.modifiers_);
+            members += mix(hashDoc(m, ctor.doc_, ctor.lazyDoc_));
+        }
+        iter = methods_.iterator();
+        while (iter.hasNext()) {
+            MethodAPI method = (MethodAPI)(iter.next());
+            long m = hash(2, method.name_);
+            m = hash(m, method.returnType_);
+            m = hash(m, method.getSignature());
+            m = hash(m, method.inheritedFrom_);
+            m = hash(m, method.isAbstract_);
+            m = hash(m, method.isNative_);
+            m = hash(m, method.isSynchronized_);
+            m = hash(m, method.exceptions_);
+            m = hash(m, method.modifiers_);
+            members += mix(hashDoc(m, method.doc_, method.lazyDoc_));
+        }
+        iter = fields_.iterator();
+        while (iter.hasNext()) {
+            FieldAPI field = (FieldAPI)(iter.next());
+            long m = hash(3, field.name_);
+            m = hash(m, field.type_);
+            m = hash(m, field.inheritedFrom_);
+            m = hash(m, field.isTransient_);
+            m = hash(m, field.isVolatile_);
+            m = hash(m, field.value_);
+            m = hash(m, field.modifiers_);
+            members += mix(hashDoc(m, field.doc_, field.lazyDoc_));
+        }
+        h = mix(h) + members;
+        return "s" + Long.toHexString(mix(h));
+    }
+
+    /** Add a string, which may be null, to a 64-bit hash. */
+    private static long hash(long h, String s) {
+        if (s == null)
+            return mix(h ^ 0x9e3779b97f4a7c15L);
+        return mix(h ^ LazyDoc.hash(s, 0, s.length()) ^ s.length());
+    }
+
+    /** Add a flag to a 64-bit hash. */
+    private static long hash(long h, boolean b) {
+        return mix(h ^ (b ? 1 : 2));
+    }
+
+    /** Add all the modifiers which are compared to a 64-bit hash. */
+    private static long hash(long h, Modifiers modifiers) {
+        h = hash(h, modifiers.isStatic);
+        h = hash(h, modifiers.isFinal);
+        h = hash(h, modifiers.isDeprecated);
+        return hash(h, modifiers.visibility);
+    }
+
+    /** 
+     * Add a doc block to a 64-bit hash, using the hash of a LazyDoc 
+     * rather than reading its text back in.
+     */
+    private static long hashDoc(long h, String doc, LazyDoc lazyDoc) {
+        if (lazyDoc != null)
+            return mix(h ^ lazyDoc.hash_ ^ ((long)lazyDoc.length_ << 32) ^ 4);
+        return hash(h, doc);
+    }
+
+    /** Mix the bits of a 64-bit hash, as in the finalizer of MurmurHash3. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     /** Compare two ClassAPI objects by all the known information. */
     public int compareTo(Object o) {
         ClassAPI oClassAPI = (ClassAPI)o;
-        int comp = name_.compareTo(oClassAPI.name_);
+        int comp = SymbolTable.compare(name_, oClassAPI.name_);
         if (comp != 0)
             return comp;
         if (isInterface_ != oClassAPI.isInterface_)
@@ -73,7 +194,7 @@ class ClassAPI implements Comparable {
         comp = modifiers_.compareTo(oClassAPI.modifiers_);
         if (comp != 0)
             return comp;
-        if (APIComparator.docChanged(doc_, oClassAPI.doc_))
+        if (APIComparator.docChanged(doc_, lazyDoc_, oClassAPI.doc_, oClassAPI.lazyDoc_))
             return -1;
         return 0;
     }  
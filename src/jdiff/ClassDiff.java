@@ -79,10 +79,16 @@ class ClassDiff {
      * Compare the inheritance details of two classes and produce 
      * a String for the inheritanceChanges_ field in this class.
      * If there is no difference, null is returned.
+     *
+     * The interfaces are sorted in copies of the lists, since classes may 
+     * be compared on several threads, and the lists of a class are read 
+     * when another class which inherits from it is compared.
      */
     public static String diff(ClassAPI oldClass, ClassAPI newClass) {
-        Collections.sort(oldClass.implements_);
-        Collections.sort(newClass.implements_);
+        List oldImplements = new ArrayList(oldClass.implements_); // String
+        List newImplements = new ArrayList(newClass.implements_); // String
+        Collections.sort(oldImplements);
+        Collections.sort(newImplements);
         String res = "";
         boolean hasContent = false;
         if (oldClass.extends_ != null && newClass.extends_ != null &&
@@ -93,10 +99,10 @@ class ClassDiff {
         // Check for implemented interfaces which were removed
         String removedInterfaces = "";
         int numRemoved = 0;
-        Iterator iter = oldClass.implements_.iterator();
+        Iterator iter = oldImplements.iterator();
         while (iter.hasNext()) {
             String oldInterface = (String)(iter.next());
-            int idx = Collections.binarySearch(newClass.implements_, oldInterface);
+            int idx = Collections.binarySearch(newImplements, oldInterface);
             if (idx < 0) {
                 if (numRemoved != 0)
                     removedInterfaces += ", ";
@@ -106,10 +112,10 @@ class ClassDiff {
         }
         String addedInterfaces = "";
         int numAdded = 0;
-        iter = newClass.implements_.iterator();
+        iter = newImplements.iterator();
         while (iter.hasNext()) {
             String newInterface = (String)(iter.next());
-            int idx = Collections.binarySearch(oldClass.implements_, newInterface);
+            int idx = Collections.binarySearch(oldImplements, newInterface);
             if (idx < 0) {
                 if (numAdded != 0)
                     addedInterfaces += ", ";
@@ -149,5 +155,32 @@ class ClassDiff {
                 modifiersChange_ += " " + commonModifierChanges;
         }
     }
+
+    /**
+     * Return true if this class has any incompatible changes, which are
+     * removed members, incompatible changes to members, or changes to its
+     * inheritance or to its modifiers other than deprecation.
+     */
+    public boolean isIncompatible() {
+        if (inheritanceChange_ != null || 
+            Modifiers.isIncompatible(modifiersChange_))
+            return true;
+        if (ctorsRemoved.size() != 0 || methodsRemoved.size() != 0 ||
+            fieldsRemoved.size() != 0)
+            return true;
+        return hasIncompatible(ctorsChanged) || 
+            hasIncompatible(methodsChanged) ||
+            hasIncompatible(fieldsChanged);
+    }
+
+    /** Return true if any of the changed members is incompatible. */
+    private static boolean hasIncompatible(List membersChanged) {
+        Iterator iter = membersChanged.iterator();
+        while (iter.hasNext()) {
+            if (((MemberDiff)(iter.next())).isIncompatible())
+                return true;
+        }
+        return false;
+    }
 }
 
@@ -0,0 +1,529 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A cache on disk of the changes found when two classes were compared, so
+ * that when the same two versions of a class are compared again, as when
+ * a series of builds is compared with the same release, the changes are
+ * read from the cache instead of being worked out again.
+ *
+ * The changes for each class are stored under the fingerprints of the old
+ * and new versions of the class, and of all the classes in each API which
+ * it inherits from, since it inherits their methods and fields. Classes
+ * with the same fingerprint in both APIs are never compared, so they are
+ * not stored. The changes include the differences in the documentation,
+ * which are the slowest part to work out. The whole cache is also marked
+ * with a fingerprint of the JDiff version and of the options which affect
+ * the changes, and a cache with a different fingerprint is discarded.
+ *
+ * The methods, constructors and fields which were removed or added are
+ * stored by their names and signatures, and are looked up in the classes
+ * being compared, so that they are the same objects as the rest of the
+ * report uses. The members which were removed and added are merged into
+ * changes after they are read from the cache, just as after they are
+ * found.
+ *
+ * Only the changes used in a run are written back to the file, so the
+ * changes for old versions of classes do not accumulate.
+ *
+ * The format of the file is:
+ * <pre>
+ *   magic number, version, fingerprint
+ *   count, then each key and the changes stored under it
+ * </pre>
+ * All strings are stored as a length and UTF-8 bytes, or -1 for null.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class ClassDiffCache {
+
+    /** The first four bytes of every cache file, "JDCD". */
+    private static final int MAGIC = 0x4A444344;
+
+    /** The version of the cache file format. */
+    private static final int VERSION = 1;
+
+    /** The name of the cache file. */
+    private String filename_ = null;
+
+    /** The fingerprint of the version and the options. */
+    private String fingerprint_ = null;
+
+    /** The changes read from the cache file. */
+    private Map cached_ = new HashMap(); // String (key) -> byte[]
+
+    /** The changes used in this run, which are written back to the file. */
+    private Map used_ = new ConcurrentHashMap(); // String (key) -> byte[]
+
+    /** The number of classes whose changes were found in the cache. */
+    private AtomicInteger hits_ = new AtomicInteger();
+
+    /** The number of classes whose changes had to be worked out. */
+    private AtomicInteger misses_ = new AtomicInteger();
+
+    /**
+     * The changes found when two classes were compared.
+     */
+    static class Entry {
+
+        /** The difference between the two classes. */
+        double differs_ = 0.0;
+
+        /** The changes to the class, or null if it did not change. */
+        ClassDiff classDiff_ = null;
+
+        /** The differences in the documentation of the class. */
+        List docDiffs_ = new ArrayList(); // DiffOutput
+    }
+
+    /**
+     * Open the cache file, reading in its changes if it exists and has
+     * the same fingerprint.
+     *
+     * @param filename The name of the cache file.
+     */
+    public ClassDiffCache(String filename) {
+        filename_ = filename;
+        fingerprint_ = fingerprint();
+        if (!new File(filename).exists())
+            return;
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename), FileStreams.BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    System.out.println("Warning: file '" + filename + "' is not a diff cache in the current format, so it will be replaced");
+                    return;
+                }
+                if (!fingerprint_.equals(readString(in))) {
+                    System.out.println("JDiff: the options have changed since the diff cache '" + filename + "' was written, so it will be replaced");
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = readString(in);
+                    byte[] b = new byte[in.readInt()];
+                    in.readFully(b);
+                    cached_.put(key, b);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Warning: unable to read the diff cache '" + filename + "', so it will be replaced: " + e);
+            cached_.clear();
+        }
+    }
+
+    /**
+     * Return the fingerprint of the JDiff version and of the options which
+     * change what is found when two classes are compared.
+     */
+    private static String fingerprint() {
+        StringBuilder config = new StringBuilder();
+        config.append(JDiff.version).append('\n');
+        config.append(HTMLReportGenerator.reportDocChanges).append('\n');
+        config.append(HTMLReportGenerator.incompatibleChangesOnly).append('\n');
+        config.append(HTMLReportGenerator.reportFileExt).append('\n');
+        config.append(HTMLReportGenerator.oldDocPrefix).append('\n');
+        config.append(HTMLReportGenerator.newDocPrefix).append('\n');
+        config.append(Diff.noDocDiffs).append('\n');
+        config.append(Diff.diffFileName).append('\n');
+        config.append(Diff.deleteEffect).append('\n');
+        config.append(Diff.insertEffect).append('\n');
+        config.append(Diff.showAllChanges).append('\n');
+        config.append(APIHandler.convertAtLinks).append('\n');
+        return XMLFragmentCache.hash(config.toString());
+    }
+
+    /**
+     * Return the key for the changes between two classes, or null if the
+     * class, or a class in the API which it inherits from, has no
+     * fingerprint.
+     *
+     * @param pkgName The name of the package of the classes.
+     * @param oldAPI The old API, in which to look up the parents of the
+     *               old class.
+     * @param newAPI The new API, in which to look up the parents of the
+     *               new class.
+     */
+    public static String key(String pkgName, ClassAPI oldClass, ClassAPI newClass,
+                             API oldAPI, API newAPI) {
+        StringBuilder key = new StringBuilder(pkgName);
+        if (!addFingerprints(key, oldClass, oldAPI, new HashSet()))
+            return null;
+        key.append(" to");
+        if (!addFingerprints(key, newClass, newAPI, new HashSet()))
+            return null;
+        return XMLFragmentCache.hash(key.toString());
+    }
+
+    /**
+     * Add the fingerprints of a class and of the classes in the API which
+     * it inherits from to a key, returning false if any of them has none.
+     */
+    private static boolean addFingerprints(StringBuilder key, ClassAPI cls,
+                                           API api, Set visited) {
+        if (cls.fingerprint_ == null)
+            return false;
+        key.append(' ').append(cls.fingerprint_);
+        if (!addParentFingerprints(key, cls.extends_, api, visited))
+            return false;
+        Iterator iter = cls.implements_.iterator();
+        while (iter.hasNext()) {
+            if (!addParentFingerprints(key, (String)(iter.next()), api, visited))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add the fingerprints of a class which is inherited from, and of its
+     * own parents, to a key. Classes which are not in the API add nothing,
+     * since nothing is inherited from them.
+     */
+    private static boolean addParentFingerprints(StringBuilder key, String fqName,
+                                                 API api, Set visited) {
+        if (fqName == null || !visited.add(fqName))
+            return true;
+        ClassAPI parent = (ClassAPI)api.classes_.get(fqName);
+        if (parent == null)
+            return true;
+        return addFingerprints(key, parent, api, visited);
+    }
+
+    /**
+     * Return the changes stored under the key for the two classes, or null
+     * if there are none, or if any of the members which were removed or
+     * added cannot be found in the classes.
+     *
+     * @param pkgName The name of the package of the classes.
+     */
+    public Entry get(String key, String pkgName, ClassAPI oldClass, ClassAPI newClass) {
+        byte[] b = (byte[])cached_.get(key);
+        if (b == null)
+            return null;
+        Entry entry = null;
+        try {
+            entry = readEntry(new DataInputStream(new ByteArrayInputStream(b)),
+                              pkgName, oldClass, newClass);
+        } catch (IOException e) {
+            System.out.println("Warning: unable to read the changes to class " + pkgName + "." + oldClass.name_ + " from the diff cache '" + filename_ + "' : " + e);
+        }
+        if (entry == null)
+            return null;
+        used_.put(key, b);
+        hits_.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Store the changes found when two classes were compared under the key.
+     */
+    public void put(String key, Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeEntry(out, entry);
+            out.close();
+        } catch (IOException e) {
+            // Not possible when writing to memory
+            throw new IllegalStateException(e);
+        }
+        used_.put(key, bytes.toByteArray());
+        misses_.incrementAndGet();
+    }
+
+    /**
+     * Write the changes used in this run to the cache file, and report
+     * how many were found in the cache.
+     */
+    public void save() {
+        System.out.println("JDiff: used the diff cache '" + filename_ + "' for " + hits_.get() + " of the " + (hits_.get() + misses_.get()) + " classes compared");
+        // Write to a temporary file first so that a partly written cache
+        // is never read.
+        File file = new File(filename_);
+        File tmpFile = new File(filename_ + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile), FileStreams.BUFFER_SIZE));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, fingerprint_);
+                List keys = new ArrayList(used_.keySet());
+                Collections.sort(keys);
+                out.writeInt(keys.size());
+                Iterator iter = keys.iterator();
+                while (iter.hasNext()) {
+                    String key = (String)(iter.next());
+                    byte[] b = (byte[])used_.get(key);
+                    writeString(out, key);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!tmpFile.renameTo(file))
+                throw new IOException("Unable to rename '" + tmpFile + "' to '" + file + "'");
+        } catch (IOException e) {
+            System.out.println("Warning: unable to write the diff cache '" + filename_ + "' : " + e);
+        }
+    }
+
+//
+// Writing the changes to a class
+//
+
+    /** Write the changes found when two classes were compared. */
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeDouble(entry.differs_);
+        ClassDiff classDiff = entry.classDiff_;
+        out.writeBoolean(classDiff != null);
+        if (classDiff != null) {
+            writeString(out, classDiff.inheritanceChange_);
+            writeString(out, classDiff.documentationChange_);
+            writeString(out, classDiff.modifiersChange_);
+            out.writeDouble(classDiff.pdiff);
+            writeCtors(out, classDiff.ctorsRemoved);
+            writeCtors(out, classDiff.ctorsAdded);
+            writeMemberDiffs(out, classDiff.ctorsChanged);
+            writeMethods(out, classDiff.methodsRemoved);
+            writeMethods(out, classDiff.methodsAdded);
+            writeMemberDiffs(out, classDiff.methodsChanged);
+            writeFields(out, classDiff.fieldsRemoved);
+            writeFields(out, classDiff.fieldsAdded);
+            writeMemberDiffs(out, classDiff.fieldsChanged);
+        }
+        out.writeInt(entry.docDiffs_.size());
+        Iterator iter = entry.docDiffs_.iterator();
+        while (iter.hasNext()) {
+            DiffOutput diffOutput = (DiffOutput)(iter.next());
+            writeString(out, diffOutput.className_);
+            writeString(out, diffOutput.id_);
+            writeString(out, diffOutput.title_);
+            writeString(out, diffOutput.text_);
+        }
+    }
+
+    /** Write the keys of a list of constructors. */
+    private static void writeCtors(DataOutputStream out, List ctors) throws IOException {
+        out.writeInt(ctors.size());
+        Iterator iter = ctors.iterator();
+        while (iter.hasNext())
+            writeString(out, ctorKey((ConstructorAPI)(iter.next())));
+    }
+
+    /** Write the keys of a list of methods. */
+    private static void writeMethods(DataOutputStream out, List methods) throws IOException {
+        out.writeInt(methods.size());
+        Iterator iter = methods.iterator();
+        while (iter.hasNext())
+            writeString(out, methodKey((MethodAPI)(iter.next())));
+    }
+
+    /** Write the keys of a list of fields. */
+    private static void writeFields(DataOutputStream out, List fields) throws IOException {
+        out.writeInt(fields.size());
+        Iterator iter = fields.iterator();
+        while (iter.hasNext())
+            writeString(out, fieldKey((FieldAPI)(iter.next())));
+    }
+
+    /** Write a list of changed members. */
+    private static void writeMemberDiffs(DataOutputStream out, List memberDiffs) throws IOException {
+        out.writeInt(memberDiffs.size());
+        Iterator iter = memberDiffs.iterator();
+        while (iter.hasNext()) {
+            MemberDiff memberDiff = (MemberDiff)(iter.next());
+            writeString(out, memberDiff.name_);
+            writeString(out, memberDiff.oldType_);
+            writeString(out, memberDiff.newType_);
+            writeString(out, memberDiff.oldSignature_);
+            writeString(out, memberDiff.newSignature_);
+            writeString(out, memberDiff.oldExceptions_);
+            writeString(out, memberDiff.newExceptions_);
+            writeString(out, memberDiff.documentationChange_);
+            writeString(out, memberDiff.modifiersChange_);
+            writeString(out, memberDiff.inheritedFrom_);
+        }
+    }
+
+//
+// Reading the changes to a class
+//
+
+    /**
+     * Read the changes found when two classes were compared, or return
+     * null if any of the members which were removed or added cannot be
+     * found in the classes.
+     */
+    private static Entry readEntry(DataInputStream in, String pkgName,
+                                   ClassAPI oldClass, ClassAPI newClass) throws IOException {
+        Entry entry = new Entry();
+        entry.differs_ = in.readDouble();
+        if (in.readBoolean()) {
+            ClassDiff classDiff = new ClassDiff(oldClass.name_);
+            classDiff.isInterface_ = newClass.isInterface_;
+            classDiff.inheritanceChange_ = readString(in);
+            classDiff.documentationChange_ = readString(in);
+            classDiff.modifiersChange_ = readString(in);
+            classDiff.pdiff = in.readDouble();
+            if (!readCtors(in, oldClass.ctors_, classDiff.ctorsRemoved) ||
+                !readCtors(in, newClass.ctors_, classDiff.ctorsAdded))
+                return null;
+            readMemberDiffs(in, classDiff.ctorsChanged);
+            if (!readMethods(in, oldClass.methods_, classDiff.methodsRemoved) ||
+                !readMethods(in, newClass.methods_, classDiff.methodsAdded))
+                return null;
+            readMemberDiffs(in, classDiff.methodsChanged);
+            if (!readFields(in, oldClass.fields_, classDiff.fieldsRemoved) ||
+                !readFields(in, newClass.fields_, classDiff.fieldsAdded))
+                return null;
+            readMemberDiffs(in, classDiff.fieldsChanged);
+            entry.classDiff_ = classDiff;
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String className = readString(in);
+            String id = readString(in);
+            String title = readString(in);
+            String text = readString(in);
+            entry.docDiffs_.add(new DiffOutput(pkgName, className, id, title, text));
+        }
+        return entry;
+    }
+
+    /**
+     * Read the keys of a list of constructors, and add the constructors
+     * with those keys to the list, returning false if any are not found.
+     */
+    private static boolean readCtors(DataInputStream in, List ctors, List list) throws IOException {
+        int count = in.readInt();
+        if (count == 0)
+            return true;
+        Map index = new HashMap(); // String (key) -> ConstructorAPI
+        Iterator iter = ctors.iterator();
+        while (iter.hasNext()) {
+            ConstructorAPI ctor = (ConstructorAPI)(iter.next());
+            index.put(ctorKey(ctor), ctor);
+        }
+        return readMembers(in, count, index, ctors.size(), list);
+    }
+
+    /**
+     * Read the keys of a list of methods, and add the methods with those
+     * keys to the list, returning false if any are not found.
+     */
+    private static boolean readMethods(DataInputStream in, List methods, List list) throws IOException {
+        int count = in.readInt();
+        if (count == 0)
+            return true;
+        Map index = new HashMap(); // String (key) -> MethodAPI
+        Iterator iter = methods.iterator();
+        while (iter.hasNext()) {
+            MethodAPI method = (MethodAPI)(iter.next());
+            index.put(methodKey(method), method);
+        }
+        return readMembers(in, count, index, methods.size(), list);
+    }
+
+    /**
+     * Read the keys of a list of fields, and add the fields with those
+     * keys to the list, returning false if any are not found.
+     */
+    private static boolean readFields(DataInputStream in, List fields, List list) throws IOException {
+        int count = in.readInt();
+        if (count == 0)
+            return true;
+        Map index = new HashMap(); // String (key) -> FieldAPI
+        Iterator iter = fields.iterator();
+        while (iter.hasNext()) {
+            FieldAPI field = (FieldAPI)(iter.next());
+            index.put(fieldKey(field), field);
+        }
+        return readMembers(in, count, index, fields.size(), list);
+    }
+
+    /**
+     * Read the given number of keys, and add the members with those keys
+     * to the list. Return false if any are not found, or if two members
+     * of the class have the same key, so that it is not known which one
+     * was removed or added.
+     *
+     * @param numMembers The number of members in the class.
+     */
+    private static boolean readMembers(DataInputStream in, int count, Map index,
+                                       int numMembers, List list) throws IOException {
+        if (index.size() != numMembers)
+            return false;
+        for (int i = 0; i < count; i++) {
+            Object member = index.get(readString(in));
+            if (member == null)
+                return false;
+            list.add(member);
+        }
+        return true;
+    }
+
+    /** Read a list of changed members. */
+    private static void readMemberDiffs(DataInputStream in, List memberDiffs) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            MemberDiff memberDiff = new MemberDiff(readString(in));
+            memberDiff.oldType_ = readString(in);
+            memberDiff.newType_ = readString(in);
+            memberDiff.oldSignature_ = readString(in);
+            memberDiff.newSignature_ = readString(in);
+            memberDiff.oldExceptions_ = readString(in);
+            memberDiff.newExceptions_ = readString(in);
+            memberDiff.documentationChange_ = readString(in);
+            memberDiff.modifiersChange_ = readString(in);
+            memberDiff.inheritedFrom_ = readString(in);
+            memberDiffs.add(memberDiff);
+        }
+    }
+
+    /** Return the key of a constructor, which is unique in its class. */
+    private static String ctorKey(ConstructorAPI ctor) {
+        return ctor.type_;
+    }
+
+    /** Return the key of a method, from its name, signature and origin. */
+    private static String methodKey(MethodAPI method) {
+        return method.name_ + "(" + method.getSignature() + ")" + method.inheritedFrom_;
+    }
+
+    /** Return the key of a field, from its name and origin. */
+    private static String fieldKey(FieldAPI field) {
+        return field.name_ + " " + field.inheritedFrom_;
+    }
+
+    /** Read a string stored as a length and UTF-8 bytes, or -1 for null. */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Write a string as a length and UTF-8 bytes, or -1 for null. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+}
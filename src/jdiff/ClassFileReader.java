@@ -0,0 +1,450 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads the parts of a Java class file which describe its API: the access
+ * flags, names, types and generic signatures of the class and its fields
+ * and methods, the exceptions which the methods throw, the names of their
+ * parameters if these were compiled in, whether each is deprecated, and 
+ * the types of their annotations which are kept in the class file. For a
+ * module-info class, the name of the module and the packages which it
+ * exports are read. The code of the methods is not read.
+ *
+ * All names are kept in their internal form, such as "java/util/Map$Entry",
+ * and all types as descriptors or signatures, as they appear in the file.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class ClassFileReader {
+
+    /* The access flags in a class file. */
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SYNCHRONIZED = 0x0020;
+    static final int ACC_VOLATILE = 0x0040;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_TRANSIENT = 0x0080;
+    static final int ACC_VARARGS = 0x0080;
+    static final int ACC_NATIVE = 0x0100;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+    static final int ACC_ANNOTATION = 0x2000;
+    static final int ACC_ENUM = 0x4000;
+    static final int ACC_MODULE = 0x8000;
+
+    /** The first four bytes of every class file. */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /** A class or interface read from a class file. */
+    static class ClassInfo {
+        /** The internal name of the class. */
+        String name_ = null;
+
+        /** The internal name of the superclass, or null if none. */
+        String superName_ = null;
+
+        /** The internal names of the interfaces implemented. */
+        String[] interfaces_ = null;
+
+        /**
+         * The access flags, which for a nested class are those of its
+         * declaration in the enclosing class.
+         */
+        int access_ = 0;
+
+        /** The generic signature, or null if there is none. */
+        String signature_ = null;
+
+        /** Set if the class is deprecated. */
+        boolean isDeprecated_ = false;
+
+        /** The qualified names of the types of the annotations. */
+        List annotations_ = new ArrayList(); // String
+
+        /**
+         * The internal name of the enclosing class, or null if this class
+         * is not a member of another class.
+         */
+        String outerName_ = null;
+
+        /** Set if this is a local or anonymous class. */
+        boolean isLocal_ = false;
+
+        /** The simple name of the class. */
+        String simpleName_ = null;
+
+        /** The fields, in the order in which they appear in the file. */
+        List fields_ = new ArrayList(); // MemberInfo
+
+        /** The methods, in the order in which they appear in the file. */
+        List methods_ = new ArrayList(); // MemberInfo
+
+        /**
+         * The enclosing class and simple name of each member class named
+         * in the file, by the internal name of the member class.
+         */
+        Map innerClasses_ = new HashMap(); // String -> String[2]
+
+        /** The name of the module, if this is a module-info class. */
+        String moduleName_ = null;
+
+        /**
+         * The internal names of the packages which the module exports to
+         * all modules, if this is a module-info class.
+         */
+        List exports_ = new ArrayList(); // String
+    }
+
+    /** A field or method read from a class file. */
+    static class MemberInfo {
+        /** The name, which is "&lt;init&gt;" for a constructor. */
+        String name_ = null;
+
+        /** The descriptor of the type. */
+        String descriptor_ = null;
+
+        /** The generic signature, or null if there is none. */
+        String signature_ = null;
+
+        /** The access flags. */
+        int access_ = 0;
+
+        /** Set if the member is deprecated. */
+        boolean isDeprecated_ = false;
+
+        /** The qualified names of the types of the annotations. */
+        List annotations_ = new ArrayList(); // String
+
+        /** The internal names of the exceptions thrown by a method. */
+        String[] exceptions_ = null;
+
+        /**
+         * The names of the parameters of a method, or null if they were
+         * not compiled into the class file.
+         */
+        String[] paramNames_ = null;
+    }
+
+    /** The constant pool, with the Utf8 and Class constants resolved. */
+    private String[] strings_ = null;
+
+    /** The index of the Utf8 name of each Class, Module and Package constant. */
+    private int[] classNames_ = null;
+
+    /** The stream from which the class file is read. */
+    private DataInputStream in_ = null;
+
+    /**
+     * Read a class file.
+     *
+     * @param in The stream from which the class file is read.
+     * @return the class or interface in the file.
+     */
+    public static ClassInfo read(InputStream in) throws IOException {
+        ClassFileReader reader = new ClassFileReader();
+        reader.in_ = new DataInputStream(new BufferedInputStream(in));
+        return reader.readClass();
+    }
+
+    private ClassInfo readClass() throws IOException {
+        if (in_.readInt() != MAGIC)
+            throw new IOException("Not a class file");
+        in_.readUnsignedShort(); // minor_version
+        in_.readUnsignedShort(); // major_version
+        readConstantPool();
+
+        ClassInfo cls = new ClassInfo();
+        cls.access_ = in_.readUnsignedShort();
+        cls.name_ = className(in_.readUnsignedShort());
+        cls.superName_ = className(in_.readUnsignedShort());
+        cls.interfaces_ = new String[in_.readUnsignedShort()];
+        for (int i = 0; i < cls.interfaces_.length; i++)
+            cls.interfaces_[i] = className(in_.readUnsignedShort());
+        int simpleStart = cls.name_.lastIndexOf('/') + 1;
+        cls.simpleName_ = cls.name_.substring(simpleStart);
+
+        int count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+            cls.fields_.add(readMember(false));
+        count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+            cls.methods_.add(readMember(true));
+
+        count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String attrName = strings_[in_.readUnsignedShort()];
+            int length = in_.readInt();
+            if (attrName.equals("Signature")) {
+                cls.signature_ = strings_[in_.readUnsignedShort()];
+            } else if (attrName.equals("Deprecated")) {
+                cls.isDeprecated_ = true;
+            } else if (attrName.equals("RuntimeVisibleAnnotations") ||
+                       attrName.equals("RuntimeInvisibleAnnotations")) {
+                readAnnotations(cls.annotations_);
+            } else if (attrName.equals("InnerClasses")) {
+                int numClasses = in_.readUnsignedShort();
+                for (int j = 0; j < numClasses; j++) {
+                    String innerName = className(in_.readUnsignedShort());
+                    String outerName = className(in_.readUnsignedShort());
+                    int nameIndex = in_.readUnsignedShort();
+                    String simpleName = (nameIndex == 0) ? null : strings_[nameIndex];
+                    int access = in_.readUnsignedShort();
+                    if (innerName.equals(cls.name_)) {
+                        // The flags of the declaration of this class
+                        cls.access_ = access;
+                        cls.outerName_ = outerName;
+                        cls.isLocal_ = (outerName == null);
+                        if (simpleName != null)
+                            cls.simpleName_ = simpleName;
+                    }
+                    if (outerName != null && simpleName != null)
+                        cls.innerClasses_.put(innerName, new String[] {outerName, simpleName});
+                }
+            } else if (attrName.equals("Module")) {
+                readModule(cls, length);
+            } else if (attrName.equals("EnclosingMethod")) {
+                cls.isLocal_ = true;
+                skip(length);
+            } else {
+                skip(length);
+            }
+        }
+        return cls;
+    }
+
+    /** Read a field or method. */
+    private MemberInfo readMember(boolean isMethod) throws IOException {
+        MemberInfo member = new MemberInfo();
+        member.access_ = in_.readUnsignedShort();
+        member.name_ = strings_[in_.readUnsignedShort()];
+        member.descriptor_ = strings_[in_.readUnsignedShort()];
+        String[] localNames = null;
+        int count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String attrName = strings_[in_.readUnsignedShort()];
+            int length = in_.readInt();
+            if (attrName.equals("Signature")) {
+                member.signature_ = strings_[in_.readUnsignedShort()];
+            } else if (attrName.equals("Deprecated")) {
+                member.isDeprecated_ = true;
+            } else if (attrName.equals("RuntimeVisibleAnnotations") ||
+                       attrName.equals("RuntimeInvisibleAnnotations")) {
+                readAnnotations(member.annotations_);
+            } else if (isMethod && attrName.equals("Exceptions")) {
+                member.exceptions_ = new String[in_.readUnsignedShort()];
+                for (int j = 0; j < member.exceptions_.length; j++)
+                    member.exceptions_[j] = className(in_.readUnsignedShort());
+            } else if (isMethod && attrName.equals("MethodParameters")) {
+                int numParams = in_.readUnsignedByte();
+                member.paramNames_ = new String[numParams];
+                for (int j = 0; j < numParams; j++) {
+                    int nameIndex = in_.readUnsignedShort();
+                    in_.readUnsignedShort(); // access_flags
+                    if (nameIndex != 0)
+                        member.paramNames_[j] = strings_[nameIndex];
+                }
+            } else if (isMethod && attrName.equals("Code")) {
+                localNames = readLocalNames();
+            } else {
+                skip(length);
+            }
+        }
+        if (member.paramNames_ == null && localNames != null)
+            member.paramNames_ = paramNames(member, localNames);
+        return member;
+    }
+
+    /**
+     * Read the Code attribute of a method, returning the names of the
+     * local variables which start at the beginning of the method, by the
+     * slot which they use, or null if these were not compiled in.
+     */
+    private String[] readLocalNames() throws IOException {
+        in_.readUnsignedShort(); // max_stack
+        String[] names = new String[in_.readUnsignedShort()]; // max_locals
+        skip(in_.readInt()); // code
+        skip(in_.readUnsignedShort() * 8); // exception_table
+        boolean found = false;
+        int count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String attrName = strings_[in_.readUnsignedShort()];
+            int length = in_.readInt();
+            if (!attrName.equals("LocalVariableTable")) {
+                skip(length);
+                continue;
+            }
+            int numLocals = in_.readUnsignedShort();
+            for (int j = 0; j < numLocals; j++) {
+                int startPC = in_.readUnsignedShort();
+                in_.readUnsignedShort(); // length
+                String name = strings_[in_.readUnsignedShort()];
+                in_.readUnsignedShort(); // descriptor_index
+                int slot = in_.readUnsignedShort();
+                if (startPC == 0 && slot < names.length) {
+                    names[slot] = name;
+                    found = true;
+                }
+            }
+        }
+        return found ? names : null;
+    }
+
+    /**
+     * Return the names of the parameters of a method from the names of
+     * its local variables, or null if any of them are missing.
+     */
+    private static String[] paramNames(MemberInfo method, String[] localNames) {
+        List names = new ArrayList();
+        int slot = ((method.access_ & ACC_STATIC) != 0) ? 0 : 1;
+        String desc = method.descriptor_;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            if (slot >= localNames.length || localNames[slot] == null)
+                return null;
+            names.add(localNames[slot]);
+            char c = desc.charAt(i);
+            slot += (c == 'J' || c == 'D') ? 2 : 1;
+            while (desc.charAt(i) == '[')
+                i++;
+            if (desc.charAt(i) == 'L')
+                i = desc.indexOf(';', i);
+            i++;
+        }
+        return (String[])names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Read the annotations in an attribute, adding the qualified name of 
+     * the type of each one to the list, with dots between nested names.
+     */
+    private void readAnnotations(List names) throws IOException {
+        int count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // A descriptor such as "Lorg/apache/hadoop/classification/InterfaceAudience$Public;"
+            String desc = strings_[in_.readUnsignedShort()];
+            names.add(desc.substring(1, desc.length() - 1).replace('/', '.').replace('$', '.'));
+            skipElementValuePairs();
+        }
+    }
+
+    /** Skip over the element-value pairs of an annotation. */
+    private void skipElementValuePairs() throws IOException {
+        int count = in_.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in_.readUnsignedShort(); // element_name_index
+            skipElementValue();
+        }
+    }
+
+    /** Skip over the value of an element of an annotation. */
+    private void skipElementValue() throws IOException {
+        int tag = in_.readUnsignedByte();
+        switch (tag) {
+        case 'e': // An enum constant
+            skip(4);
+            break;
+        case '@': // A nested annotation
+            skip(2);
+            skipElementValuePairs();
+            break;
+        case '[': // An array
+            int count = in_.readUnsignedShort();
+            for (int i = 0; i < count; i++)
+                skipElementValue();
+            break;
+        default: // A constant or a class
+            skip(2);
+            break;
+        }
+    }
+
+    /**
+     * Read the name of a module and the packages which it exports to all
+     * modules from its Module attribute, skipping the rest of it.
+     */
+    private void readModule(ClassInfo cls, int length) throws IOException {
+        cls.moduleName_ = className(in_.readUnsignedShort());
+        skip(4); // module_flags, module_version_index
+        int read = 6;
+        int count = in_.readUnsignedShort();
+        skip(count * 6); // requires
+        read += 2 + count * 6;
+        count = in_.readUnsignedShort();
+        read += 2;
+        for (int i = 0; i < count; i++) {
+            String pkgName = className(in_.readUnsignedShort());
+            skip(2); // exports_flags
+            int numTargets = in_.readUnsignedShort();
+            skip(numTargets * 2);
+            read += 6 + numTargets * 2;
+            if (numTargets == 0)
+                cls.exports_.add(pkgName);
+        }
+        skip(length - read);
+    }
+
+    /** Read the constant pool, keeping only the strings and classes. */
+    private void readConstantPool() throws IOException {
+        int count = in_.readUnsignedShort();
+        strings_ = new String[count];
+        classNames_ = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in_.readUnsignedByte();
+            switch (tag) {
+            case 1: // Utf8
+                strings_[i] = in_.readUTF();
+                break;
+            case 7: // Class
+            case 19: // Module
+            case 20: // Package
+                classNames_[i] = in_.readUnsignedShort();
+                break;
+            case 8: // String
+            case 16: // MethodType
+                skip(2);
+                break;
+            case 15: // MethodHandle
+                skip(3);
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                skip(4);
+                break;
+            case 5: // Long
+            case 6: // Double
+                skip(8);
+                i++; // These take up two entries
+                break;
+            default:
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    /** 
+     * Return the name of the Class, Module or Package constant, or null 
+     * for index 0.
+     */
+    private String className(int index) {
+        if (index == 0)
+            return null;
+        return strings_[classNames_[index]];
+    }
+
+    /** Skip over a number of bytes. */
+    private void skip(int n) throws IOException {
+        in_.skipBytes(n);
+    }
+}
@@ -0,0 +1,761 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes the XML representation of an API which is read from compiled
+ * classes in jar files or directories, rather than from source files by
+ * Javadoc. The XML is written in the same way as for the source files,
+ * except that there is no documentation, since this is not in the class
+ * files. The names of parameters are only known if they were compiled
+ * into the class files, and otherwise are "arg0", "arg1" and so on, as
+ * Javadoc names them. Deprecated program elements are marked as
+ * deprecated without a comment.
+ *
+ * This is used with the -apiclasspath option, or can be run on its own:
+ * <pre>
+ * java -cp jdiff.jar jdiff.ClassFileToXML [-apidir &lt;dir&gt;] [-gzip] [-shards] &lt;API name&gt; &lt;jars and directories&gt;
+ * </pre>
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class ClassFileToXML extends RootDocToXML {
+
+    /** The jar files and directories, separated by the path separator. */
+    private String classPath_ = null;
+
+    /** All the classes read in, by their internal name. */
+    private Map classes_ = new HashMap(); // String -> ClassInfo
+
+    /**
+     * The enclosing class and simple name of every member class named in
+     * any of the class files, by the internal name of the member class.
+     */
+    private Map innerClasses_ = new HashMap(); // String -> String[2]
+
+    /** The name of the module of each package in a named module. */
+    private Map packageModules_ = new HashMap(); // String -> String
+
+    /** The packages which their modules export to all modules. */
+    private Set exportedPackages_ = new HashSet(); // String
+
+    /** The module-info class in the jar file or directory being read. */
+    private ClassFileReader.ClassInfo entryModule_ = null;
+
+    /** The packages of the classes in the jar file or directory being read. */
+    private Set entryPackages_ = null; // String
+
+    /** The signature or descriptor being parsed. */
+    private String sig_ = null;
+
+    /** The position in the signature or descriptor being parsed. */
+    private int pos_ = 0;
+
+    /**
+     * Create a writer for the API in the given jar files and directories.
+     *
+     * @param classPath The jar files and directories, separated by the
+     *                  path separator.
+     */
+    public ClassFileToXML(String classPath) {
+        classPath_ = classPath;
+    }
+
+    /**
+     * Write the XML for the classes in jar files or directories without
+     * running Javadoc.
+     */
+    public static void main(String[] args) {
+        Options.reset();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-apidir") && i + 1 < args.length) {
+                outputDirectory = args[++i];
+            } else if (args[i].equals("-gzip")) {
+                compressXML = true;
+            } else if (args[i].equals("-shards")) {
+                shardXML = true;
+            } else {
+                usage();
+            }
+        }
+        if (args.length - i < 2)
+            usage();
+        apiIdentifier = args[i];
+        outputFileName = args[i].replace(' ', '_') + ".xml";
+        StringBuffer classPath = new StringBuffer();
+        StringBuffer cmdOptions = new StringBuffer();
+        for (int j = 0; j < args.length; j++) {
+            if (j > i + 1)
+                classPath.append(File.pathSeparator);
+            if (j > i)
+                classPath.append(args[j]);
+            cmdOptions.append(" " + args[j]);
+        }
+        apiClassPath = classPath.toString();
+        Options.cmdOptions = cmdOptions.toString();
+        writeXML(null);
+    }
+
+    /** Display the usage of this class when it is run on its own, and exit. */
+    private static void usage() {
+        System.err.println("usage: java jdiff.ClassFileToXML [-apidir <directory>] [-gzip] [-shards] <API name> <jar file or directory of class files>...");
+        System.exit(1);
+    }
+
+    /**
+     * Read in all the classes, returning true if any of them are to be
+     * written.
+     */
+    boolean hasIncludedTypes() {
+        StringTokenizer st = new StringTokenizer(classPath_, File.pathSeparator);
+        while (st.hasMoreTokens()) {
+            String name = st.nextToken();
+            File file = new File(name);
+            entryModule_ = null;
+            entryPackages_ = new HashSet();
+            try {
+                if (file.isDirectory()) {
+                    readDirectory(file);
+                } else if (file.isFile()) {
+                    readJar(file);
+                } else {
+                    System.out.println("Error: file '" + name + "' does not exist");
+                    System.exit(1);
+                }
+            } catch (IOException e) {
+                System.out.println("Error: unable to read the classes in '" + name + "' : " + e);
+                e.printStackTrace();
+                System.exit(1);
+            }
+            addModule();
+        }
+        Iterator iter = classes_.values().iterator();
+        while (iter.hasNext()) {
+            if (shownClass((ClassFileReader.ClassInfo)(iter.next())))
+                return true;
+        }
+        return false;
+    }
+
+    /** Read all the class files in a jar file. */
+    private void readJar(File file) throws IOException {
+        ZipFile jar = new ZipFile(file);
+        try {
+            Enumeration entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = (ZipEntry)(entries.nextElement());
+                // Skip the versions for other releases of Java
+                if (entry.isDirectory() || entry.getName().startsWith("META-INF/"))
+                    continue;
+                if (!entry.getName().endsWith(".class"))
+                    continue;
+                InputStream in = jar.getInputStream(entry);
+                try {
+                    addClass(ClassFileReader.read(in), file + "!" + entry.getName());
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    /** Read all the class files in a directory and its subdirectories. */
+    private void readDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                readDirectory(files[i]);
+            } else if (files[i].getName().endsWith(".class")) {
+                InputStream in = new FileInputStream(files[i]);
+                try {
+                    addClass(ClassFileReader.read(in), files[i].getPath());
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a class which has been read in. A class which has already been
+     * read from an earlier jar file or directory is ignored, as it would be
+     * on a classpath.
+     */
+    private void addClass(ClassFileReader.ClassInfo cls, String fileName) {
+        if ((cls.access_ & ClassFileReader.ACC_MODULE) != 0) {
+            entryModule_ = cls;
+            return;
+        }
+        if (classes_.containsKey(cls.name_)) {
+            if (trace) System.out.println("Ignoring the second class " + cls.name_ + " in " + fileName);
+            return;
+        }
+        classes_.put(cls.name_, cls);
+        innerClasses_.putAll(cls.innerClasses_);
+        entryPackages_.add(packageName(cls));
+    }
+
+    /**
+     * If the jar file or directory just read is a module, with a 
+     * module-info class, then add the packages of the classes read from it
+     * to the module, and note which of them the module exports.
+     */
+    private void addModule() {
+        if (entryModule_ == null)
+            return;
+        Iterator iter = entryPackages_.iterator();
+        while (iter.hasNext()) {
+            String pkgName = (String)(iter.next());
+            if (!packageModules_.containsKey(pkgName))
+                packageModules_.put(pkgName, entryModule_.moduleName_);
+        }
+        iter = entryModule_.exports_.iterator();
+        while (iter.hasNext())
+            exportedPackages_.add(((String)(iter.next())).replace('/', '.'));
+    }
+
+    /**
+     * Return true if the class is to be written. It must be visible, and 
+     * not be left out because of its annotations.
+     */
+    private boolean shownClass(ClassFileReader.ClassInfo cls) {
+        if (!visibleClass(cls))
+            return false;
+        return !AnnotationFilter.isSet() ||
+            AnnotationFilter.shown(annotationRule(cls));
+    }
+
+    /**
+     * Return the rule given by the annotations on a class, or else by 
+     * those on its nearest enclosing class or its package with any of the
+     * annotations in the rules.
+     */
+    private int annotationRule(ClassFileReader.ClassInfo cls) {
+        ClassFileReader.ClassInfo c = cls;
+        while (c != null) {
+            int rule = AnnotationFilter.rule(c.annotations_);
+            if (rule != AnnotationFilter.NONE)
+                return rule;
+            if (c.outerName_ == null)
+                break;
+            c = (ClassFileReader.ClassInfo)classes_.get(c.outerName_);
+        }
+        // The annotations of a package are on its package-info class
+        String pkgInfo = cls.name_.substring(0, cls.name_.lastIndexOf('/') + 1) + "package-info";
+        ClassFileReader.ClassInfo pkg = (ClassFileReader.ClassInfo)classes_.get(pkgInfo);
+        if (pkg != null)
+            return AnnotationFilter.rule(pkg.annotations_);
+        return AnnotationFilter.NONE;
+    }
+
+    /**
+     * Return true if the class is visible. Local, anonymous and synthetic
+     * classes are never visible, and neither are classes in enclosing 
+     * classes which are not visible.
+     */
+    private boolean visibleClass(ClassFileReader.ClassInfo cls) {
+        if (cls.isLocal_ || (cls.access_ & ClassFileReader.ACC_SYNTHETIC) != 0)
+            return false;
+        if (cls.simpleName_.equals("package-info"))
+            return false;
+        if (packagesOnly && packageName(cls).length() == 0)
+            return false;
+        if (!shownAccess(cls.access_, classVisibilityLevel))
+            return false;
+        if (cls.outerName_ != null) {
+            ClassFileReader.ClassInfo outer = (ClassFileReader.ClassInfo)classes_.get(cls.outerName_);
+            return outer != null && visibleClass(outer);
+        }
+        return true;
+    }
+
+    /**
+     * Return true if a program element with the given access flags is
+     * shown at the given level of visibility.
+     */
+    private static boolean shownAccess(int access, String visLevel) {
+        if (visLevel == null)
+            return true;
+        if (visLevel.compareTo("private") == 0)
+            return true;
+        if (visLevel.compareTo("package") == 0)
+            return (access & ClassFileReader.ACC_PRIVATE) == 0;
+        if (visLevel.compareTo("protected") == 0)
+            return (access & (ClassFileReader.ACC_PUBLIC | ClassFileReader.ACC_PROTECTED)) != 0;
+        if (visLevel.compareTo("public") == 0)
+            return (access & ClassFileReader.ACC_PUBLIC) != 0;
+        return false;
+    }
+
+    /** Return the name of the package of a class. */
+    private static String packageName(ClassFileReader.ClassInfo cls) {
+        int idx = cls.name_.lastIndexOf('/');
+        if (idx == -1)
+            return "";
+        return cls.name_.substring(0, idx).replace('/', '.');
+    }
+
+    /**
+     * Process each package and the classes/interfaces within it.
+     */
+    public void processPackages() {
+        Map packages = new TreeMap(); // String -> List of ClassInfo
+        Iterator iter = classes_.values().iterator();
+        while (iter.hasNext()) {
+            ClassFileReader.ClassInfo cls = (ClassFileReader.ClassInfo)(iter.next());
+            if (!shownClass(cls))
+                continue;
+            String pkgName = packageName(cls);
+            List classList = (List)packages.get(pkgName);
+            if (classList == null) {
+                classList = new ArrayList();
+                packages.put(pkgName, classList);
+            }
+            classList.add(cls);
+        }
+        // Group the packages by the modules which contain them, leaving
+        // out those which are not exported by a selected module
+        List<String> packageNames = new ArrayList<String>();
+        iter = packages.keySet().iterator();
+        while (iter.hasNext()) {
+            String pkgName = (String)(iter.next());
+            String moduleName = (String)packageModules_.get(pkgName);
+            if (shownInModule(moduleName, exportedPackages_.contains(pkgName)))
+                packageNames.add(pkgName);
+        }
+        sortByModule(packageNames, packageModules_);
+        iter = packageNames.iterator();
+        while (iter.hasNext()) {
+            String pkgName = (String)(iter.next());
+            List classList = (List)packages.get(pkgName);
+            // The same order as for the classes read by Javadoc
+            Collections.sort(classList, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    String n1 = ((ClassFileReader.ClassInfo)o1).simpleName_;
+                    String n2 = ((ClassFileReader.ClassInfo)o2).simpleName_;
+                    int res = n1.compareTo(n2);
+                    if (res != 0)
+                        return res;
+                    return ((ClassFileReader.ClassInfo)o1).name_.compareTo(((ClassFileReader.ClassInfo)o2).name_);
+                }
+            });
+            if (shardDirectory_ != null)
+                startShard(pkgName);
+            if (trace) System.out.println("PROCESSING PACKAGE: " + pkgName);
+            writeFingerprintedPackage(pkgName, (String)packageModules_.get(pkgName), () -> {
+                Iterator iter2 = classList.iterator();
+                while (iter2.hasNext())
+                    processClass((ClassFileReader.ClassInfo)(iter2.next()), pkgName);
+            }, () -> {});
+            if (shardDirectory_ != null)
+                endShard();
+        }
+    }
+
+    /**
+     * Process one class or interface.
+     */
+    private void processClass(ClassFileReader.ClassInfo cls, String pkgName) {
+        boolean isInterface = (cls.access_ & ClassFileReader.ACC_INTERFACE) != 0;
+        if (trace) System.out.println("PROCESSING CLASS/IFC: " + cls.simpleName_);
+        String startTag = null;
+        if (isInterface) {
+            outputFile.println("  <!-- start interface " + pkgName + "." + cls.simpleName_ + " -->");
+            startTag = "  <interface name=\"" + cls.simpleName_ + "\"";
+        } else {
+            outputFile.println("  <!-- start class " + pkgName + "." + cls.simpleName_ + " -->");
+            startTag = "  <class name=\"" + cls.simpleName_ + "\"";
+        }
+        // The superclass and interfaces, from the signature if there is one
+        String parent = null;
+        List ifaces = new ArrayList();
+        if (cls.signature_ != null) {
+            startParse(cls.signature_);
+            skipTypeParameters();
+            parent = parseType();
+            while (pos_ < sig_.length())
+                ifaces.add(parseType());
+        } else {
+            if (cls.superName_ != null)
+                parent = className(cls.superName_);
+            for (int i = 0; i < cls.interfaces_.length; i++)
+                ifaces.add(className(cls.interfaces_[i]));
+        }
+        final String extendsName = (isInterface || "java/lang/Object".equals(cls.superName_)) ? null : parent;
+        String attributes = render(() -> {
+            if (extendsName != null)
+                outputFile.println(" extends=\"" + escapeXML(extendsName) + "\"");
+            outputFile.println("    abstract=\"" + ((cls.access_ & ClassFileReader.ACC_ABSTRACT) != 0) + "\"");
+            addModifiers(cls.access_, cls.isDeprecated_, 4);
+        });
+        String members = render(() -> {
+            Iterator iter = ifaces.iterator();
+            while (iter.hasNext())
+                outputFile.println("    <implements name=\"" + escapeXML((String)(iter.next())) + "\"/>");
+            processConstructors(cls);
+            processMethods(cls);
+            processFields(cls);
+        });
+        writeFingerprintedClass(startTag, attributes, members);
+
+        if (isInterface) {
+            outputFile.println("  </interface>");
+            outputFile.println("  <!-- end interface " + pkgName + "." + cls.simpleName_ + " -->");
+        } else {
+            outputFile.println("  </class>");
+            outputFile.println("  <!-- end class " + pkgName + "." + cls.simpleName_ + " -->");
+        }
+    }
+
+    /** 
+     * Return true if a field or method in a class which is written is to 
+     * be written. 
+     */
+    private static boolean shownMember(ClassFileReader.MemberInfo member) {
+        if ((member.access_ & ClassFileReader.ACC_SYNTHETIC) != 0)
+            return false;
+        // The rule for the class, if it has one, included it
+        if (AnnotationFilter.isSet() &&
+            AnnotationFilter.rule(member.annotations_) == AnnotationFilter.EXCLUDE)
+            return false;
+        return shownAccess(member.access_, memberVisibilityLevel);
+    }
+
+    /**
+     * Process the constructors in the class.
+     */
+    private void processConstructors(ClassFileReader.ClassInfo cls) {
+        Iterator iter = cls.methods_.iterator();
+        while (iter.hasNext()) {
+            ClassFileReader.MemberInfo ctor = (ClassFileReader.MemberInfo)(iter.next());
+            if (!ctor.name_.equals("<init>") || !shownMember(ctor))
+                continue;
+            if (trace) System.out.println("PROCESSING CONSTRUCTOR: " + cls.simpleName_);
+            List paramTypes = new ArrayList();
+            List thrown = new ArrayList();
+            parseMethod(ctor, paramTypes, thrown);
+            if (ctor.signature_ == null) {
+                // Remove the parameters which the compiler adds
+                int added = 0;
+                if ((cls.access_ & ClassFileReader.ACC_ENUM) != 0)
+                    added = 2;
+                else if (cls.outerName_ != null &&
+                         (cls.access_ & (ClassFileReader.ACC_STATIC | ClassFileReader.ACC_INTERFACE)) == 0)
+                    added = 1;
+                for (int i = 0; i < added && !paramTypes.isEmpty(); i++)
+                    paramTypes.remove(0);
+            }
+            outputFile.print("    <constructor name=\"" + cls.simpleName_ + "\"");
+            if (!paramTypes.isEmpty()) {
+                outputFile.print(" type=\"");
+                for (int j = 0; j < paramTypes.size(); j++) {
+                    if (j != 0)
+                        outputFile.print(", ");
+                    outputFile.print(escapeXML(paramType(ctor, paramTypes, j)));
+                }
+                outputFile.println("\"");
+            } else {
+                outputFile.println();
+            }
+            addModifiers(ctor.access_, ctor.isDeprecated_, 6);
+            outputFile.println(">");
+
+            processThrownTypes(thrown);
+
+            outputFile.println("    </constructor>");
+        }
+    }
+
+    /**
+     * Process the methods in the class.
+     */
+    private void processMethods(ClassFileReader.ClassInfo cls) {
+        Iterator iter = cls.methods_.iterator();
+        while (iter.hasNext()) {
+            ClassFileReader.MemberInfo method = (ClassFileReader.MemberInfo)(iter.next());
+            if (method.name_.startsWith("<") || !shownMember(method))
+                continue;
+            if ((method.access_ & ClassFileReader.ACC_BRIDGE) != 0)
+                continue;
+            if (trace) System.out.println("PROCESSING METHOD: " + method.name_);
+            List paramTypes = new ArrayList();
+            List thrown = new ArrayList();
+            String retType = parseMethod(method, paramTypes, thrown);
+            outputFile.print("    <method name=\"" + method.name_ + "\"");
+            if (retType.equals("void")) {
+                outputFile.println();
+            } else {
+                outputFile.print(" return=\"");
+                outputFile.print(escapeXML(retType));
+                outputFile.println("\"");
+            }
+            int access = method.access_;
+            outputFile.print("      abstract=\"" + ((access & ClassFileReader.ACC_ABSTRACT) != 0) + "\"");
+            outputFile.print(" native=\"" + ((access & ClassFileReader.ACC_NATIVE) != 0) + "\"");
+            outputFile.println(" synchronized=\"" + ((access & ClassFileReader.ACC_SYNCHRONIZED) != 0) + "\"");
+            addModifiers(access, method.isDeprecated_, 6);
+            outputFile.println(">");
+
+            String[] names = method.paramNames_;
+            for (int j = 0; j < paramTypes.size(); j++) {
+                // Any extra names are for parameters which the compiler adds
+                String name = "arg" + j;
+                if (names != null && names.length >= paramTypes.size()) {
+                    String compiledName = names[names.length - paramTypes.size() + j];
+                    if (compiledName != null)
+                        name = compiledName;
+                }
+                outputFile.print("      <param name=\"" + name + "\"");
+                outputFile.print(" type=\"");
+                outputFile.print(escapeXML(paramType(method, paramTypes, j)));
+                outputFile.println("\"/>");
+            }
+
+            processThrownTypes(thrown);
+
+            outputFile.println("    </method>");
+        }
+    }
+
+    /**
+     * Process the fields in the class. Enum constants are not fields.
+     */
+    private void processFields(ClassFileReader.ClassInfo cls) {
+        Iterator iter = cls.fields_.iterator();
+        while (iter.hasNext()) {
+            ClassFileReader.MemberInfo field = (ClassFileReader.MemberInfo)(iter.next());
+            if ((field.access_ & ClassFileReader.ACC_ENUM) != 0 || !shownMember(field))
+                continue;
+            if (trace) System.out.println("PROCESSING FIELD: " + field.name_);
+            startParse(field.signature_ != null ? field.signature_ : field.descriptor_);
+            String type = parseType();
+            outputFile.print("    <field name=\"" + field.name_ + "\"");
+            outputFile.print(" type=\"");
+            outputFile.print(escapeXML(type));
+            outputFile.println("\"");
+            int access = field.access_;
+            outputFile.print("      transient=\"" + ((access & ClassFileReader.ACC_TRANSIENT) != 0) + "\"");
+            outputFile.println(" volatile=\"" + ((access & ClassFileReader.ACC_VOLATILE) != 0) + "\"");
+            addModifiers(access, field.isDeprecated_, 6);
+            outputFile.println(">");
+
+            outputFile.println("    </field>");
+        }
+    }
+
+    /**
+     * Process all exceptions thrown by a constructor or method.
+     */
+    private void processThrownTypes(List thrown) {
+        Iterator iter = thrown.iterator();
+        while (iter.hasNext()) {
+            String type = (String)(iter.next());
+            String name = type;
+            int idx = name.indexOf('<');
+            if (idx != -1)
+                name = name.substring(0, idx);
+            name = name.substring(name.lastIndexOf('.') + 1);
+            outputFile.print("      <exception name=\"" + name + "\" type=\"");
+            outputFile.print(escapeXML(type));
+            outputFile.println("\"/>");
+        }
+    }
+
+    /**
+     * Return the type of a parameter, using "..." for the last parameter
+     * of a method with a variable number of arguments.
+     */
+    private static String paramType(ClassFileReader.MemberInfo method,
+                                    List paramTypes, int j) {
+        String type = (String)paramTypes.get(j);
+        if ((method.access_ & ClassFileReader.ACC_VARARGS) != 0 &&
+            j == paramTypes.size() - 1 && type.endsWith("[]"))
+            return type.substring(0, type.length() - 2) + "...";
+        return type;
+    }
+
+    /**
+     * Add the qualifiers of a program element as attributes, in the same
+     * way as for a program element read by Javadoc.
+     */
+    private void addModifiers(int access, boolean isDeprecated, int indent) {
+        for (int i = 0; i < indent; i++) outputFile.print(" ");
+        outputFile.print("static=\"" + ((access & ClassFileReader.ACC_STATIC) != 0) + "\"");
+        outputFile.print(" final=\"" + ((access & ClassFileReader.ACC_FINAL) != 0) + "\"");
+        String visibility = null;
+        if ((access & ClassFileReader.ACC_PUBLIC) != 0)
+            visibility = "public";
+        else if ((access & ClassFileReader.ACC_PROTECTED) != 0)
+            visibility = "protected";
+        else if ((access & ClassFileReader.ACC_PRIVATE) != 0)
+            visibility = "private";
+        else
+            visibility = "package";
+        outputFile.println(" visibility=\"" + visibility + "\"");
+
+        for (int i = 0; i < indent; i++) outputFile.print(" ");
+        if (isDeprecated)
+            outputFile.print("deprecated=\"deprecated, no comment\"");
+        else
+            outputFile.print("deprecated=\"not deprecated\"");
+    }
+
+    /**
+     * Parse the signature, or else the descriptor, of a method.
+     *
+     * @param paramTypes Set to the types of the parameters.
+     * @param thrown Set to the types of the exceptions thrown.
+     * @return the return type.
+     */
+    private String parseMethod(ClassFileReader.MemberInfo method,
+                               List paramTypes, List thrown) {
+        startParse(method.signature_ != null ? method.signature_ : method.descriptor_);
+        skipTypeParameters();
+        pos_++; // '('
+        while (sig_.charAt(pos_) != ')')
+            paramTypes.add(parseType());
+        pos_++;
+        String retType = parseType();
+        while (pos_ < sig_.length() && sig_.charAt(pos_) == '^') {
+            pos_++;
+            thrown.add(parseType());
+        }
+        if (thrown.isEmpty() && method.exceptions_ != null) {
+            for (int i = 0; i < method.exceptions_.length; i++)
+                thrown.add(className(method.exceptions_[i]));
+        }
+        return retType;
+    }
+
+    /** Start parsing a signature or descriptor. */
+    private void startParse(String sig) {
+        sig_ = sig;
+        pos_ = 0;
+    }
+
+    /** Skip over the type parameters at the start of a signature. */
+    private void skipTypeParameters() {
+        if (sig_.charAt(pos_) != '<')
+            return;
+        pos_++;
+        while (sig_.charAt(pos_) != '>') {
+            pos_ = sig_.indexOf(':', pos_);
+            while (sig_.charAt(pos_) == ':') {
+                pos_++;
+                // The class bound may be empty
+                if (sig_.charAt(pos_) != ':' && sig_.charAt(pos_) != '>' &&
+                    "LT[".indexOf(sig_.charAt(pos_)) != -1)
+                    parseType();
+            }
+        }
+        pos_++;
+    }
+
+    /**
+     * Parse a type in a signature or descriptor, returning it in the same
+     * form as Javadoc shows it.
+     */
+    private String parseType() {
+        char c = sig_.charAt(pos_++);
+        switch (c) {
+        case 'B': return "byte";
+        case 'C': return "char";
+        case 'D': return "double";
+        case 'F': return "float";
+        case 'I': return "int";
+        case 'J': return "long";
+        case 'S': return "short";
+        case 'Z': return "boolean";
+        case 'V': return "void";
+        case '[': return parseType() + "[]";
+        case '*': return "?";
+        case '+': return "? extends " + parseType();
+        case '-': return "? super " + parseType();
+        case 'T': {
+            int end = sig_.indexOf(';', pos_);
+            String name = sig_.substring(pos_, end);
+            pos_ = end + 1;
+            return name;
+        }
+        case 'L': return parseClassType();
+        default:
+            throw new IllegalArgumentException("Invalid signature '" + sig_ + "' at " + (pos_ - 1));
+        }
+    }
+
+    /**
+     * Parse a class type, after its initial 'L'. A member class of a
+     * parameterized type is shown after that type, as in
+     * "Outer&lt;T&gt;.Inner".
+     */
+    private String parseClassType() {
+        String binaryName = parseIdentifier();
+        String args = parseTypeArguments();
+        String type = className(binaryName) + args;
+        boolean isParameterized = args.length() != 0;
+        while (sig_.charAt(pos_) == '.') {
+            pos_++;
+            String simpleName = parseIdentifier();
+            binaryName = binaryName + "$" + simpleName;
+            args = parseTypeArguments();
+            if (isParameterized)
+                type = type + "." + simpleName + args;
+            else
+                type = className(binaryName) + args;
+            isParameterized = isParameterized || args.length() != 0;
+        }
+        pos_++; // ';'
+        return type;
+    }
+
+    /** Parse a name up to the next '&lt;', '.' or ';'. */
+    private String parseIdentifier() {
+        int start = pos_;
+        while (true) {
+            char c = sig_.charAt(pos_);
+            if (c == '<' || c == '.' || c == ';')
+                break;
+            pos_++;
+        }
+        return sig_.substring(start, pos_);
+    }
+
+    /** Parse any type arguments, returning them as "&lt;A,B&gt;". */
+    private String parseTypeArguments() {
+        if (sig_.charAt(pos_) != '<')
+            return "";
+        pos_++;
+        StringBuffer args = new StringBuffer("<");
+        while (sig_.charAt(pos_) != '>') {
+            if (args.length() != 1)
+                args.append(',');
+            args.append(parseType());
+        }
+        pos_++;
+        args.append('>');
+        return args.toString();
+    }
+
+    /**
+     * Return the qualified name of a class from its internal name, using
+     * '.' between the names of member classes and their enclosing classes.
+     */
+    private String className(String binaryName) {
+        String[] inner = (String[])innerClasses_.get(binaryName);
+        if (inner != null)
+            return className(inner[0]) + "." + inner[1];
+        return binaryName.replace('/', '.');
+    }
+
+    /** Set to enable increased logging verbosity for debugging. */
+    private static boolean trace = false;
+}
@@ -23,6 +23,8 @@ public class Comments {
 
     /** 
      * All the possible comments known about, accessible by the commentID.
+     * Each comment is a String, or a LazyDoc if the doc blocks are only
+     * read in when they are needed.
      */
     public static Hashtable allPossibleComments = new Hashtable();
 
@@ -81,7 +83,9 @@ public class Comments {
             }
             parser.setContentHandler(handler);
             parser.setErrorHandler(handler);
-            parser.parse(new InputSource(new FileInputStream(new File(filename))));
+            InputStream in = FileStreams.openInput(filename);
+            parser.parse(new InputSource(in));
+            in.close();
         } catch(org.xml.sax.SAXNotRecognizedException snre) {
             System.out.println("SAX Parser does not recognize feature: " + snre);
             snre.printStackTrace();
@@ -381,9 +385,8 @@ public class Comments {
     public static boolean writeFile(String outputFileName, 
                                     Comments newComments) {
         try {
-            FileOutputStream fos = new FileOutputStream(outputFileName);
-            outputFile = new PrintWriter(fos);
-            newComments.emitXMLHeader(outputFileName);
+            outputFile = new PrintWriter(FileStreams.openOutput(outputFileName));
+            newComments.emitXMLHeader(FileStreams.uncompressedName(outputFileName));
             newComments.emitComments();
             newComments.emitXMLFooter();
             outputFile.close();
@@ -527,6 +530,20 @@ public class Comments {
         return false;
     }
 
+    /**
+     * Return the text in the buffer with any whitespace at each end removed,
+     * as String.trim() would, but creating only the one String.
+     */
+    public static String trimmedText(StringBuilder text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        return text.substring(start, end);
+    }
+
     /** 
      * The file where the XML representing the new Comments object is stored. 
      */
@@ -34,8 +34,11 @@ class CommentsHandler extends DefaultHandler {
     /** Set if in text. */
     private boolean inText = false;
 
-    /** The current text which is being assembled from chunks. */
-    private String currentText = null;
+    /** 
+     * The current text which is being assembled from chunks. The buffer 
+     * is reused for every text element.
+     */
+    private StringBuilder currentText = new StringBuilder(1024);
     
     /** The stack of SingleComments still waiting for comment text. */
     private LinkedList tagStack = null;
@@ -84,7 +87,7 @@ class CommentsHandler extends DefaultHandler {
             currSingleComment_.add(newComment);
         } else if (localName.compareTo("text") == 0) {
             inText = true;
-            currentText = null;
+            currentText.setLength(0);
         } else {
             if (inText) {
                 // Start of an element, probably an HTML element
@@ -112,11 +115,7 @@ class CommentsHandler extends DefaultHandler {
     /** Deal with a chunk of text. The text may come in multiple chunks. */
     public void characters(char[] ch, int start, int length) {
         if (inText) {
-            String chunk = new String(ch, start, length);
-            if (currentText == null)
-                currentText = chunk;
-            else
-                currentText += chunk;
+            currentText.append(ch, start, length);
         }
     }
 
@@ -126,22 +125,22 @@ class CommentsHandler extends DefaultHandler {
      */
     public void addTextToComments() {
         // Eliminate any whitespace at each end of the text.
-        currentText = currentText.trim();
+        String text = Comments.trimmedText(currentText);
         // Check that it is a sentence
-        if (!currentText.endsWith(".") &&
-            !currentText.endsWith("?") &&
-            !currentText.endsWith("!") && 
-            currentText.compareTo(Comments.placeHolderText) != 0) {
-            System.out.println("Warning: text of comment does not end in a period: " + currentText);
+        if (!text.endsWith(".") &&
+            !text.endsWith("?") &&
+            !text.endsWith("!") && 
+            text.compareTo(Comments.placeHolderText) != 0) {
+            System.out.println("Warning: text of comment does not end in a period: " + text);
         }
         // Add this comment to all the SingleComments waiting for it
         Iterator iter = currSingleComment_.iterator();
         while (iter.hasNext()) {
             SingleComment currComment = (SingleComment)(iter.next());
             if (currComment.text_ == null)
-                currComment.text_ = currentText;
+                currComment.text_ = text;
             else
-                currComment.text_ += currentText;
+                currComment.text_ += text;
             comments_.addComment(currComment);
         }
     }
@@ -154,26 +153,21 @@ class CommentsHandler extends DefaultHandler {
         String currentHTMLTag = localName;
         // Save the tag in a stack
         tagStack.add(currentHTMLTag);
-        String tag = "<" + currentHTMLTag;
+        currentText.append('<').append(currentHTMLTag);
         // Now add all the attributes into the current text
         int len = attributes.getLength();
         for (int i = 0; i < len; i++) {
             String name = attributes.getLocalName(i);
             String value = attributes.getValue(i);
-            tag += " " + name + "=\"" + value+ "\"";
+            currentText.append(' ').append(name).append("=\"").append(value).append('"');
         }
 
         // End the tag
         if (Comments.isMinimizedTag(currentHTMLTag)) {
-            tag += "/>";
+            currentText.append("/>");
         } else {
-            tag += ">";
+            currentText.append('>');
         }
-        // Now insert the HTML tag into the current text
-        if (currentText == null)
-            currentText = tag;
-        else
-            currentText += tag;
     }
 
     /** 
@@ -183,7 +177,7 @@ class CommentsHandler extends DefaultHandler {
         // Close the current HTML tag
         String currentHTMLTag = (String)(tagStack.removeLast());
         if (!Comments.isMinimizedTag(currentHTMLTag))
-            currentText += "</" + currentHTMLTag + ">";
+            currentText.append("</").append(currentHTMLTag).append('>');
     }
 
     public void warning(SAXParseException e) {
@@ -0,0 +1,152 @@
+package jdiff;
+
+import java.util.*;
+
+/**
+ * Checks two APIs for incompatible changes, without generating a report.
+ * The changes which are incompatible are those which are reported with
+ * the -incompatible option: removed packages and classes, removed and
+ * changed members, and changes to the inheritance or modifiers of a
+ * class. Once enough incompatible changes have been found, no more
+ * packages are compared.
+ *
+ * Which changes are incompatible is decided by ClassDiff.isIncompatible
+ * and MemberDiff.isIncompatible, as it is for the -incompatible option,
+ * rather than by how the APIs were compared. So changes which only
+ * deprecate or undeprecate an element, or only change its documentation,
+ * are never counted, even when the comparison reported them.
+ *
+ * Changes are only given to this listener, and are not kept in the
+ * APIDiff object, so the memory needed does not grow with the number of
+ * changes.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class CompatibilityCheck implements ChangeListener {
+
+    /** The incompatible changes found, one line each. */
+    private List changes_ = new ArrayList(); // String
+
+    /** The number of incompatible changes after which to stop. */
+    private int maxChanges_;
+
+    /**
+     * Constructor.
+     *
+     * @param maxChanges The number of incompatible changes after which to
+     *                   stop comparing, or 0 to find all of them.
+     */
+    public CompatibilityCheck(int maxChanges) {
+        maxChanges_ = maxChanges;
+    }
+
+    /** 
+     * Add an incompatible change, unless enough have been found already,
+     * since the rest of the package is compared before the comparison
+     * stops.
+     */
+    private void addChange(String change) {
+        if (!isDone())
+            changes_.add(change);
+    }
+
+    public void packageRemoved(PackageAPI pkg) {
+        addChange("Removed package " + pkg.name_);
+    }
+
+    public void packageAdded(PackageAPI pkg) {
+    }
+
+    public void classRemoved(PackageDiff pkgDiff, ClassAPI cls) {
+        addChange("Removed class " + pkgDiff.name_ + "." + cls.name_);
+    }
+
+    public void classAdded(PackageDiff pkgDiff, ClassAPI cls) {
+    }
+
+    public void classChanged(PackageDiff pkgDiff, ClassDiff classDiff) {
+        String fqName = pkgDiff.name_ + "." + classDiff.name_;
+        if (classDiff.inheritanceChange_ != null)
+            addChange("Changed inheritance of class " + fqName);
+        if (Modifiers.isIncompatible(classDiff.modifiersChange_))
+            addChange("Changed modifiers of class " + fqName);
+        Iterator iter = classDiff.ctorsRemoved.iterator();
+        while (iter.hasNext())
+            addChange("Removed constructor " + fqName + "(" + ctorParams(((ConstructorAPI)(iter.next())).type_) + ")");
+        iter = classDiff.ctorsChanged.iterator();
+        while (iter.hasNext()) {
+            MemberDiff ctorDiff = (MemberDiff)(iter.next());
+            if (ctorDiff.isIncompatible())
+                addChange("Changed constructor " + fqName + "(" + ctorParams(ctorDiff.oldType_) + ")");
+        }
+        iter = classDiff.methodsRemoved.iterator();
+        while (iter.hasNext()) {
+            MethodAPI method = (MethodAPI)(iter.next());
+            addChange("Removed method " + fqName + "." + method.name_ + "(" + method.getSignature() + ")");
+        }
+        iter = classDiff.methodsChanged.iterator();
+        while (iter.hasNext()) {
+            MemberDiff methodDiff = (MemberDiff)(iter.next());
+            if (methodDiff.isIncompatible())
+                addChange("Changed method " + fqName + "." + methodDiff.name_ + "(" + methodDiff.oldSignature_ + ")");
+        }
+        iter = classDiff.fieldsRemoved.iterator();
+        while (iter.hasNext())
+            addChange("Removed field " + fqName + "." + ((FieldAPI)(iter.next())).name_);
+        iter = classDiff.fieldsChanged.iterator();
+        while (iter.hasNext()) {
+            MemberDiff fieldDiff = (MemberDiff)(iter.next());
+            if (fieldDiff.isIncompatible())
+                addChange("Changed field " + fqName + "." + fieldDiff.name_);
+        }
+    }
+
+    public void packageChanged(PackageDiff pkgDiff) {
+    }
+
+    public boolean isDone() {
+        return maxChanges_ != 0 && changes_.size() >= maxChanges_;
+    }
+
+    /** Return the number of incompatible changes found. */
+    public int numChanges() {
+        return changes_.size();
+    }
+
+    /** Return the parameters of a constructor from its type. */
+    private static String ctorParams(String type) {
+        if (type == null || type.compareTo("void") == 0)
+            return "";
+        return type;
+    }
+
+    /**
+     * Print the incompatible changes which were found.
+     *
+     * @return true if there were none.
+     */
+    public boolean printSummary() {
+        if (changes_.size() == 0) {
+            System.out.println("JDiff: no incompatible changes found");
+            return true;
+        }
+        String found = changes_.size() + " incompatible change";
+        if (changes_.size() != 1)
+            found += "s";
+        if (isDone())
+            System.out.println("JDiff: stopped after finding " + found + ":");
+        else
+            System.out.println("JDiff: found " + found + ":");
+        Iterator iter = changes_.iterator();
+        while (iter.hasNext())
+            System.out.println("  " + (String)(iter.next()));
+        return false;
+    }
+
+    /**
+     * The number of incompatible changes after which to stop, or 0 to
+     * find all of them. If this is -1, the APIs are not checked, and a
+     * report is generated instead.
+     */
+    static int maxChanges = -1;
+}
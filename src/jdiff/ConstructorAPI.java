@@ -32,25 +32,38 @@ class ConstructorAPI implements Comparable {
     /** The doc block, default is null. */
     public String doc_ = null;
 
+    /** 
+     * The doc block, if it is only read in from the XML file when it is
+     * needed. If this is set, then doc_ is null.
+     */
+    public LazyDoc lazyDoc_ = null;
+
     /** Constructor. */
     public ConstructorAPI(String type, Modifiers modifiers) {
         type_ = type;
         modifiers_ = modifiers;
     }
 
+    /** Return the doc block, reading it in from the XML file if necessary. */
+    public String getDoc() {
+        if (lazyDoc_ != null)
+            return lazyDoc_.getText();
+        return doc_;
+    }
+
     /** Compare two ConstructorAPI objects by type and modifiers. */
     public int compareTo(Object o) {
         ConstructorAPI constructorAPI = (ConstructorAPI)o;
-        int comp = type_.compareTo(constructorAPI.type_);
+        int comp = SymbolTable.compare(type_, constructorAPI.type_);
         if (comp != 0)
             return comp;
-        comp = exceptions_.compareTo(constructorAPI.exceptions_);
+        comp = SymbolTable.compare(exceptions_, constructorAPI.exceptions_);
         if (comp != 0)
             return comp;
         comp = modifiers_.compareTo(constructorAPI.modifiers_);
         if (comp != 0)
             return comp;
-        if (APIComparator.docChanged(doc_, constructorAPI.doc_))
+        if (APIComparator.docChanged(doc_, lazyDoc_, constructorAPI.doc_, constructorAPI.lazyDoc_))
             return -1;
         return 0;
     }
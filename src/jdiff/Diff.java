@@ -21,6 +21,18 @@ class Diff {
     static String saveDocDiffs(String pkgName, String className, 
                                String oldDoc, String newDoc, 
                                String id, String title) {
+        return saveDocDiffs(pkgName, className, oldDoc, newDoc, id, title, null);
+    }
+
+    /** 
+     * Save the differences between the two strings in a DiffOutput object
+     * for later use, and also add the DiffOutput object to a list.
+     * 
+     * @param saved The list to add the DiffOutput object to, or null.
+     */ 
+    static String saveDocDiffs(String pkgName, String className, 
+                               String oldDoc, String newDoc, 
+                               String id, String title, List saved) {
         // Generate the string which will link to this set of diffs
         if (noDocDiffs)
             return "Documentation changed from ";
@@ -29,7 +41,9 @@ class Diff {
         }
 
         // Generate the differences. 
-        generateDiffs(pkgName, className, oldDoc, newDoc, id, title);
+        DiffOutput diffOutput = generateDiffs(pkgName, className, oldDoc, newDoc, id, title);
+        if (saved != null)
+            saved.add(diffOutput);
 
         return "Documentation <a href=\"" + diffFileName + pkgName +
             HTMLReportGenerator.reportFileExt + "#" + id + 
@@ -37,9 +51,18 @@ class Diff {
     }
     
     /** 
-     * Generate the differences. 
+     * Add DiffOutput objects which were saved when the same documentation
+     * was compared before, such as in an earlier run.
      */
-    static void generateDiffs(String pkgName, String className,
+    static void addDocDiffs(List saved) {
+        docDiffs.addAll(saved);
+    }
+
+    /** 
+     * Generate the differences, and return the DiffOutput object which 
+     * holds them.
+     */
+    static DiffOutput generateDiffs(String pkgName, String className,
                               String oldDoc, String newDoc, 
                               String id, String title) {
         String[] oldDocWords = parseDoc(oldDoc);
@@ -54,7 +77,9 @@ class Diff {
         text += "<blockquote>";
         text = addDiffs(oldDocWords, newDocWords, script, text);
         text += "</blockquote>";
-        docDiffs.add(new DiffOutput(pkgName, className, id, title, text));
+        DiffOutput diffOutput = new DiffOutput(pkgName, className, id, title, text);
+        docDiffs.add(diffOutput);
+        return diffOutput;
     }
 
     /** 
@@ -266,7 +291,8 @@ class Diff {
     }
 
     /** 
-     * Emit all the documentation differences into one file per package.
+     * Emit all the documentation differences into one file per package,
+     * and then forget them.
      */ 
     static void emitDocDiffs(String fullReportFileName) {
         Collections.sort(docDiffs);
@@ -580,6 +606,9 @@ class Diff {
             System.exit(1);
         }
         closeDiffFile();
+        // Ready for the differences between another pair of APIs
+        docDiffs.clear();
+        currPkgName = null;
     }
 
     /** 
@@ -645,8 +674,14 @@ class Diff {
      */
     public static boolean showAllChanges = false;
 
-    /** The list of documentation differences. */
-    private static List docDiffs = new ArrayList(); // DiffOutput[]
+    /** 
+     * The list of documentation differences. Packages and classes may be 
+     * compared on several threads, so the differences are added in any 
+     * order, but they are sorted before they are written. Only the 
+     * comparison of one class adds differences with the same package and 
+     * identifier, and it adds them in the same order each time.
+     */
+    private static List docDiffs = Collections.synchronizedList(new ArrayList()); // DiffOutput[]
         
     /** Set to enable increased logging verbosity for debugging. */
     private static boolean trace = false;
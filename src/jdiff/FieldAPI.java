@@ -42,6 +42,12 @@ class FieldAPI implements Comparable {
     /** The doc block, default is null. */
     public String doc_ = null;
 
+    /** 
+     * The doc block, if it is only read in from the XML file when it is
+     * needed. If this is set, then doc_ is null.
+     */
+    public LazyDoc lazyDoc_ = null;
+
     /** Constructor. */
     public FieldAPI(String name, String type, 
                     boolean isTransient, boolean isVolatile, 
@@ -64,15 +70,23 @@ class FieldAPI implements Comparable {
         value_ = f.value_;
         modifiers_ = f.modifiers_; // Note: shallow copy
         doc_ = f.doc_;
+        lazyDoc_ = f.lazyDoc_;
+    }
+
+    /** Return the doc block, reading it in from the XML file if necessary. */
+    public String getDoc() {
+        if (lazyDoc_ != null)
+            return lazyDoc_.getText();
+        return doc_;
     }
 
     /** Compare two FieldAPI objects, including name, type and modifiers. */
     public int compareTo(Object o) {
         FieldAPI oFieldAPI = (FieldAPI)o;
-        int comp = name_.compareTo(oFieldAPI.name_);
+        int comp = SymbolTable.compare(name_, oFieldAPI.name_);
         if (comp != 0)
             return comp;
-        comp = type_.compareTo(oFieldAPI.type_);
+        comp = SymbolTable.compare(type_, oFieldAPI.type_);
         if (comp != 0)
             return comp;
         if (APIComparator.changedInheritance(inheritedFrom_, oFieldAPI.inheritedFrom_) != 0)
@@ -91,7 +105,7 @@ class FieldAPI implements Comparable {
         comp = modifiers_.compareTo(oFieldAPI.modifiers_);
         if (comp != 0)
             return comp;
-        if (APIComparator.docChanged(doc_, oFieldAPI.doc_))
+        if (APIComparator.docChanged(doc_, lazyDoc_, oFieldAPI.doc_, oFieldAPI.lazyDoc_))
             return -1;
         return 0;
     }
@@ -0,0 +1,91 @@
+package jdiff;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens the files which JDiff reads and writes, compressing them with gzip
+ * if required. A file is written compressed if its name ends in ".gz", and
+ * is read as compressed if it starts with the gzip magic bytes, whatever
+ * its name. Large buffers are used on both sides of the compression, so
+ * that it is not the bottleneck when reading and writing large files.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class FileStreams {
+
+    /** The size of the buffers used for reading and writing files. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /** The suffix of compressed files. */
+    public static final String GZIP_SUFFIX = ".gz";
+
+    /** Return true if the file should be written compressed. */
+    public static boolean isCompressedName(String filename) {
+        return filename.endsWith(GZIP_SUFFIX);
+    }
+
+    /** Return the name of the file without any ".gz" suffix. */
+    public static String uncompressedName(String filename) {
+        if (isCompressedName(filename))
+            return filename.substring(0, filename.length() - GZIP_SUFFIX.length());
+        return filename;
+    }
+
+    /**
+     * Return the name of the file to read. This is the given name if that
+     * file exists, or the name with ".gz" added if only the compressed
+     * file exists.
+     */
+    public static String findFile(String filename) {
+        if (!new File(filename).exists() &&
+            new File(filename + GZIP_SUFFIX).exists())
+            return filename + GZIP_SUFFIX;
+        return filename;
+    }
+
+    /** Return true if the file starts with the gzip magic bytes. */
+    public static boolean isCompressed(String filename) throws IOException {
+        InputStream in = new FileInputStream(filename);
+        try {
+            return isCompressed(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Return true if the stream starts with the gzip magic bytes. The
+     * bytes are consumed, so the stream must support mark and reset if
+     * it is to be read again.
+     */
+    private static boolean isCompressed(InputStream in) throws IOException {
+        return in.read() == 0x1f && in.read() == 0x8b;
+    }
+
+    /**
+     * Open a file for reading, decompressing it if it starts with the
+     * gzip magic bytes.
+     */
+    public static InputStream openInput(String filename) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(filename), BUFFER_SIZE);
+        in.mark(2);
+        boolean compressed = isCompressed(in);
+        in.reset();
+        if (compressed)
+            in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        return in;
+    }
+
+    /**
+     * Open a file for writing, compressing it if its name ends in ".gz".
+     */
+    public static OutputStream openOutput(String filename) throws IOException {
+        OutputStream out = new FileOutputStream(filename);
+        if (isCompressedName(filename)) {
+            out = new GZIPOutputStream(new BufferedOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+}
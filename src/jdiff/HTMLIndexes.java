@@ -50,8 +50,11 @@ public class HTMLIndexes {
             emitBottomLeftFile(fieldsIndexName, apiDiff, indexType, "Field");
             emitBottomLeftFile(allDiffsIndexName, apiDiff, indexType, "All");
         }
-        if (missingSincesFile != null)
+        if (missingSincesFile != null) {
             missingSincesFile.close();
+            // Another report opens its own file
+            missingSincesFile = null;
+        }
     }
 
     /** 
@@ -398,7 +401,12 @@ public class HTMLIndexes {
                 System.out.println("Error: unknown program element type");
                 System.exit(3);
             }
-            if (currIndex.doc_ == null) {
+            if (currIndex.lazyDoc_ != null && !currIndex.lazyDoc_.hasText()) {
+                // Only the digest of the doc block is known, so @since 
+                // tags cannot be checked for
+                if (logMissingSinces)
+                    missingSincesFile.println("DOC TEXT NOT AVAILABLE: " + details);
+            } else if (currIndex.doc_ == null) {
                 if (logMissingSinces)
                     missingSincesFile.println("NO DOC BLOCK: " + details);
                 else
@@ -465,7 +473,8 @@ public class HTMLIndexes {
             while ((indexType == 3 || indexType == 1) && iterClass.hasNext()) {
                 ClassAPI cls = (ClassAPI)(iterClass.next());
                 Index idx = new Index(cls.name_, 1, pkgName, cls.isInterface_);
-                idx.doc_ = cls.doc_; // Used for checking @since
+                idx.doc_ = cls.getDoc(); // Used for checking @since
+                idx.lazyDoc_ = cls.lazyDoc_;
                 classNames.add(idx);
             }
             iterClass = pkgDiff.classesChanged.iterator();
@@ -565,7 +574,8 @@ public class HTMLIndexes {
                 while ((indexType == 3 || indexType == 1) && iterCtor.hasNext()) {
                     ConstructorAPI ctor = (ConstructorAPI)(iterCtor.next());
                     Index idx = new Index(className, 1, pkgName, ctor.type_);
-                    idx.doc_ = ctor.doc_; // Used for checking @since
+                    idx.doc_ = ctor.getDoc(); // Used for checking @since
+                    idx.lazyDoc_ = ctor.lazyDoc_;
                     ctorNames.add(idx);
                 }
                 iterCtor = classDiff.ctorsChanged.iterator();
@@ -664,7 +674,8 @@ public class HTMLIndexes {
                 while ((indexType == 3 || indexType == 1) && iterMeth.hasNext()) {
                     MethodAPI meth = (MethodAPI)(iterMeth.next());
                     Index idx = new Index(meth.name_, 1, pkgName, className, meth.getSignature());
-                    idx.doc_ = meth.doc_; // Used for checking @since
+                    idx.doc_ = meth.getDoc(); // Used for checking @since
+                    idx.lazyDoc_ = meth.lazyDoc_;
                     methNames.add(idx);
                 }
                 iterMeth = classDiff.methodsChanged.iterator();
@@ -780,7 +791,8 @@ public class HTMLIndexes {
                 while ((indexType == 3 || indexType == 1) && iterField.hasNext()) {
                     FieldAPI fld = (FieldAPI)(iterField.next());
                     Index idx = new Index(fld.name_, 1, pkgName, className, fld.type_, true);
-                    idx.doc_ = fld.doc_; // Used for checking @since
+                    idx.doc_ = fld.getDoc(); // Used for checking @since
+                    idx.lazyDoc_ = fld.lazyDoc_;
                     fieldNames.add(idx);
                 }
                 iterField = classDiff.fieldsChanged.iterator();
@@ -1022,6 +1034,12 @@ class Index implements Comparable {
     
     /** The doc block of added elements, default is null. */
     public String doc_ = null;
+
+    /** 
+     * The doc block of added elements if it is read only when needed, 
+     * default is null. 
+     */
+    public LazyDoc lazyDoc_ = null;
     
     /** 
      * The new member type. For methods, this is the signature.
@@ -177,7 +177,7 @@ public class HTMLReportGenerator {
                 PackageAPI pkgAPI = (PackageAPI)(iter.next());
                 String pkgName = pkgAPI.name_;
                 if (trace) System.out.println("Package " + pkgName + " was removed.");
-                writePackageTableEntry(pkgName, 0, pkgAPI.doc_, false);
+                writePackageTableEntry(pkgName, 0, pkgAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -190,7 +190,7 @@ public class HTMLReportGenerator {
                 PackageAPI pkgAPI = (PackageAPI)(iter.next());
                 String pkgName = pkgAPI.name_;
                 if (trace) System.out.println("Package " + pkgName + " was added.");
-                writePackageTableEntry(pkgName, 1, pkgAPI.doc_, false);
+                writePackageTableEntry(pkgName, 1, pkgAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -220,22 +220,23 @@ public class HTMLReportGenerator {
         }
     }
     
+    /**
+     * Remove all the compatible changes to classes and members, leaving 
+     * the changes which ClassDiff.isIncompatible and 
+     * MemberDiff.isIncompatible decide are incompatible.
+     */
     private void removeIncompatibleChanges(APIDiff apiDiff) {
 	for (Iterator iter = apiDiff.packagesChanged.iterator(); iter.hasNext();) {
 	    PackageDiff pkgDiff = (PackageDiff) (iter.next());
 	    for (Iterator i = pkgDiff.classesChanged.iterator(); i.hasNext();) {
 		ClassDiff classDiff = (ClassDiff) i.next();
-		boolean hasCtors = classDiff.ctorsRemoved.size() != 0
-			|| classDiff.ctorsChanged.size() != 0;
-		boolean hasMethods = classDiff.methodsRemoved.size() != 0
-			|| classDiff.methodsChanged.size() != 0;
-		boolean hasFields = classDiff.fieldsRemoved.size() != 0
-			|| classDiff.fieldsChanged.size() != 0;
-		if (!(hasCtors || hasMethods || hasFields
-			|| classDiff.inheritanceChange_ != null
-			|| classDiff.modifiersChange_ != null)) {
+		if (!classDiff.isIncompatible()) {
 		    i.remove();
+		    continue;
 		}
+		removeCompatibleMembers(classDiff.ctorsChanged);
+		removeCompatibleMembers(classDiff.methodsChanged);
+		removeCompatibleMembers(classDiff.fieldsChanged);
 	    }
 	    if (pkgDiff.classesChanged.isEmpty()
 		    && pkgDiff.classesRemoved.isEmpty()) {
@@ -244,6 +245,14 @@ public class HTMLReportGenerator {
 	}
     }
 
+    /** Remove the compatible changes from a list of changed members. */
+    private static void removeCompatibleMembers(List membersChanged) {
+	for (Iterator iter = membersChanged.iterator(); iter.hasNext();) {
+	    if (!((MemberDiff) iter.next()).isIncompatible())
+		iter.remove();
+	}
+    }
+
     /** 
      * Write out the details of a changed package in a separate file. 
      */
@@ -341,7 +350,7 @@ public class HTMLReportGenerator {
                 ClassAPI classAPI = (ClassAPI)(iter.next());
                 String className = classAPI.name_;
                 if (trace) System.out.println("Class/Interface " + className + " was removed.");
-                writeClassTableEntry(pkgName, className, 0, classAPI.isInterface_, classAPI.doc_, false);
+                writeClassTableEntry(pkgName, className, 0, classAPI.isInterface_, classAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -371,7 +380,7 @@ public class HTMLReportGenerator {
                 ClassAPI classAPI = (ClassAPI)(iter.next());
                 String className = classAPI.name_;
                 if (trace) System.out.println("Class/Interface " + className + " was added.");
-                writeClassTableEntry(pkgName, className, 1, classAPI.isInterface_, classAPI.doc_, false);
+                writeClassTableEntry(pkgName, className, 1, classAPI.isInterface_, classAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -543,7 +552,7 @@ public class HTMLReportGenerator {
                     ctorType = "";
                 String id = className + "(" + ctorType + ")";
                 if (trace) System.out.println("Constructor " + id + " was removed.");
-                writeCtorTableEntry(pkgName, className, ctorType, 0, ctorAPI.doc_, false);
+                writeCtorTableEntry(pkgName, className, ctorType, 0, ctorAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -559,7 +568,7 @@ public class HTMLReportGenerator {
                     ctorType = "";
                 String id = className + "(" + ctorType + ")";
                 if (trace) System.out.println("Constructor " + id + " was added.");
-                writeCtorTableEntry(pkgName, className, ctorType, 1, ctorAPI.doc_, false);
+                writeCtorTableEntry(pkgName, className, ctorType, 1, ctorAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -595,7 +604,7 @@ public class HTMLReportGenerator {
                 MethodAPI methodAPI = (MethodAPI)(iter.next());
                 String methodName = methodAPI.name_ + "(" + methodAPI.getSignature() + ")";
                 if (trace) System.out.println("Method " + methodName + " was removed.");
-                writeMethodTableEntry(pkgName, className, methodAPI, 0, methodAPI.doc_, false);
+                writeMethodTableEntry(pkgName, className, methodAPI, 0, methodAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -608,7 +617,7 @@ public class HTMLReportGenerator {
                 MethodAPI methodAPI = (MethodAPI)(iter.next());
                 String methodName = methodAPI.name_ + "(" + methodAPI.getSignature() + ")";
                 if (trace) System.out.println("Method " + methodName + " was added.");
-                writeMethodTableEntry(pkgName, className, methodAPI, 1, methodAPI.doc_, false);
+                writeMethodTableEntry(pkgName, className, methodAPI, 1, methodAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -642,7 +651,7 @@ public class HTMLReportGenerator {
                 FieldAPI fieldAPI = (FieldAPI)(iter.next());
                 String fieldName = fieldAPI.name_;
                 if (trace) System.out.println("Field " + fieldName + " was removed.");
-                writeFieldTableEntry(pkgName, className, fieldAPI, 0, fieldAPI.doc_, false);
+                writeFieldTableEntry(pkgName, className, fieldAPI, 0, fieldAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -655,7 +664,7 @@ public class HTMLReportGenerator {
                 FieldAPI fieldAPI = (FieldAPI)(iter.next());
                 String fieldName = fieldAPI.name_;
                 if (trace) System.out.println("Field " + fieldName + " was added.");
-                writeFieldTableEntry(pkgName, className, fieldAPI, 1, fieldAPI.doc_, false);
+                writeFieldTableEntry(pkgName, className, fieldAPI, 1, fieldAPI.getDoc(), false);
             }
             writeTableEnd();
         }
@@ -1895,7 +1904,7 @@ public class HTMLReportGenerator {
         // We have to use this global hash table because the *Diff classes
         // do not store the possible comment from the new *API object.
         if (!noCommentsOnChanges && possibleComment == null) {
-            possibleComment = (String)Comments.allPossibleComments.get(commentID);
+            possibleComment = LazyDoc.text(Comments.allPossibleComments.get(commentID));
         }
         // Just use the first sentence of the possible comment.
         if (possibleComment != null) {
@@ -1,6 +1,10 @@
 package jdiff;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.*;
 import java.lang.reflect.*; // Used for invoking Javadoc indirectly
 import java.lang.Runtime;
@@ -11,6 +15,7 @@ import jdk.javadoc.doclet.DocletEnvironment;
 import jdk.javadoc.doclet.Reporter;
 
 import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic;
 
 /**
  * Generates HTML describing the changes between two sets of Java source code.
@@ -97,6 +102,14 @@ public class JDiff implements Doclet {
             RootDocToXML.writeXML(root);
         }
 
+        // Compare several versions of an API, each read in once
+        if (compareAPIs && APIMatrix.apiNames != null) {
+            if (!APIMatrix.compare(RootDocToXML.outputDirectory))
+                return false;
+            System.out.println("JDiff: finished (took " + (System.currentTimeMillis() - startTime)/1000 + "s).");
+            return true;
+        }
+
         if (compareAPIs) {
             String tempOldFileName = oldFileName;
             if (oldDirectory != null) {
@@ -106,6 +119,8 @@ public class JDiff implements Doclet {
                 }
                 tempOldFileName += oldFileName;
             }
+            // The file may have been compressed, or written as shards
+            tempOldFileName = APIShards.findAPI(tempOldFileName);
 
             // Check the file for the old API exists
             File f = new File(tempOldFileName);
@@ -123,57 +138,75 @@ public class JDiff implements Doclet {
                 }
                 tempNewFileName += newFileName;
             }
+            tempNewFileName = APIShards.findAPI(tempNewFileName);
             f = new File(tempNewFileName);
             if (!f.exists()) {
                 System.out.println("Error: file '" + tempNewFileName + "' does not exist for the new API");
                 return false;
             }
 
-            // Read the file where the XML representing the old API is stored
-            // and create an API object for it.
-            System.out.print("JDiff: reading the old API in from file '" + tempOldFileName + "'...");
-            // Read the file in, but do not add any text to the global comments
-            API oldAPI = XMLToAPI.readFile(tempOldFileName, false, oldFileName);
-
-            // Read the file where the XML representing the new API is stored
-            // and create an API object for it.
-            System.out.print("JDiff: reading the new API in from file '" + tempNewFileName + "'...");
-            // Read the file in, and do add any text to the global comments
-            API newAPI = XMLToAPI.readFile(tempNewFileName, true, newFileName);
-
             // Compare the old and new APIs.
             APIComparator comp = new APIComparator();
 
-            comp.compareAPIs(oldAPI, newAPI);
-
-            // Read the file where the XML for comments about the changes between
-            // the old API and new API is stored and create a Comments object for
-            // it. The Comments object may be null if no file exists.
-            int suffix = oldFileName.lastIndexOf('.');
-            String commentsFileName = "user_comments_for_" + oldFileName.substring(0, suffix);
-            suffix = newFileName.lastIndexOf('.');
-            commentsFileName += "_to_" + newFileName.substring(0, suffix) + ".xml";
-            commentsFileName = commentsFileName.replace(' ', '_');
-            if (HTMLReportGenerator.outputDir != null)
-                commentsFileName = HTMLReportGenerator.outputDir + DIR_SEP + commentsFileName;
-            System.out.println("JDiff: reading the comments in from file '" + commentsFileName + "'...");
-            Comments existingComments = Comments.readFile(commentsFileName);
-            if (existingComments == null)
-                System.out.println(" (the comments file will be created)");
-
-            // Generate an HTML report which summarises all the API differences.
-            HTMLReportGenerator reporter = new HTMLReportGenerator();
-            reporter.generate(comp, existingComments);
-
-            // Emit messages about which comments are now unused and
-            // which are new.
-            Comments newComments = reporter.getNewComments();
-            Comments.noteDifferences(existingComments, newComments);
-
-            // Write the new comments out to the same file, with unused comments
-            // now commented out.
-            System.out.println("JDiff: writing the comments out to file '" + commentsFileName + "'...");
-            Comments.writeFile(commentsFileName, newComments);
+            // Only check for incompatible changes if asked to, which needs
+            // none of the changes to be kept for a report
+            CompatibilityCheck check = null;
+            if (CompatibilityCheck.maxChanges != -1) {
+                // Changes in documentation are never incompatible
+                HTMLReportGenerator.reportDocChanges = false;
+                HTMLReportGenerator.incompatibleChangesOnly = true;
+                check = new CompatibilityCheck(CompatibilityCheck.maxChanges);
+                comp.setListener(check, false);
+            }
+
+            // Compare the APIs one package at a time if possible
+            PackageReader[] readers = null;
+            if (XMLToAPI.streamPackages &&
+                (APIShards.isShardDirectory(tempOldFileName) ||
+                 APIShards.isShardDirectory(tempNewFileName))) {
+                System.out.println("Warning: APIs written as shards cannot be read one package at a time, so the whole APIs will be read in");
+            } else if (XMLToAPI.streamPackages) {
+                System.out.println("JDiff: indexing the old API in file '" + tempOldFileName + "'...");
+                System.out.println("JDiff: indexing the new API in file '" + tempNewFileName + "'...");
+                readers = openReaders(tempOldFileName, tempNewFileName);
+                if (readers == null)
+                    return false;
+                if (!readers[0].isSorted() || !readers[1].isSorted()) {
+                    System.out.println("Warning: reading in the whole APIs instead");
+                    readers = null;
+                }
+            }
+            if (readers != null) {
+                comp.compareAPIs(readers[0], readers[1]);
+                readers[0].close();
+                readers[1].close();
+            } else {
+                // Read the files where the XML representing the old and new 
+                // APIs are stored and create an API object for each of them.
+                // The two files are independent, so they are read in at the
+                // same time.
+                System.out.println("JDiff: reading the old API in from file '" + tempOldFileName + "'...");
+                System.out.println("JDiff: reading the new API in from file '" + tempNewFileName + "'...");
+                API[] apis = readAPIs(tempOldFileName, tempNewFileName);
+                if (apis == null)
+                    return false;
+                API oldAPI = apis[0];
+                API newAPI = apis[1];
+                System.out.println("JDiff: finished reading the old and new APIs");
+
+                comp.compareAPIs(oldAPI, newAPI);
+            }
+
+            if (check != null) {
+                boolean compatible = check.printSummary();
+                System.out.println("JDiff: finished (took " + (System.currentTimeMillis() - startTime)/1000 + "s).");
+                // Javadoc fails with an unknown error unless one is reported
+                if (!compatible && this.reporter != null)
+                    this.reporter.print(Diagnostic.Kind.ERROR, "incompatible changes were found between the APIs");
+                return compatible;
+            }
+
+            generateReport(comp);
         }
 
         System.out.print("JDiff: finished (took " + (System.currentTimeMillis() - startTime)/1000 + "s");
@@ -184,6 +217,107 @@ public class JDiff implements Doclet {
        return true;
     }
 
+    /**
+     * Generate the HTML report of the changes found by a comparator, 
+     * updating the comments file for the old and new APIs.
+     */
+    static void generateReport(APIComparator comp) {
+        // Read the file where the XML for comments about the changes between
+        // the old API and new API is stored and create a Comments object for
+        // it. The Comments object may be null if no file exists.
+        int suffix = oldFileName.lastIndexOf('.');
+        String commentsFileName = "user_comments_for_" + oldFileName.substring(0, suffix);
+        suffix = newFileName.lastIndexOf('.');
+        commentsFileName += "_to_" + newFileName.substring(0, suffix) + ".xml";
+        commentsFileName = commentsFileName.replace(' ', '_');
+        if (HTMLReportGenerator.outputDir != null)
+            commentsFileName = HTMLReportGenerator.outputDir + DIR_SEP + commentsFileName;
+        // Use the compressed comments file if there is one
+        commentsFileName = FileStreams.findFile(commentsFileName);
+        System.out.println("JDiff: reading the comments in from file '" + commentsFileName + "'...");
+        Comments existingComments = Comments.readFile(commentsFileName);
+        if (existingComments == null)
+            System.out.println(" (the comments file will be created)");
+
+        // Generate an HTML report which summarises all the API differences.
+        HTMLReportGenerator reporter = new HTMLReportGenerator();
+        reporter.generate(comp, existingComments);
+
+        // Emit messages about which comments are now unused and
+        // which are new.
+        Comments newComments = reporter.getNewComments();
+        Comments.noteDifferences(existingComments, newComments);
+
+        // Write the new comments out to the same file, with unused comments
+        // now commented out.
+        System.out.println("JDiff: writing the comments out to file '" + commentsFileName + "'...");
+        Comments.writeFile(commentsFileName, newComments);
+    }
+
+    /**
+     * Read the old and new APIs in from their XML files on two threads.
+     * Each file is parsed by its own XMLToAPI instance, including the
+     * addition of inherited methods and fields.
+     *
+     * @return the old and new API objects, or null if either failed
+     */
+    private static API[] readAPIs(final String oldAPIFileName,
+                                  final String newAPIFileName) {
+        ExecutorService loaders = Executors.newFixedThreadPool(2);
+        // Equal names and types in both APIs share one instance
+        final SymbolTable symbols = new SymbolTable();
+        try {
+            // Read the old API in, but do not add any text to the global
+            // comments
+            Future<API> oldLoad = loaders.submit(
+                () -> XMLToAPI.readFile(oldAPIFileName, false, oldFileName, symbols));
+            // Read the new API in, and do add any text to the global comments
+            Future<API> newLoad = loaders.submit(
+                () -> XMLToAPI.readFile(newAPIFileName, true, newFileName, symbols));
+            return new API[] {oldLoad.get(), newLoad.get()};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while reading the APIs");
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Error: failed to read the APIs: " + e.getCause());
+            e.getCause().printStackTrace();
+            return null;
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
+    /**
+     * Scan the old and new API XML files on two threads, and prepare to 
+     * read each of them one package at a time.
+     *
+     * @return the old and new readers, or null if either failed
+     */
+    private static PackageReader[] openReaders(final String oldAPIFileName,
+                                               final String newAPIFileName) {
+        ExecutorService loaders = Executors.newFixedThreadPool(2);
+        // Equal names and types in both APIs share one instance
+        final SymbolTable symbols = new SymbolTable();
+        try {
+            Future<PackageReader> oldOpen = loaders.submit(
+                () -> new PackageReader(oldAPIFileName, false, oldFileName, symbols));
+            Future<PackageReader> newOpen = loaders.submit(
+                () -> new PackageReader(newAPIFileName, true, newFileName, symbols));
+            return new PackageReader[] {oldOpen.get(), newOpen.get()};
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while reading the APIs");
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Error: failed to read the APIs: " + e.getCause());
+            e.getCause().printStackTrace();
+            return null;
+        } finally {
+            loaders.shutdown();
+        }
+    }
+
 //
 // Option processing
 //
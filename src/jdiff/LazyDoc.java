@@ -0,0 +1,554 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/* For StAX parsing of the doc element */
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A doc block which is not held in memory, but is read back in from the
+ * XML file only when its text is needed. Only the position of the doc
+ * element in the file and a 64-bit hash of its text are stored, which is
+ * enough to decide if two doc blocks differ.
+ *
+ * The hash and the length are of the trimmed text before any @link tags
+ * are converted, since the conversion is the same for two program elements
+ * with the same names in the old and new APIs.
+ *
+ * An XML file written with the -docdigests option has only the hash and
+ * the length of each doc block, as its digest, and not the text. The
+ * LazyDoc for such a doc block has no text, so the doc blocks can be
+ * compared but not shown.
+ *
+ * A doc block whose @link tags were converted as it was read in is held
+ * as a LazyDoc with its converted text in memory, so that it can still be
+ * compared with a digest by the hash of the text before the conversion.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class LazyDoc {
+
+    /** The XML file which contains the doc element. */
+    private Source source_;
+
+    /** The offset in the file of the end of the &lt;doc&gt; tag. */
+    private int start_;
+
+    /** The offset in the file of the end of the &lt;/doc&gt; tag. */
+    private int end_;
+
+    /** The hash of the trimmed text. */
+    public final long hash_;
+
+    /** The length of the trimmed text. */
+    public final int length_;
+
+    /** 
+     * The text, with any @link tags converted, if it is held in memory 
+     * rather than read back in from the XML file.
+     */
+    private String text_ = null;
+
+    /** The type of program element, used when converting @link tags. */
+    private String element_;
+
+    /** The package of the program element. */
+    private PackageAPI pkg_;
+
+    /** The class of the program element, or null for a package. */
+    private ClassAPI cls_;
+
+    /** Constructor. */
+    public LazyDoc(Source source, int start, int end, long hash, int length,
+                   String element, PackageAPI pkg, ClassAPI cls) {
+        source_ = source;
+        start_ = start;
+        end_ = end;
+        hash_ = hash;
+        length_ = length;
+        element_ = element;
+        pkg_ = pkg;
+        cls_ = cls;
+    }
+
+    /** Return true if the text of the two doc blocks is the same. */
+    public boolean sameText(LazyDoc other) {
+        return hash_ == other.hash_ && length_ == other.length_;
+    }
+
+    /** 
+     * Return true if the text of the doc block is the same as the given
+     * text, ignoring whitespace at each end.
+     */
+    public boolean sameText(String text) {
+        StringBuilder sb = new StringBuilder(text);
+        int start = trimStart(sb);
+        int end = trimEnd(sb, start);
+        return hash_ == hash(sb, start, end) && length_ == end - start;
+    }
+
+    /**
+     * Return true if the text of the doc block can be read, which is not
+     * the case if only its digest was in the XML file.
+     */
+    public boolean hasText() {
+        return source_ != null || text_ != null;
+    }
+
+    /** Return the digest of the doc block, as it is written in XML. */
+    public String digest() {
+        return Long.toHexString(hash_) + ":" + Integer.toHexString(length_);
+    }
+
+    /** 
+     * Return the digest of the text of a doc block, ignoring whitespace 
+     * at each end.
+     */
+    public static String digest(String text) {
+        StringBuilder sb = new StringBuilder(text);
+        int start = trimStart(sb);
+        int end = trimEnd(sb, start);
+        return Long.toHexString(hash(sb, start, end)) + ":" + Integer.toHexString(end - start);
+    }
+
+    /**
+     * Return a doc block with no text from its digest, or null if the
+     * digest is not valid.
+     */
+    public static LazyDoc fromDigest(String digest) {
+        return fromDigest(digest, null);
+    }
+
+    /**
+     * Return a doc block from its digest and its text, with any @link tags
+     * already converted, or null if the digest is not valid. The text is
+     * null if only the digest is known.
+     */
+    public static LazyDoc fromDigest(String digest, String text) {
+        int idx = digest.indexOf(':');
+        try {
+            if (idx != -1) {
+                long hash = Long.parseUnsignedLong(digest.substring(0, idx), 16);
+                int length = Integer.parseInt(digest.substring(idx + 1), 16);
+                LazyDoc lazyDoc = new LazyDoc(null, 0, 0, hash, length, null, null, null);
+                lazyDoc.text_ = text;
+                return lazyDoc;
+            }
+        } catch (NumberFormatException e) {
+        }
+        System.out.println("Warning: invalid documentation digest '" + digest + "'");
+        return null;
+    }
+
+    /**
+     * Return a doc block which holds its text in memory.
+     *
+     * @param rawText The trimmed text before any @link tags were converted.
+     * @param text The text with the @link tags converted.
+     */
+    public static LazyDoc withText(String rawText, String text) {
+        LazyDoc lazyDoc = new LazyDoc(null, 0, 0, hash(rawText, 0, rawText.length()),
+                                      rawText.length(), null, null, null);
+        lazyDoc.text_ = text;
+        return lazyDoc;
+    }
+
+    /**
+     * Read the text of the doc block back in from the XML file. The text
+     * is not kept, so that it can be garbage collected once it is used.
+     * Return null if there is only the digest of the doc block.
+     */
+    public String getText() {
+        if (text_ != null)
+            return text_;
+        if (source_ == null)
+            return null;
+        StringBuilder text = new StringBuilder(length_ + 16);
+        try {
+            String xml = "<doc>" + source_.read(start_, end_);
+            XMLStreamReader reader = factory_.createXMLStreamReader(new StringReader(xml));
+            LinkedList tagStack = new LinkedList();
+            reader.next(); // The doc element
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    tagStack.add(reader.getLocalName());
+                    APIStreamHandler.appendStartTag(text, reader.getLocalName(), reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (tagStack.size() == 0)
+                        break; // The end of the doc element
+                    String tag = (String)(tagStack.removeLast());
+                    if (!Comments.isMinimizedTag(tag))
+                        text.append("</").append(tag).append('>');
+                } else if (event == XMLStreamConstants.CHARACTERS ||
+                           event == XMLStreamConstants.CDATA ||
+                           event == XMLStreamConstants.SPACE) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(),
+                                reader.getTextLength());
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException xse) {
+            System.out.println("Error: unable to read the documentation at offset " + start_ + " in file '" + source_.filename_ + "' : " + xse);
+            System.exit(1);
+        }
+        int start = trimStart(text);
+        int end = trimEnd(text, start);
+        if (end - start != length_ || hash(text, start, end) != hash_) {
+            System.out.println("Error: the documentation at offset " + start_ + " in file '" + source_.filename_ + "' has changed since the file was read");
+            System.exit(1);
+        }
+        String result = text.substring(start, end);
+        if (APIHandler.convertAtLinks)
+            result = Comments.convertAtLinks(result, element_, pkg_, cls_);
+        return result;
+    }
+
+    /** The factory for the StAX parsers used to read doc elements. */
+    private static final XMLInputFactory factory_ = XMLInputFactory.newInstance();
+
+    /** Return the index of the first character which is not whitespace. */
+    public static int trimStart(StringBuilder text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ')
+            start++;
+        return start;
+    }
+
+    /**
+     * Return the index after the last character which is not whitespace,
+     * looking no further back than start.
+     */
+    public static int trimEnd(StringBuilder text, int start) {
+        int end = text.length();
+        while (end > start && text.charAt(end - 1) <= ' ')
+            end--;
+        return end;
+    }
+
+    /** Return the 64-bit FNV-1a hash of the given range of the text. */
+    public static long hash(CharSequence text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Return the text of a doc block, which is either held as a String,
+     * or as a LazyDoc if it has not been read in yet.
+     */
+    public static String text(Object doc) {
+        if (doc instanceof LazyDoc)
+            return ((LazyDoc)doc).getText();
+        return (String)doc;
+    }
+
+    /**
+     * An XML file which contains doc elements. The file is memory-mapped
+     * the first time that any doc block is read from it. Offsets in the
+     * file are byte offsets, and the bytes are read as characters, so only
+     * files in a single byte encoding and no larger than 2GB can be used.
+     */
+    static class Source {
+
+        /** The name of the XML file. */
+        String filename_;
+
+        /** The contents of the file, mapped when first needed. */
+        private ByteBuffer buffer_ = null;
+
+        /** Constructor. */
+        public Source(String filename) {
+            filename_ = filename;
+        }
+
+        /** Return true if offsets in a file with this encoding are byte offsets. */
+        public static boolean isSingleByte(String encoding) {
+            return encoding != null &&
+                (encoding.equalsIgnoreCase("iso-8859-1") ||
+                 encoding.equalsIgnoreCase("us-ascii"));
+        }
+
+        /** Return the text between the two offsets in the file. */
+        public synchronized String read(int start, int end) {
+            if (buffer_ == null) {
+                try {
+                    RandomAccessFile file = new RandomAccessFile(filename_, "r");
+                    try {
+                        FileChannel channel = file.getChannel();
+                        buffer_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    } finally {
+                        file.close();
+                    }
+                } catch (IOException ioe) {
+                    System.out.println("Error: unable to read the documentation from file '" + filename_ + "' : " + ioe);
+                    System.exit(1);
+                }
+            }
+            byte[] b = new byte[end - start];
+            ByteBuffer slice = buffer_.duplicate();
+            slice.position(start);
+            slice.get(b);
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * A stream which records the offsets in an XML file of the doc elements
+     * in it, as the parser reads the file through it. The offsets of the 
+     * end of each &lt;doc&gt; tag and of the end of each &lt;/doc&gt; tag 
+     * are recorded in the order they are in the file, which is the order in
+     * which the parser reports them. Only a few are held at once, since the
+     * parser does not read far ahead of the elements it reports.
+     *
+     * The offsets given by the StAX parser itself are not used, since they 
+     * are character offsets held in an int, and are sometimes wrong when
+     * an element is near the end of one of the parser's buffers.
+     *
+     * Comments, CDATA sections, processing instructions, declarations and
+     * attribute values are skipped over. The markup must be in single byte 
+     * characters, as it is in ASCII, ISO-8859-1 and UTF-8.
+     */
+    static class OffsetStream extends FilterInputStream {
+
+        /** The states of the scanner, between tags, and within them. */
+        private static final int TEXT = 0;
+        private static final int TAG = 1;
+        private static final int NAME = 2;
+        private static final int ATTRIBUTES = 3;
+        private static final int END_NAME = 4;
+        private static final int END_TAG = 5;
+        private static final int BANG = 6;
+        private static final int SKIP = 7;
+        private static final int DECLARATION = 8;
+
+        /** The current state of the scanner. */
+        private int state_ = TEXT;
+
+        /** The offset of the next byte to be read. */
+        private long offset_ = 0;
+
+        /** The name of the tag being read. */
+        private StringBuilder name_ = new StringBuilder();
+
+        /** Set if the start tag being read is a &lt;doc&gt; tag. */
+        private boolean isDoc_ = false;
+
+        /** The quote around the attribute value being read, or 0. */
+        private int quote_ = 0;
+
+        /** Set if the last character in a start tag was '/'. */
+        private boolean empty_ = false;
+
+        /** The end of the comment, CDATA section or instruction being skipped. */
+        private String terminator_ = null;
+
+        /** The number of characters of the terminator which have been read. */
+        private int matched_ = 0;
+
+        /** The depth of brackets in the declaration being skipped. */
+        private int depth_ = 0;
+
+        /** The offsets of the ends of &lt;doc&gt; tags not yet used. */
+        private LinkedList starts_ = new LinkedList(); // Long
+
+        /** The offsets of the ends of &lt;/doc&gt; tags not yet used. */
+        private LinkedList ends_ = new LinkedList(); // Long
+
+        /** Constructor. */
+        public OffsetStream(InputStream in) {
+            super(in);
+        }
+
+        /** 
+         * Return the offset of the end of the next &lt;doc&gt; tag, or -1
+         * if it is an empty element, &lt;doc/&gt;.
+         */
+        public int nextStart() {
+            if (starts_.isEmpty())
+                return -1;
+            return (int)((Long)starts_.removeFirst()).longValue();
+        }
+
+        /** 
+         * Return the offset of the end of the next &lt;/doc&gt; tag, or -1
+         * if it is an empty element, &lt;doc/&gt;.
+         */
+        public int nextEnd() {
+            if (ends_.isEmpty())
+                return -1;
+            return (int)((Long)ends_.removeFirst()).longValue();
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                scan(b);
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            for (int i = 0; i < n; i++)
+                scan(b[off + i] & 0xff);
+            return n;
+        }
+
+        /** Skip by reading, so that the skipped bytes are scanned too. */
+        public long skip(long n) throws IOException {
+            byte[] b = new byte[(int)Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int len = read(b, 0, (int)Math.min(n - skipped, b.length));
+                if (len == -1)
+                    break;
+                skipped += len;
+            }
+            return skipped;
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Scan the next byte of the file. */
+        private void scan(int b) {
+            step((char)b);
+            offset_++;
+        }
+
+        /** 
+         * Move the scanner on by one character. A character which ends a
+         * name is scanned again in the state after the name.
+         */
+        private void step(char c) {
+            switch (state_) {
+            case TEXT:
+                if (c == '<')
+                    state_ = TAG;
+                break;
+            case TAG:
+                name_.setLength(0);
+                if (c == '/') {
+                    state_ = END_NAME;
+                } else if (c == '!') {
+                    state_ = BANG;
+                } else if (c == '?') {
+                    skipTo("?>");
+                } else {
+                    name_.append(c);
+                    state_ = NAME;
+                }
+                break;
+            case NAME:
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    isDoc_ = isDocName();
+                    state_ = ATTRIBUTES;
+                    empty_ = false;
+                    step(c);
+                } else {
+                    name_.append(c);
+                }
+                break;
+            case ATTRIBUTES:
+                if (quote_ != 0) {
+                    if (c == quote_)
+                        quote_ = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote_ = c;
+                    empty_ = false;
+                } else if (c == '/') {
+                    empty_ = true;
+                } else if (c == '>') {
+                    if (isDoc_) {
+                        if (empty_) {
+                            starts_.add(Long.valueOf(-1));
+                            ends_.add(Long.valueOf(-1));
+                        } else {
+                            starts_.add(Long.valueOf(offset_ + 1));
+                        }
+                    }
+                    state_ = TEXT;
+                } else if (!Character.isWhitespace(c)) {
+                    empty_ = false;
+                }
+                break;
+            case END_NAME:
+                if (c == '>' || Character.isWhitespace(c)) {
+                    isDoc_ = isDocName();
+                    state_ = END_TAG;
+                    step(c);
+                } else {
+                    name_.append(c);
+                }
+                break;
+            case END_TAG:
+                if (c == '>') {
+                    if (isDoc_)
+                        ends_.add(Long.valueOf(offset_ + 1));
+                    state_ = TEXT;
+                }
+                break;
+            case BANG:
+                // A comment, a CDATA section, or a declaration
+                name_.append(c);
+                String start = name_.toString();
+                if (start.equals("--")) {
+                    skipTo("-->");
+                } else if (start.equals("[CDATA[")) {
+                    skipTo("]]>");
+                } else if (!"--".startsWith(start) && !"[CDATA[".startsWith(start)) {
+                    state_ = DECLARATION;
+                    depth_ = 0;
+                    step(c);
+                }
+                break;
+            case SKIP:
+                if (c == terminator_.charAt(matched_)) {
+                    matched_++;
+                    if (matched_ == terminator_.length())
+                        state_ = TEXT;
+                } else if (c == terminator_.charAt(0)) {
+                    // "--->" and "]]]>" still end with the last three
+                    if (matched_ != 2 || terminator_.charAt(1) != c)
+                        matched_ = 1;
+                } else {
+                    matched_ = 0;
+                }
+                break;
+            case DECLARATION:
+                if (c == '[')
+                    depth_++;
+                else if (c == ']')
+                    depth_--;
+                else if (c == '>' && depth_ <= 0)
+                    state_ = TEXT;
+                break;
+            }
+        }
+
+        /** Skip everything up to and including the given string. */
+        private void skipTo(String terminator) {
+            terminator_ = terminator;
+            matched_ = 0;
+            state_ = SKIP;
+        }
+
+        /** Return true if the name of the tag, without any prefix, is "doc". */
+        private boolean isDocName() {
+            int idx = name_.lastIndexOf(":") + 1;
+            return name_.length() - idx == 3 && name_.indexOf("doc", idx) == idx;
+        }
+    }
+}
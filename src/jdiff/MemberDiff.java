@@ -69,4 +69,24 @@ class MemberDiff {
                 modifiersChange_ += " " + commonModifierChanges;
         }
     }
+
+    /**
+     * Return true if this is an incompatible change, which is if the 
+     * type, signature, exceptions or modifiers of the member changed. 
+     * Changes which only deprecate or undeprecate the member, or only 
+     * change its documentation, are compatible.
+     */
+    public boolean isIncompatible() {
+        return !same(oldType_, newType_) ||
+            !same(oldSignature_, newSignature_) ||
+            !same(oldExceptions_, newExceptions_) ||
+            Modifiers.isIncompatible(modifiersChange_);
+    }
+
+    /** Return true if two strings, either of which may be null, are the same. */
+    private static boolean same(String s1, String s2) {
+        if (s1 == null || s2 == null)
+            return s1 == s2;
+        return s1.compareTo(s2) == 0;
+    }
 }
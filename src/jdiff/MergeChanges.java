@@ -27,49 +27,47 @@ import java.util.*;
 class MergeChanges {
 
     /**
-     * Convert some remove and add operations into change operations.
+     * Convert some remove and add operations in one package into change 
+     * operations. Each class is merged on its own, so a package can be 
+     * merged as soon as it has been compared.
      *
      * Note that if a single thread modifies a collection directly while it is 
      * iterating over the collection with a fail-fast iterator, the iterator 
      * will throw java.util.ConcurrentModificationException   
      */
-    public static void mergeRemoveAdd(APIDiff apiDiff) {
+    public static void mergeRemoveAdd(PackageDiff pkgDiff) {
         // Go through all the ClassDiff objects searching for the above cases.
-        Iterator iter = apiDiff.packagesChanged.iterator();
+        Iterator iter = pkgDiff.classesChanged.iterator();
         while (iter.hasNext()) {
-            PackageDiff pkgDiff = (PackageDiff)(iter.next());
-            Iterator iter2 = pkgDiff.classesChanged.iterator();
-            while (iter2.hasNext()) {
-                ClassDiff classDiff = (ClassDiff)(iter2.next());
-                // Note: using iterators to step through the members gives a
-                // ConcurrentModificationException exception with large files.
-                // Constructors
-                ConstructorAPI[] ctorArr = new ConstructorAPI[classDiff.ctorsRemoved.size()];
-                ctorArr = (ConstructorAPI[])classDiff.ctorsRemoved.toArray(ctorArr);
-                for (int ctorIdx = 0; ctorIdx < ctorArr.length; ctorIdx++) {
-                    ConstructorAPI removedCtor = ctorArr[ctorIdx];
-                    mergeRemoveAddCtor(removedCtor, classDiff, pkgDiff);
-                }
-                // Methods
-                MethodAPI[] methodArr = new MethodAPI[classDiff.methodsRemoved.size()];
-                methodArr = (MethodAPI[])classDiff.methodsRemoved.toArray(methodArr);
-                for (int methodIdx = 0; methodIdx < methodArr.length; methodIdx++) {
-                    MethodAPI removedMethod = methodArr[methodIdx];
-                    // Only merge locally defined methods
-                    if (removedMethod.inheritedFrom_ == null)
-                        mergeRemoveAddMethod(removedMethod, classDiff, pkgDiff);
-                }
-                // Fields
-                FieldAPI[] fieldArr = new FieldAPI[classDiff.fieldsRemoved.size()];
-                fieldArr = (FieldAPI[])classDiff.fieldsRemoved.toArray(fieldArr);
-                for (int fieldIdx = 0; fieldIdx < fieldArr.length; fieldIdx++) {
-                    FieldAPI removedField = fieldArr[fieldIdx]; 
-                    // Only merge locally defined fields
-                    if (removedField.inheritedFrom_ == null)
-                        mergeRemoveAddField(removedField, classDiff, pkgDiff);
-                }
+            ClassDiff classDiff = (ClassDiff)(iter.next());
+            // Note: using iterators to step through the members gives a
+            // ConcurrentModificationException exception with large files.
+            // Constructors
+            ConstructorAPI[] ctorArr = new ConstructorAPI[classDiff.ctorsRemoved.size()];
+            ctorArr = (ConstructorAPI[])classDiff.ctorsRemoved.toArray(ctorArr);
+            for (int ctorIdx = 0; ctorIdx < ctorArr.length; ctorIdx++) {
+                ConstructorAPI removedCtor = ctorArr[ctorIdx];
+                mergeRemoveAddCtor(removedCtor, classDiff, pkgDiff);
             }
-        }        
+            // Methods
+            MethodAPI[] methodArr = new MethodAPI[classDiff.methodsRemoved.size()];
+            methodArr = (MethodAPI[])classDiff.methodsRemoved.toArray(methodArr);
+            for (int methodIdx = 0; methodIdx < methodArr.length; methodIdx++) {
+                MethodAPI removedMethod = methodArr[methodIdx];
+                // Only merge locally defined methods
+                if (removedMethod.inheritedFrom_ == null)
+                    mergeRemoveAddMethod(removedMethod, classDiff, pkgDiff);
+            }
+            // Fields
+            FieldAPI[] fieldArr = new FieldAPI[classDiff.fieldsRemoved.size()];
+            fieldArr = (FieldAPI[])classDiff.fieldsRemoved.toArray(fieldArr);
+            for (int fieldIdx = 0; fieldIdx < fieldArr.length; fieldIdx++) {
+                FieldAPI removedField = fieldArr[fieldIdx]; 
+                // Only merge locally defined fields
+                if (removedField.inheritedFrom_ == null)
+                    mergeRemoveAddField(removedField, classDiff, pkgDiff);
+            }
+        }
     }
 
     /**
@@ -94,7 +92,7 @@ class MergeChanges {
             ctorDiff.newExceptions_ = addedCtor.exceptions_;
             ctorDiff.addModifiersChange(removedCtor.modifiers_.diff(addedCtor.modifiers_));
             // Track changes in documentation
-            if (APIComparator.docChanged(removedCtor.doc_, addedCtor.doc_)) {
+            if (APIComparator.docChanged(removedCtor.doc_, removedCtor.lazyDoc_, addedCtor.doc_, addedCtor.lazyDoc_)) {
                 String type = ctorDiff.newType_;
                 if (type.compareTo("void") == 0)
                     type = "";
@@ -104,7 +102,7 @@ class MergeChanges {
                 String id = pkgDiff.name_ + "." + classDiff.name_ + ".ctor(" + HTMLReportGenerator.simpleName(type) + ")";
                 String title = link1 + "Class <b>" + classDiff.name_ + 
                     "</b></a>, " + link2 + "constructor <b>" + classDiff.name_ + "(" + HTMLReportGenerator.simpleName(type) + ")</b></a>";
-                ctorDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedCtor.doc_, addedCtor.doc_, id, title);
+                ctorDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedCtor.getDoc(), addedCtor.getDoc(), id, title);
             }
             classDiff.ctorsChanged.add(ctorDiff);
             // Now remove the entries from the remove and add lists
@@ -154,7 +152,7 @@ class MergeChanges {
                 diffMethods(methodDiff, removedMethod, addedMethod);
                 methodDiff.addModifiersChange(removedMethod.modifiers_.diff(addedMethod.modifiers_));
                 // Track changes in documentation
-                if (APIComparator.docChanged(removedMethod.doc_, addedMethod.doc_)) {
+                if (APIComparator.docChanged(removedMethod.doc_, removedMethod.lazyDoc_, addedMethod.doc_, addedMethod.lazyDoc_)) {
                     String sig = methodDiff.newSignature_;
                     if (sig.compareTo("void") == 0)
                         sig = "";
@@ -164,7 +162,7 @@ class MergeChanges {
                     String id = pkgDiff.name_ + "." + classDiff.name_ + ".dmethod." + addedMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")";
                     String title = link1 + "Class <b>" + classDiff.name_ + "</b></a>, " +
                         link2 +  HTMLReportGenerator.simpleName(methodDiff.newType_) + " <b>" + addedMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")</b></a>";
-                    methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedMethod.doc_, addedMethod.doc_, id, title);
+                    methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedMethod.getDoc(), addedMethod.getDoc(), id, title);
                 }
                 classDiff.methodsChanged.add(methodDiff);
                 // Now remove the entries from the remove and add lists
@@ -231,7 +229,7 @@ class MergeChanges {
                 diffMethods(methodDiff, removedMethod, addedMethod);
             methodDiff.addModifiersChange(removedMethod.modifiers_.diff(addedMethod.modifiers_));
             // Track changes in documentation
-            if (APIComparator.docChanged(removedMethod.doc_, addedMethod.doc_)) {
+            if (APIComparator.docChanged(removedMethod.doc_, removedMethod.lazyDoc_, addedMethod.doc_, addedMethod.lazyDoc_)) {
                 String sig = methodDiff.newSignature_;
                 if (sig.compareTo("void") == 0)
                     sig = "";
@@ -241,7 +239,7 @@ class MergeChanges {
                 String id = pkgDiff.name_ + "." + classDiff.name_ + ".dmethod." + addedMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")";
                 String title = link1 + "Class <b>" + classDiff.name_ + "</b></a>, " +
                     link2 +  HTMLReportGenerator.simpleName(methodDiff.newType_) + " <b>" + addedMethod.name_ + "(" + HTMLReportGenerator.simpleName(sig) + ")</b></a>";
-                methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedMethod.doc_, addedMethod.doc_, id, title);
+                methodDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedMethod.getDoc(), addedMethod.getDoc(), id, title);
             }
             classDiff.methodsChanged.add(methodDiff);
             // Now remove the entries from the remove and add lists
@@ -314,14 +312,14 @@ class MergeChanges {
                 fieldDiff.newType_ = addedField.type_;
                 fieldDiff.addModifiersChange(removedField.modifiers_.diff(addedField.modifiers_));
                 // Track changes in documentation
-                if (APIComparator.docChanged(removedField.doc_, addedField.doc_)) {
+                if (APIComparator.docChanged(removedField.doc_, removedField.lazyDoc_, addedField.doc_, addedField.lazyDoc_)) {
                     String fqName = pkgDiff.name_ + "." + classDiff.name_;
                     String link1 = "<a href=\"" + fqName + HTMLReportGenerator.reportFileExt + "\" class=\"hiddenlink\">";
                     String link2 = "<a href=\"" + fqName + HTMLReportGenerator.reportFileExt + "#" + fqName + "." + addedField.name_ + "\" class=\"hiddenlink\">";
                     String id = pkgDiff.name_ + "." + classDiff.name_ + ".field." + addedField.name_;
                     String title = link1 + "Class <b>" + classDiff.name_ + "</b></a>, " +
                         link2 + HTMLReportGenerator.simpleName(fieldDiff.newType_) + " <b>" + addedField.name_ + "</b></a>";
-                    fieldDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedField.doc_, addedField.doc_, id, title);
+                    fieldDiff.documentationChange_ = Diff.saveDocDiffs(pkgDiff.name_, classDiff.name_, removedField.getDoc(), addedField.getDoc(), id, title);
                 }
                 classDiff.fieldsChanged.add(fieldDiff);
                 // Now remove the entries from the remove and add lists
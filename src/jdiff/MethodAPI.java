@@ -51,6 +51,12 @@ class MethodAPI implements Comparable {
     /** The doc block, default is null. */
     public String doc_ = null;
 
+    /** 
+     * The doc block, if it is only read in from the XML file when it is
+     * needed. If this is set, then doc_ is null.
+     */
+    public LazyDoc lazyDoc_ = null;
+
     /** Constructor. */
     public MethodAPI(String name, String returnType, boolean isAbstract, 
                      boolean isNative, boolean isSynchronized,
@@ -76,19 +82,27 @@ class MethodAPI implements Comparable {
         modifiers_ = m.modifiers_; // Note: shallow copy
         params_ = m.params_; // Note: shallow copy
         doc_ = m.doc_;
+        lazyDoc_ = m.lazyDoc_;
         signature_ = m.signature_; // Cached
     }
 
+    /** Return the doc block, reading it in from the XML file if necessary. */
+    public String getDoc() {
+        if (lazyDoc_ != null)
+            return lazyDoc_.getText();
+        return doc_;
+    }
+
     /** 
      * Compare two methods, including the return type, and parameter 
      * names and types, and modifiers. 
      */
     public int compareTo(Object o) {
         MethodAPI oMethod = (MethodAPI)o;
-        int comp = name_.compareTo(oMethod.name_);
+        int comp = SymbolTable.compare(name_, oMethod.name_);
         if (comp != 0)
             return comp;
-        comp = returnType_.compareTo(oMethod.returnType_);
+        comp = SymbolTable.compare(returnType_, oMethod.returnType_);
         if (comp != 0)
             return comp;
         if (APIComparator.changedInheritance(inheritedFrom_, oMethod.inheritedFrom_) != 0)
@@ -104,7 +118,7 @@ class MethodAPI implements Comparable {
 	    isSynchronized_ != oMethod.isSynchronized_) {
             return -1;
         }
-        comp = exceptions_.compareTo(oMethod.exceptions_);
+        comp = SymbolTable.compare(exceptions_, oMethod.exceptions_);
         if (comp != 0)
             return comp;
         comp = modifiers_.compareTo(oMethod.modifiers_);
@@ -113,7 +127,7 @@ class MethodAPI implements Comparable {
         comp = getSignature().compareTo(oMethod.getSignature());
         if (comp != 0)
             return comp;
-        if (APIComparator.docChanged(doc_, oMethod.doc_))
+        if (APIComparator.docChanged(doc_, lazyDoc_, oMethod.doc_, oMethod.lazyDoc_))
             return -1;
         return 0;
     }
@@ -43,7 +43,7 @@ class Modifiers implements Comparable {
         if (isDeprecated != oModifiers.isDeprecated)
             return -1;
         if (visibility != null) {
-            int comp = visibility.compareTo(oModifiers.visibility);
+            int comp = SymbolTable.compare(visibility, oModifiers.visibility);
             if (comp != 0)
                 return comp;
         }
@@ -84,13 +84,13 @@ class Modifiers implements Comparable {
             if (hasContent)
                 res += " ";
             if (isDeprecated)
-                res += "Change from deprecated to undeprecated.<br>";
+                res += UNDEPRECATED;
             else
-                res += "<b>Now deprecated</b>.<br>";
+                res += DEPRECATED;
             hasContent = true;
         }
         if (visibility != null) {
-            int comp = visibility.compareTo(newModifiers.visibility);
+            int comp = SymbolTable.compare(visibility, newModifiers.visibility);
             if (comp != 0) {
                 if (hasContent)
                     res += " ";
@@ -103,4 +103,31 @@ class Modifiers implements Comparable {
             return null;
         return res;
     }
+
+    /** The change when a program element is no longer deprecated. */
+    static final String UNDEPRECATED = "Change from deprecated to undeprecated.<br>";
+
+    /** The change when a program element becomes deprecated. */
+    static final String DEPRECATED = "<b>Now deprecated</b>.<br>";
+
+    /**
+     * Return true if a description of changes to modifiers, as returned 
+     * by diff() and possibly with other changes added to it, only says 
+     * that the element was deprecated or undeprecated.
+     */
+    public static boolean onlyDeprecationChanged(String modifiersChange) {
+        if (modifiersChange == null)
+            return false;
+        String rest = modifiersChange.replace(UNDEPRECATED, "").replace(DEPRECATED, "");
+        return rest.trim().length() == 0;
+    }
+
+    /**
+     * Return true if a description of changes to modifiers describes an
+     * incompatible change, which is any change except deprecating or
+     * undeprecating the element.
+     */
+    public static boolean isIncompatible(String modifiersChange) {
+        return modifiersChange != null && !onlyDeprecationChanged(modifiersChange);
+    }
 }
@@ -57,11 +57,24 @@ public class Options {
         RootDocToXML.stripNonPrintables = true;
         RootDocToXML.addSrcInfo = false;
         RootDocToXML.packagesOnly = false;
+        RootDocToXML.compressXML = false;
+        RootDocToXML.shardXML = false;
+        RootDocToXML.xmlThreads = 1;
+        RootDocToXML.xmlCacheFile = null;
+        RootDocToXML.apiClassPath = null;
+        RootDocToXML.docDigests = false;
+        RootDocToXML.exportedModules = null;
+        APIComparator.compareThreads = 1;
+        APIComparator.diffCacheFile = null;
         HTMLReportGenerator.outputDir = null;
         HTMLReportGenerator.newDocPrefix = "../";
         HTMLReportGenerator.oldDocPrefix = null;
         HTMLReportGenerator.reportDocChanges = false;
         HTMLReportGenerator.incompatibleChangesOnly = false;
+        CompatibilityCheck.maxChanges = -1;
+        APIMatrix.apiNames = null;
+        APIMatrix.allPairs = false;
+        APIMatrix.writeReports = false;
         HTMLReportGenerator.noCommentsOnRemovals = false;
         HTMLReportGenerator.noCommentsOnAdditions = false;
         HTMLReportGenerator.noCommentsOnChanges = false;
@@ -70,6 +83,12 @@ public class Options {
         HTMLReportGenerator.windowTitle = null;
         Diff.noDocDiffs = true;
         Diff.showAllChanges = false;
+        XMLToAPI.useStAX = false;
+        XMLToAPI.useSnapshots = false;
+        XMLToAPI.lazyDocs = false;
+        XMLToAPI.streamPackages = false;
+        APIFilter.reset();
+        AnnotationFilter.reset();
     }
 
     public static Collection<Doclet.Option> getSupportedOptions() {
@@ -206,6 +225,39 @@ public class Options {
                 }
                 continue;
             }
+            if (name.equals("-apimatrix")) {
+                if (option.length < 2) {
+                    err.msg("No version identifiers specified after -apimatrix option.");
+                } else if (JDiff.writeXML) {
+                    err.msg("Use the -apiname or -apimatrix option, but not both.");
+                } else {
+                    APIMatrix.apiNames = new ArrayList();
+                    StringTokenizer st = new StringTokenizer(option[1], ":");
+                    while (st.hasMoreTokens())
+                        APIMatrix.apiNames.add(st.nextToken().trim());
+                    if (APIMatrix.apiNames.size() < 2)
+                        err.msg("At least two version identifiers must be specified after -apimatrix option.");
+                    JDiff.writeXML = false;
+                    JDiff.compareAPIs = true;
+                }
+                continue;
+            }
+            if (name.equals("-matrixpairs")) {
+                if (option.length < 2) {
+                    err.msg("No pairs (adjacent|all) specified after -matrixpairs option.");
+                } else if (option[1].compareTo("adjacent") == 0) {
+                    APIMatrix.allPairs = false;
+                } else if (option[1].compareTo("all") == 0) {
+                    APIMatrix.allPairs = true;
+                } else {
+                    err.msg("Pairs specified after -matrixpairs option must be one of (adjacent|all).");
+                }
+                continue;
+            }
+            if (name.equals("-matrixreports")) {
+                APIMatrix.writeReports = true;
+                continue;
+            }
             if (name.equals("-oldapidir")) {
                 if (option.length < 2) {
                     err.msg("No directory specified after -oldapidir option.");
@@ -321,10 +373,100 @@ public class Options {
               HTMLReportGenerator.incompatibleChangesOnly = true;
               continue;
             }
+            if (name.equals("-checkincompatible")) {
+                if (option.length < 2) {
+                    err.msg("No number of changes specified after -checkincompatible option.");
+                } else {
+                    try {
+                        CompatibilityCheck.maxChanges = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        CompatibilityCheck.maxChanges = -1;
+                    }
+                    if (CompatibilityCheck.maxChanges < 0)
+                        err.msg("Number of changes specified after -checkincompatible option must be zero or a positive number.");
+                }
+                continue;
+            }
             if (name.equals("-packagesonly")) {
                 RootDocToXML.packagesOnly = true;
                 continue;
             }
+            if (name.equals("-gzip")) {
+                RootDocToXML.compressXML = true;
+                continue;
+            }
+            if (name.equals("-shards")) {
+                RootDocToXML.shardXML = true;
+                continue;
+            }
+            if (name.equals("-xmlthreads")) {
+                if (option.length < 2) {
+                    err.msg("No number of threads specified after -xmlthreads option.");
+                } else {
+                    try {
+                        RootDocToXML.xmlThreads = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        RootDocToXML.xmlThreads = 0;
+                    }
+                    if (RootDocToXML.xmlThreads < 1)
+                        err.msg("Number of threads specified after -xmlthreads option must be a positive number.");
+                }
+                continue;
+            }
+            if (name.equals("-comparethreads")) {
+                if (option.length < 2) {
+                    err.msg("No number of threads specified after -comparethreads option.");
+                } else {
+                    try {
+                        APIComparator.compareThreads = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        APIComparator.compareThreads = 0;
+                    }
+                    if (APIComparator.compareThreads < 1)
+                        err.msg("Number of threads specified after -comparethreads option must be a positive number.");
+                }
+                continue;
+            }
+            if (name.equals("-diffcache")) {
+                if (option.length < 2) {
+                    err.msg("No file specified after -diffcache option.");
+                } else {
+                    APIComparator.diffCacheFile = option[1];
+                }
+                continue;
+            }
+            if (name.equals("-apiclasspath")) {
+                if (option.length < 2) {
+                    err.msg("No jar files or directories specified after -apiclasspath option.");
+                } else {
+                    RootDocToXML.apiClassPath = option[1];
+                }
+                continue;
+            }
+            if (name.equals("-docdigests")) {
+                RootDocToXML.docDigests = true;
+                continue;
+            }
+            if (name.equals("-exportedmodules")) {
+                if (option.length < 2) {
+                    err.msg("No modules specified after -exportedmodules option.");
+                } else {
+                    if (RootDocToXML.exportedModules == null)
+                        RootDocToXML.exportedModules = new HashSet<String>();
+                    StringTokenizer st = new StringTokenizer(option[1], ":");
+                    while (st.hasMoreTokens())
+                        RootDocToXML.exportedModules.add(st.nextToken().trim());
+                }
+                continue;
+            }
+            if (name.equals("-xmlcache")) {
+                if (option.length < 2) {
+                    err.msg("No file specified after -xmlcache option.");
+                } else {
+                    RootDocToXML.xmlCacheFile = option[1];
+                }
+                continue;
+            }
             if (name.equals("-showallchanges")) {
                 Diff.showAllChanges = true;
                 continue;
@@ -355,6 +497,22 @@ public class Options {
                 }
                 continue;
             }
+            if (name.equals("-stax")) {
+                XMLToAPI.useStAX = true;
+                continue;
+            }
+            if (name.equals("-snapshot")) {
+                XMLToAPI.useSnapshots = true;
+                continue;
+            }
+            if (name.equals("-lazydocs")) {
+                XMLToAPI.lazyDocs = true;
+                continue;
+            }
+            if (name.equals("-streaming")) {
+                XMLToAPI.streamPackages = true;
+                continue;
+            }
             if (name.equals("-checkcomments")) {
                 APIHandler.checkIsSentence = true;
                 continue;
@@ -363,6 +521,38 @@ public class Options {
                 RootDocToXML.stripNonPrintables = false;
                 continue;
             }
+            if (name.equals("-apiinclude")) {
+                if (option.length < 2) {
+                    err.msg("No patterns specified after -apiinclude option.");
+                } else {
+                    APIFilter.addIncludes(option[1]);
+                }
+                continue;
+            }
+            if (name.equals("-apiexclude")) {
+                if (option.length < 2) {
+                    err.msg("No patterns specified after -apiexclude option.");
+                } else {
+                    APIFilter.addExcludes(option[1]);
+                }
+                continue;
+            }
+            if (name.equals("-includeannotation")) {
+                if (option.length < 2) {
+                    err.msg("No annotations specified after -includeannotation option.");
+                } else {
+                    AnnotationFilter.addIncludes(option[1]);
+                }
+                continue;
+            }
+            if (name.equals("-excludeannotation")) {
+                if (option.length < 2) {
+                    err.msg("No annotations specified after -excludeannotation option.");
+                } else {
+                    AnnotationFilter.addExcludes(option[1]);
+                }
+                continue;
+            }
             if (name.equals("-excludetag")) {
                 if (option.length < 2) {
                     err.msg("No exclude tag specified after -excludetag option.");
@@ -434,21 +624,42 @@ public class Options {
         lengths.put("-newapi", Integer.valueOf(2));
         lengths.put("-apidir", Integer.valueOf(2));
         lengths.put("-oldapidir", Integer.valueOf(2));
+        lengths.put("-apimatrix", Integer.valueOf(2));
+        lengths.put("-matrixpairs", Integer.valueOf(2));
+        lengths.put("-matrixreports", Integer.valueOf(1));
         lengths.put("-newapidir", Integer.valueOf(2));
         lengths.put("-excludeclass", Integer.valueOf(2));
         lengths.put("-excludemember", Integer.valueOf(2));
         lengths.put("-firstsentence", Integer.valueOf(1));
         lengths.put("-docchanges", Integer.valueOf(1));
         lengths.put("-incompatible", Integer.valueOf(1));
+        lengths.put("-checkincompatible", Integer.valueOf(2));
         lengths.put("-packagesonly", Integer.valueOf(1));
+        lengths.put("-gzip", Integer.valueOf(1));
+        lengths.put("-shards", Integer.valueOf(1));
+        lengths.put("-xmlthreads", Integer.valueOf(2));
+        lengths.put("-comparethreads", Integer.valueOf(2));
+        lengths.put("-diffcache", Integer.valueOf(2));
+        lengths.put("-xmlcache", Integer.valueOf(2));
+        lengths.put("-apiclasspath", Integer.valueOf(2));
+        lengths.put("-docdigests", Integer.valueOf(1));
+        lengths.put("-exportedmodules", Integer.valueOf(2));
         lengths.put("-showallchanges", Integer.valueOf(1));
         lengths.put("-javadocnew", Integer.valueOf(2));
         lengths.put("-javadocold", Integer.valueOf(2));
         lengths.put("-baseuri", Integer.valueOf(2));
         lengths.put("-nosuggest", Integer.valueOf(2));
+        lengths.put("-stax", Integer.valueOf(1));
+        lengths.put("-snapshot", Integer.valueOf(1));
+        lengths.put("-lazydocs", Integer.valueOf(1));
+        lengths.put("-streaming", Integer.valueOf(1));
         lengths.put("-checkcomments", Integer.valueOf(1));
         lengths.put("-retainnonprinting", Integer.valueOf(1));
         lengths.put("-excludetag", Integer.valueOf(2));
+        lengths.put("-includeannotation", Integer.valueOf(2));
+        lengths.put("-excludeannotation", Integer.valueOf(2));
+        lengths.put("-apiinclude", Integer.valueOf(2));
+        lengths.put("-apiexclude", Integer.valueOf(2));
         lengths.put("-stats", Integer.valueOf(1));
         lengths.put("-windowtitle", Integer.valueOf(2));
         lengths.put("-doctitle", Integer.valueOf(2));
@@ -532,8 +743,18 @@ public class Options {
         System.err.println();
         System.err.println("  -d <directory> Destination directory for output HTML files");
         System.err.println("  -apidir <directory> Destination directory for the XML file generated with the '-apiname' argument.");
+        System.err.println("  -gzip Compress the XML file generated with the '-apiname' argument, adding '.gz' to its name.");
+        System.err.println("  -shards Write each package of the API to a separate XML file, in a directory named after the '-apiname' argument.");
+        System.err.println("  -xmlthreads <n> Generate the XML for the packages of the API on n threads. The source is read on one thread, and the XML is the same as with one thread.");
+        System.err.println("  -xmlcache <file> Keep the XML for each class in this file, and reuse it when the XML is generated again and the source file of the class has not changed.");
+        System.err.println("  -apiclasspath <path> Generate the XML for the '-apiname' argument from the classes in these jar files and directories, instead of from source files. There is no documentation in the XML.");
+        System.err.println("  -exportedmodules <modules> Only write the packages which these modules export to all modules to the XML file generated with the '-apiname' argument, e.g. java.base:java.sql");
+        System.err.println("  -docdigests Write a digest of each doc block to the XML file generated with the '-apiname' argument, instead of its text. Changes to the documentation are found, but not shown.");
         System.err.println("  -oldapidir <directory> Location of the XML file for the old API");
         System.err.println("  -newapidir <directory> Location of the XML file for the new API");
+        System.err.println("  -apimatrix <names> Compare several versions of an API, oldest first, e.g. 3.2.0:3.3.0:3.4.0. Each XML file is read once from the -apidir directory, and a table of the changes between each pair is printed");
+        System.err.println("  -matrixpairs [adjacent|all] Compare each version with the next one, or with every later one. Default is adjacent");
+        System.err.println("  -matrixreports Also generate a report for each pair of versions, in a subdirectory of the -d directory");
         System.err.println("  -sourcepath <location of Java source files>");
         System.err.println("  -javadocnew <location of existing Javadoc files for the new API>");
         System.err.println("  -javadocold <location of existing Javadoc files for the old API>");
@@ -545,10 +766,21 @@ public class Options {
         System.err.println("  -firstsentence Save only the first sentence of each comment block with the API.");
         System.err.println("  -docchanges Report changes in Javadoc comments between the APIs");
         System.err.println("  -incompatible Only report incompatible changes");
+        System.err.println("  -checkincompatible <n> Only check for incompatible changes, stopping after n of them, or finding all of them if n is 0. No report is generated, and JDiff fails if any are found.");
         System.err.println("  -nosuggest [all|remove|add|change] Do not add suggested comments to all, or the removed, added or chabged sections");
+        System.err.println("  -stax Read the XML files for the APIs with a StAX pull parser");
+        System.err.println("  -snapshot Load each API from a binary snapshot (.jdapi) next to its XML file, writing it if it is missing or out of date");
+        System.err.println("  -lazydocs Only read in the documentation from the XML files for the APIs when it is needed");
+        System.err.println("  -streaming Compare the APIs one package at a time as the XML files are read, to reduce the memory needed");
+        System.err.println("  -comparethreads <n> Compare the packages and classes of the APIs on n threads. The report is the same as with one thread.");
+        System.err.println("  -diffcache <file> Keep the changes found in each class in this file, and reuse them when the same two versions of a class are compared again");
         System.err.println("  -checkcomments Check that comments are sentences");
         System.err.println("  -stripnonprinting Remove non-printable characters from comments.");
         System.err.println("  -excludetag <tag> Define the Javadoc tag which implies exclusion");
+        System.err.println("  -includeannotation <annotations> Only write the classes and members marked with these annotations, or in classes or packages marked with them, e.g. InterfaceAudience.Public:InterfaceAudience.LimitedPrivate");
+        System.err.println("  -excludeannotation <annotations> Do not write the packages, classes and members marked with these annotations, or in classes or packages marked with them, e.g. InterfaceAudience.Private");
+        System.err.println("  -apiinclude <patterns> Only read in the packages and classes which match the patterns, e.g. org.apache.hadoop.fs.*");
+        System.err.println("  -apiexclude <patterns> Do not read in the packages and classes which match the patterns");
         System.err.println("  -stats Generate statistical output");
         System.err.println("  -help       (generates this output)");
         System.err.println("");
@@ -24,18 +24,43 @@ class PackageAPI implements Comparable {
     /** The doc block, default is null. */
     public String doc_ = null;
 
+    /** 
+     * The doc block, if it is only read in from the XML file when it is
+     * needed. If this is set, then doc_ is null.
+     */
+    public LazyDoc lazyDoc_ = null;
+
+    /** 
+     * The fingerprint of the XML for the package, rolled up from those of
+     * its classes, or null if the XML file has none.
+     */
+    public String fingerprint_ = null;
+
+    /** 
+     * The name of the module which contains the package, or null if it is
+     * in the unnamed module.
+     */
+    public String module_ = null;
+
     /** Constructor. */
     public PackageAPI(String name) {
         name_ = name;
         classes_ = new ArrayList(); // ClassAPI[]
     }
 
+    /** Return the doc block, reading it in from the XML file if necessary. */
+    public String getDoc() {
+        if (lazyDoc_ != null)
+            return lazyDoc_.getText();
+        return doc_;
+    }
+
     /** Compare two PackageAPI objects by name. */
     public int compareTo(Object o) {
         PackageAPI oPackageAPI = (PackageAPI)o;
-        if (APIComparator.docChanged(doc_, oPackageAPI.doc_))
+        if (APIComparator.docChanged(doc_, lazyDoc_, oPackageAPI.doc_, oPackageAPI.lazyDoc_))
             return -1;
-        return name_.compareTo(oPackageAPI.name_);
+        return SymbolTable.compare(name_, oPackageAPI.name_);
     }
 
     /** 
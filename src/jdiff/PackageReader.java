@@ -0,0 +1,254 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+
+/* For StAX parsing */
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads an XML file representing an API one package at a time, so that
+ * two APIs can be compared without either of them being held in memory
+ * as a whole. Each package is returned complete, with the inherited
+ * methods and fields added to its classes, and can be discarded once it
+ * has been compared.
+ *
+ * Since a class may inherit from a class in any other package, the file
+ * is first scanned for the names of all the classes which are extended
+ * or implemented, and then those classes, and only those, are read into
+ * an index. The documentation of the classes in the index is not read
+ * in unless it is needed, if the file allows this.
+ *
+ * Packages are merged by name as they are read, so the packages in the
+ * file must be in sorted order, as they are when JDiff writes the XML.
+ * This is checked while the file is scanned.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class PackageReader {
+
+    /** The full name of the file being read. */
+    private String filename_ = null;
+
+    /** The loader which adds each program element to the current package. */
+    private XMLToAPI loader_ = null;
+
+    /** The handler which parses the XML file. */
+    private APIStreamHandler handler_ = null;
+
+    /** The stream from which the XML file is read. */
+    private InputStream in_ = null;
+
+    /** The parser for the XML file. */
+    private XMLStreamReader reader_ = null;
+
+    /**
+     * The API object which holds the index of the classes which are
+     * inherited from, for use in links to those classes.
+     */
+    private API index_ = new API();
+
+    /** The names of all the classes and interfaces which are inherited. */
+    private HashSet parents_ = new HashSet(); // String
+
+    /** Set if the packages are in sorted order in the file. */
+    private boolean isSorted_ = true;
+
+    /** The number of packages returned so far. */
+    private int numPackages_ = 0;
+
+    /**
+     * Scan the XML file, read the classes which are inherited from into
+     * the index, and prepare to read the packages one at a time.
+     *
+     * @param filename The full name of the file containing the XML
+     *                 representing the API
+     * @param createGlobalComments If set, then store possible comments
+     * @param apiName The simple name of the API file.
+     * @param symbols The table of names and types.
+     */
+    public PackageReader(String filename, boolean createGlobalComments,
+                         String apiName, SymbolTable symbols) {
+        filename_ = filename;
+        index_.name_ = apiName;
+        try {
+            scan();
+            if (!isSorted_)
+                return;
+            readIndex(symbols);
+
+            loader_ = new XMLToAPI(symbols);
+            loader_.startAPI(createGlobalComments, apiName);
+            loader_.setClassIndex(index_.classes_);
+            in_ = FileStreams.openInput(filename);
+            LazyDoc.OffsetStream offsets = null;
+            if (XMLToAPI.lazyDocs && !FileStreams.isCompressed(filename)) {
+                offsets = new LazyDoc.OffsetStream(in_);
+                in_ = offsets;
+            }
+            reader_ = XMLToAPI.createStreamReader(in_);
+            handler_ = new APIStreamHandler(loader_, createGlobalComments);
+            if (XMLToAPI.lazyDocs) {
+                String reason = handler_.readDocsLazily(filename, reader_, offsets);
+                if (reason != null)
+                    System.out.println("Warning: the documentation in file '" + filename + "' will be read in now, since " + reason);
+            }
+            handler_.startDocument();
+        } catch(XMLStreamException xse) {
+            System.out.println("StAX Exception parsing file '" + filename + "' : " + xse);
+            xse.printStackTrace();
+            System.exit(1);
+        } catch(java.io.IOException ioe) {
+            System.out.println("IOException parsing file '" + filename + "' : " + ioe);
+            ioe.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Return true if the packages in the file are in sorted order, which
+     * is required to read the file one package at a time.
+     */
+    public boolean isSorted() {
+        return isSorted_;
+    }
+
+    /**
+     * Return the API object which holds the classes which are inherited
+     * from. Its name is that of the API once the first package has been
+     * read.
+     */
+    public API getIndex() {
+        return index_;
+    }
+
+    /** Return the number of packages read so far. */
+    public int numPackages() {
+        return numPackages_;
+    }
+
+    /**
+     * Return the next package in the file, or null if there are no more
+     * packages. The inherited methods and fields have been added to each
+     * of its classes.
+     */
+    public PackageAPI next() {
+        API api = loader_.getAPI();
+        do {
+            api.packages_.clear();
+            api.classes_.clear();
+            try {
+                if (!handler_.parsePackage(reader_))
+                    return null;
+            } catch(XMLStreamException xse) {
+                System.out.println("StAX Exception parsing file '" + filename_ + "' : " + xse);
+                xse.printStackTrace();
+                System.exit(1);
+            }
+            loader_.removeEmptyPackages();
+        } while (api.packages_.size() == 0);
+        index_.name_ = api.name_;
+        loader_.addFingerprints();
+        loader_.addInheritedElements();
+        loader_.publishPossibleComments();
+        loader_.clearPossibleComments();
+        numPackages_++;
+        return (PackageAPI)(api.packages_.get(0));
+    }
+
+    /** Close the file. */
+    public void close() {
+        try {
+            if (reader_ != null)
+                reader_.close();
+            if (in_ != null)
+                in_.close();
+        } catch(XMLStreamException xse) {
+            System.out.println("StAX Exception closing file '" + filename_ + "' : " + xse);
+        } catch(java.io.IOException ioe) {
+            System.out.println("IOException closing file '" + filename_ + "' : " + ioe);
+        }
+    }
+
+    /**
+     * Scan the file for the names of the classes and interfaces which are
+     * inherited, and check that the packages are in sorted order. Only
+     * the attributes of a few elements are looked at.
+     */
+    private void scan() throws IOException, XMLStreamException {
+        InputStream in = FileStreams.openInput(filename_);
+        XMLStreamReader reader = XMLToAPI.createStreamReader(in);
+        String lastPkgName = null;
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                continue;
+            String localName = reader.getLocalName();
+            if (localName.equals("package")) {
+                String pkgName = reader.getAttributeValue(null, "name");
+                if (lastPkgName != null && pkgName.compareTo(lastPkgName) <= 0) {
+                    System.out.println("Warning: the packages in file '" + filename_ + "' are not in sorted order, so it cannot be read one package at a time");
+                    isSorted_ = false;
+                    break;
+                }
+                lastPkgName = pkgName;
+            } else if (localName.equals("class") || localName.equals("interface")) {
+                String parent = reader.getAttributeValue(null, "extends");
+                if (parent != null)
+                    parents_.add(parent);
+            } else if (localName.equals("implements")) {
+                parents_.add(reader.getAttributeValue(null, "name"));
+            }
+        }
+        reader.close();
+        in.close();
+    }
+
+    /**
+     * Read the classes which are inherited from into the index, one
+     * package at a time. The documentation of these classes is only read
+     * in when it is needed, unless the file is compressed, is not in a
+     * single byte encoding, or is larger than 2GB.
+     */
+    private void readIndex(SymbolTable symbols) throws IOException, XMLStreamException {
+        XMLToAPI loader = new XMLToAPI(symbols);
+        loader.startAPI(false, index_.name_);
+        API api = loader.getAPI();
+        InputStream in = FileStreams.openInput(filename_);
+        LazyDoc.OffsetStream offsets = null;
+        if (!FileStreams.isCompressed(filename_)) {
+            offsets = new LazyDoc.OffsetStream(in);
+            in = offsets;
+        }
+        XMLStreamReader reader = XMLToAPI.createStreamReader(in);
+        APIStreamHandler handler = new APIStreamHandler(loader, false);
+        handler.checkSentences_ = false;
+        handler.readDocsLazily(filename_, reader, offsets);
+        handler.startDocument();
+        while (handler.parsePackage(reader)) {
+            if (api.packages_.size() == 0)
+                continue;
+            PackageAPI pkg = (PackageAPI)(api.packages_.get(0));
+            Iterator iter = pkg.classes_.iterator();
+            while (iter.hasNext()) {
+                ClassAPI cls = (ClassAPI)(iter.next());
+                String fqName = pkg.name_ + "." + cls.name_;
+                if (!cls.isInterface_ && parents_.contains(fqName)) {
+                    // The fingerprints of the classes which are inherited
+                    // from are needed to decide if a class changed
+                    if (cls.fingerprint_ == null)
+                        cls.fingerprint_ = cls.structuralFingerprint();
+                    index_.classes_.put(fqName, cls);
+                }
+            }
+            // Only the name of the package is needed by the classes kept
+            pkg.classes_.clear();
+            api.packages_.clear();
+            api.classes_.clear();
+        }
+        reader.close();
+        in.close();
+        parents_ = null;
+    }
+}
@@ -28,10 +28,10 @@ class ParamAPI implements Comparable {
     /** Compare two ParamAPI objects using both name and type. */
     public int compareTo(Object o) {
         ParamAPI oParamAPI = (ParamAPI)o;
-        int comp = name_.compareTo(oParamAPI.name_);
+        int comp = SymbolTable.compare(name_, oParamAPI.name_);
         if (comp != 0)
             return comp;
-        comp = type_.compareTo(oParamAPI.type_);
+        comp = SymbolTable.compare(type_, oParamAPI.type_);
         if (comp != 0)
             return comp;
         return 0;
@@ -1,18 +1,26 @@
 package jdiff;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 import java.io.*;
 
+import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import javax.lang.model.element.ModuleElement;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
@@ -40,7 +48,35 @@ public class RootDocToXML {
     private final Elements elements;
     private final Types types;
 
-    private static PrintWriter outputFile = null;
+    /** 
+     * The file, or the buffer for one package, into which the XML is 
+     * written.
+     */
+    PrintWriter outputFile = null;
+
+    /** 
+     * The directory into which each package is written as a separate file,
+     * or null if the API is written to a single file.
+     */
+    String shardDirectory_ = null;
+
+    /** The manifest of the files written to the shard directory. */
+    private PrintWriter shardManifest_ = null;
+
+    /** 
+     * The cache of the XML for each class from an earlier run, or null if
+     * there is no cache.
+     */
+    private XMLFragmentCache fragmentCache_ = null;
+
+    /** 
+     * The fingerprints of the classes written in the current package, 
+     * which are rolled up into the fingerprint of the package.
+     */
+    private List<String> classFingerprints_ = null;
+
+    /** The strings for the types seen so far in this run. */
+    private TypeStringCache typeStrings_ = new TypeStringCache();
 
     /** Default constructor. */
     public RootDocToXML(DocletEnvironment environment) {
@@ -50,6 +86,31 @@ public class RootDocToXML {
         this.types = environment.getTypeUtils();
     }
 
+    /** 
+     * Constructor for a subclass which writes the XML for an API which is
+     * not read in by Javadoc, or for a writer which renders packages 
+     * which have already been read in.
+     */
+    RootDocToXML() {
+        this.environment = null;
+        this.docTrees = null;
+        this.elements = null;
+        this.types = null;
+    }
+
+    /**
+     * Return the object which writes the XML for the API, which is read
+     * from compiled classes if any were given, or else is the API
+     * which Javadoc read in. Return null if there is no API.
+     */
+    private static RootDocToXML createWriter(DocletEnvironment environment) {
+        if (apiClassPath != null)
+            return new ClassFileToXML(apiClassPath);
+        if (environment == null)
+            return null;
+        return new RootDocToXML(environment);
+    }
+
     /**
      * Write the XML representation of the API to a file.
      *
@@ -64,18 +125,24 @@ public class RootDocToXML {
                 tempFileName += JDiff.DIR_SEP;
             tempFileName += outputFileName;
         }
+        if (shardXML)
+            return writeShards(environment, APIShards.shardDirectory(tempFileName));
+        if (compressXML && !FileStreams.isCompressedName(tempFileName))
+            tempFileName += FileStreams.GZIP_SUFFIX;
 
         try {
-            FileOutputStream fos = new FileOutputStream(tempFileName);
-            outputFile = new PrintWriter(fos);
+            PrintWriter outputFile = new PrintWriter(FileStreams.openOutput(tempFileName));
             System.out.println("JDiff: writing the API to file '" + tempFileName + "'...");
-            if (environment != null) {
-                RootDocToXML apiWriter = new RootDocToXML(environment);
+            RootDocToXML apiWriter = createWriter(environment);
+            if (apiWriter != null) {
+                apiWriter.outputFile = outputFile;
                 if (apiWriter.hasIncludedTypes()) {
+                    apiWriter.openFragmentCache();
                     apiWriter.emitXMLHeader();
                     apiWriter.logOptions();
                     apiWriter.processPackages();
                     apiWriter.emitXMLFooter();
+                    apiWriter.closeFragmentCache();
                 }
             }
             outputFile.close();
@@ -92,7 +159,127 @@ public class RootDocToXML {
         return true;
     }
 
-    private boolean hasIncludedTypes() {
+    /**
+     * Write the XML representation of each package in the API to its own
+     * file in the given directory, and the manifest of these files.
+     *
+     * @param environment the DocletEnvironment supplied by Javadoc
+     * @param dirName the name of the directory
+     * @return true if no problems encountered
+     */
+    private static boolean writeShards(DocletEnvironment environment, 
+                                       String dirName) {
+        String manifestName = dirName + JDiff.DIR_SEP + APIShards.MANIFEST;
+        try {
+            File dir = new File(dirName);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                System.out.println("Error: unable to create the directory '" + dirName + "'");
+                System.exit(1);
+            }
+            System.out.println("JDiff: writing the API to directory '" + dirName + "'...");
+            PrintWriter manifest = new PrintWriter(FileStreams.openOutput(manifestName));
+            manifest.println("<?xml version=\"1.0\" encoding=\"iso-8859-1\" standalone=\"no\"?>");
+            manifest.println("<!-- Generated by the JDiff Javadoc doclet -->");
+            manifest.println("<!-- (" + JDiff.jDiffLocation + ") -->");
+            manifest.println("<!-- on " + new Date() + " -->");
+            manifest.println("<shards name=\"" + apiIdentifier + "\" jdversion=\"" + JDiff.version + "\">");
+            RootDocToXML apiWriter = createWriter(environment);
+            if (apiWriter != null) {
+                if (apiWriter.hasIncludedTypes()) {
+                    apiWriter.shardDirectory_ = dirName;
+                    apiWriter.shardManifest_ = manifest;
+                    apiWriter.openFragmentCache();
+                    apiWriter.processPackages();
+                    apiWriter.closeFragmentCache();
+                }
+            }
+            manifest.println("</shards>");
+            manifest.close();
+        } catch(IOException e) {
+            System.out.println("IO Error while attempting to create " + manifestName);
+            System.out.println("Error: " +  e.getMessage());
+            System.exit(1);
+        }
+        if (XMLToAPI.validateXML) {
+            writeXSD();
+        }
+        return true;
+    }
+
+    /**
+     * Start writing the file for one package in a shard directory, and add
+     * it to the manifest.
+     */
+    void startShard(String pkgName) {
+        String shardName = APIShards.shardFileName(pkgName);
+        if (compressXML)
+            shardName += FileStreams.GZIP_SUFFIX;
+        String shardFileName = shardDirectory_ + JDiff.DIR_SEP + shardName;
+        try {
+            outputFile = new PrintWriter(FileStreams.openOutput(shardFileName));
+        } catch(IOException e) {
+            System.out.println("IO Error while attempting to create " + shardFileName);
+            System.out.println("Error: " +  e.getMessage());
+            System.exit(1);
+        }
+        shardManifest_.println("  <shard package=\"" + pkgName + "\" file=\"" + shardName + "\"/>");
+        emitXMLHeader();
+        logOptions();
+    }
+
+    /** Finish writing the file for one package in a shard directory. */
+    void endShard() {
+        emitXMLFooter();
+        outputFile.close();
+    }
+
+    /**
+     * Read in the cache of the XML for each class, if one was requested.
+     * The fingerprint of the cache covers the version of JDiff, the options
+     * and the names of all the classes, since these can all change the XML
+     * for a class whose source file has not changed.
+     */
+    private void openFragmentCache() {
+        if (xmlCacheFile == null || environment == null)
+            return;
+        List<String> typeNames = new ArrayList<String>();
+        for (Element element : environment.getIncludedElements()) {
+            if (element instanceof TypeElement)
+                typeNames.add(((TypeElement)element).getQualifiedName().toString());
+        }
+        Collections.sort(typeNames);
+        StringBuilder config = new StringBuilder();
+        config.append(JDiff.version).append('\n');
+        config.append(Options.cmdOptions).append('\n');
+        for (String typeName : typeNames)
+            config.append(typeName).append('\n');
+        fragmentCache_ = new XMLFragmentCache(xmlCacheFile, 
+                                              XMLFragmentCache.hash(config.toString()));
+    }
+
+    /** Write out the cache of the XML for each class, if there is one. */
+    private void closeFragmentCache() {
+        if (fragmentCache_ != null)
+            fragmentCache_.save();
+    }
+
+    /** 
+     * Return the source file which contains the element, or null if it 
+     * is not known.
+     */
+    private JavaFileObject sourceFileOf(Element element) {
+        if (docTrees == null)
+            return null;
+        TreePath path = docTrees.getPath(element);
+        if (path == null)
+            return null;
+        CompilationUnitTree cu = path.getCompilationUnit();
+        if (cu == null)
+            return null;
+        return cu.getSourceFile();
+    }
+
+    boolean hasIncludedTypes() {
         if (environment == null) {
             return false;
         }
@@ -157,9 +344,15 @@ public class RootDocToXML {
             xsdFile.println("      <xsd:element name=\"class\" type=\"classType\"/>");
             xsdFile.println("      <xsd:element name=\"interface\" type=\"classType\"/>");
             xsdFile.println("    </xsd:choice>");
-            xsdFile.println("    <xsd:element name=\"doc\" type=\"xsd:string\" minOccurs='0' maxOccurs='1'/>");
+            xsdFile.println("    <xsd:element name=\"doc\" type=\"docType\" minOccurs='0' maxOccurs='1'/>");
             xsdFile.println("  </xsd:sequence>");
             xsdFile.println("  <xsd:attribute name=\"name\" type=\"xsd:string\"/>");
+            xsdFile.println("  <xsd:attribute name=\"module\" type=\"xsd:string\" use='optional'/>");
+            xsdFile.println("  <xsd:attribute name=\"fingerprint\" type=\"xsd:string\" use='optional'/>");
+            xsdFile.println("</xsd:complexType>");
+            xsdFile.println();
+            xsdFile.println("<xsd:complexType name=\"docType\" mixed=\"true\">");
+            xsdFile.println("  <xsd:attribute name=\"digest\" type=\"xsd:string\" use='optional'/>");
             xsdFile.println("</xsd:complexType>");
             xsdFile.println();
             xsdFile.println("<xsd:complexType name=\"classType\">");
@@ -168,7 +361,7 @@ public class RootDocToXML {
             xsdFile.println("    <xsd:element name=\"constructor\" type=\"constructorType\" minOccurs='0' maxOccurs='unbounded'/>");
             xsdFile.println("    <xsd:element name=\"method\" type=\"methodType\" minOccurs='0' maxOccurs='unbounded'/>");
             xsdFile.println("    <xsd:element name=\"field\" type=\"fieldType\" minOccurs='0' maxOccurs='unbounded'/>");
-            xsdFile.println("    <xsd:element name=\"doc\" type=\"xsd:string\" minOccurs='0' maxOccurs='1'/>");
+            xsdFile.println("    <xsd:element name=\"doc\" type=\"docType\" minOccurs='0' maxOccurs='1'/>");
             xsdFile.println("  </xsd:sequence>");
             xsdFile.println("  <xsd:attribute name=\"name\" type=\"xsd:string\"/>");
             xsdFile.println("  <xsd:attribute name=\"extends\" type=\"xsd:string\" use='optional'/>");
@@ -178,6 +371,7 @@ public class RootDocToXML {
             xsdFile.println("  <xsd:attribute name=\"final\" type=\"xsd:boolean\"/>");
             xsdFile.println("  <xsd:attribute name=\"deprecated\" type=\"xsd:string\"/>");
             xsdFile.println("  <xsd:attribute name=\"visibility\" type=\"xsd:string\"/>");
+            xsdFile.println("  <xsd:attribute name=\"fingerprint\" type=\"xsd:string\" use='optional'/>");
             xsdFile.println("</xsd:complexType>");
             xsdFile.println();
             xsdFile.println("<xsd:complexType name=\"interfaceTypeName\">");
@@ -187,7 +381,7 @@ public class RootDocToXML {
             xsdFile.println("<xsd:complexType name=\"constructorType\">");
             xsdFile.println("  <xsd:sequence>");
             xsdFile.println("    <xsd:element name=\"exception\" type=\"exceptionType\" minOccurs='0' maxOccurs='unbounded'/>");
-            xsdFile.println("    <xsd:element name=\"doc\" type=\"xsd:string\" minOccurs='0' maxOccurs='1'/>");
+            xsdFile.println("    <xsd:element name=\"doc\" type=\"docType\" minOccurs='0' maxOccurs='1'/>");
             xsdFile.println("  </xsd:sequence>");
             xsdFile.println("  <xsd:attribute name=\"name\" type=\"xsd:string\"/>");
             xsdFile.println("  <xsd:attribute name=\"type\" type=\"xsd:string\" use='optional'/>");
@@ -212,7 +406,7 @@ public class RootDocToXML {
             xsdFile.println("  <xsd:sequence>");
             xsdFile.println("    <xsd:element name=\"param\" type=\"paramsType\" minOccurs='0' maxOccurs='unbounded'/>");
             xsdFile.println("    <xsd:element name=\"exception\" type=\"exceptionType\" minOccurs='0' maxOccurs='unbounded'/>");
-            xsdFile.println("    <xsd:element name=\"doc\" type=\"xsd:string\" minOccurs='0' maxOccurs='1'/>");
+            xsdFile.println("    <xsd:element name=\"doc\" type=\"docType\" minOccurs='0' maxOccurs='1'/>");
             xsdFile.println("  </xsd:sequence>");
             xsdFile.println("  <xsd:attribute name=\"name\" type=\"xsd:string\"/>");
             xsdFile.println("  <xsd:attribute name=\"return\" type=\"xsd:string\" use='optional'/>");
@@ -228,7 +422,7 @@ public class RootDocToXML {
             xsdFile.println();
             xsdFile.println("<xsd:complexType name=\"fieldType\">");
             xsdFile.println("  <xsd:sequence>");
-            xsdFile.println("    <xsd:element name=\"doc\" type=\"xsd:string\" minOccurs='0' maxOccurs='1'/>");
+            xsdFile.println("    <xsd:element name=\"doc\" type=\"docType\" minOccurs='0' maxOccurs='1'/>");
             xsdFile.println("  </xsd:sequence>");
             xsdFile.println("  <xsd:attribute name=\"name\" type=\"xsd:string\"/>");
             xsdFile.println("  <xsd:attribute name=\"type\" type=\"xsd:string\"/>");
@@ -303,8 +497,50 @@ public class RootDocToXML {
             }
         }
 
-        List<String> packageNames = new ArrayList<String>(packageMap.keySet());
-        Collections.sort(packageNames);
+        // Group the packages by the modules which contain them, leaving
+        // out those which are not exported by a selected module
+        Map<String, String> moduleNames = new HashMap<String, String>();
+        Map<String, Set<String>> exportsByModule = new HashMap<String, Set<String>>();
+        List<String> packageNames = new ArrayList<String>();
+        for (Map.Entry<String, PackageElement> entry : packageMap.entrySet()) {
+            String pkgName = entry.getKey();
+            ModuleElement module = safeGetModuleOf(entry.getValue());
+            String moduleName = null;
+            boolean exported = false;
+            if (module != null) {
+                moduleName = module.getQualifiedName().toString();
+                Set<String> exports = exportsByModule.get(moduleName);
+                if (exports == null) {
+                    exports = exportedPackages(module);
+                    exportsByModule.put(moduleName, exports);
+                }
+                exported = exports.contains(pkgName);
+            }
+            if (!shownInModule(moduleName, exported)) {
+                if (trace) System.out.println("Skipping the package " + pkgName + " which is not exported");
+                continue;
+            }
+            moduleNames.put(pkgName, moduleName);
+            packageNames.add(pkgName);
+        }
+        sortByModule(packageNames, moduleNames);
+        // The compiler's model of the source is not safe to use from 
+        // several threads, so every package of every module is read in 
+        // from it on this thread, one after another. Modules are not read 
+        // in parallel; only the XML for each package which has been read 
+        // in is rendered on a worker
+        int threads = Math.min(xmlThreads, packageNames.size());
+        ExecutorService workers = null;
+        if (threads > 1) {
+            // Daemon threads, so that a failure on this thread still ends 
+            // the run
+            workers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread worker = new Thread(runnable, "jdiff-xml");
+                worker.setDaemon(true);
+                return worker;
+            });
+        }
+        LinkedList<PackageData> pending = new LinkedList<PackageData>();
         for (String pkgName : packageNames) {
             PackageElement pkg = packageMap.get(pkgName);
             if (pkgName.length() == 0 && packagesOnly) {
@@ -314,9 +550,6 @@ public class RootDocToXML {
             if (!shownElement(pkg, pkgComment, null))
                 continue;
 
-            if (trace) System.out.println("PROCESSING PACKAGE: " + pkgName);
-            outputFile.println("<package name=\"" + pkgName + "\">");
-
             List<TypeElement> classList;
             if (specifiedClasses.containsKey(pkgName)) {
                 if (trace) System.out.println("Using the specified classes");
@@ -329,14 +562,299 @@ public class RootDocToXML {
                     classList = new ArrayList<TypeElement>();
                 }
             }
-            processClasses(classList, pkgName);
+            if (AnnotationFilter.isSet()) {
+                // Leave out the classes, and then any package with no 
+                // classes, which are not written because of annotations
+                classList.removeIf(type -> !AnnotationFilter.shown(annotationRule(type)));
+                if (classList.isEmpty())
+                    continue;
+            }
+            PackageData data = readPackage(pkgName, moduleNames.get(pkgName), 
+                                           pkg, pkgComment, classList);
+            if (workers == null) {
+                if (shardDirectory_ != null)
+                    startShard(pkgName);
+                writePackage(data);
+                if (shardDirectory_ != null)
+                    endShard();
+                continue;
+            }
+            // Keep only a few packages ahead of the one being written out
+            data.xml_ = workers.submit(() -> renderPackage(data));
+            pending.addLast(data);
+            if (pending.size() > threads * 4)
+                writeRendered(pending.removeFirst());
+        }
+        if (workers != null) {
+            while (!pending.isEmpty())
+                writeRendered(pending.removeFirst());
+            workers.shutdown();
+        }
+    } // processPackages
+
+    /** A package which has been read in, ready to be written as XML. */
+    static class PackageData {
+        /** The name of the package. */
+        String name_ = null;
+
+        /** The module which contains the package, or null if none. */
+        String module_ = null;
+
+        /** The documentation of the package, or null if there is none. */
+        String doc_ = null;
+
+        /** The classes and interfaces which are shown, sorted by name. */
+        List<ClassData> classes_ = new ArrayList<ClassData>();
+
+        /** The XML for the package, if it is rendered on another thread. */
+        Future<String> xml_ = null;
+    }
+
+    /** What every class, interface and member which is shown has. */
+    static class ElementData {
+        /** Where it is in the source, as "file:line", or null. */
+        String src_ = null;
+
+        /** Set if it is static. */
+        boolean isStatic_ = false;
+
+        /** Set if it is final. */
+        boolean isFinal_ = false;
+
+        /** "public", "protected", "private" or "package". */
+        String visibility_ = null;
+
+        /** The doc comment, or null if there is none. */
+        String doc_ = null;
+    }
+
+    /** 
+     * A class or interface which has been read in, or just the XML for 
+     * it, if it was in the cache.
+     */
+    static class ClassData extends ElementData {
+        /** The qualified name of the class. */
+        String name_ = null;
+
+        /** The name of the class within its package. */
+        String simpleName_ = null;
+
+        /** Set if this is an interface. */
+        boolean isInterface_ = false;
+
+        /** The superclass, or null if it is Object or there is none. */
+        String extends_ = null;
+
+        /** Set if the class is abstract. */
+        boolean isAbstract_ = false;
+
+        /** The interfaces implemented. */
+        List<String> interfaces_ = new ArrayList<String>();
+
+        /** The constructors which are shown. */
+        List<MemberData> ctors_ = new ArrayList<MemberData>();
+
+        /** The methods which are shown. */
+        List<MemberData> methods_ = new ArrayList<MemberData>();
+
+        /** The fields which are shown. */
+        List<MemberData> fields_ = new ArrayList<MemberData>();
+
+        /** The XML for the class from the cache, or null. */
+        String fragment_ = null;
+
+        /** The key under which to cache the XML for the class, or null. */
+        String cacheKey_ = null;
+    }
+
+    /** A constructor, method or field which has been read in. */
+    static class MemberData extends ElementData {
+        /** The name, which for a constructor is already escaped. */
+        String name_ = null;
 
-            addPkgDocumentation(pkg, pkgComment, 2);
+        /** Set if this is a method which returns nothing. */
+        boolean isVoid_ = false;
 
-            outputFile.println("</package>");
+        /** The return type of a method or the type of a field. */
+        String type_ = null;
+
+        /** The names of the parameters. */
+        List<String> paramNames_ = new ArrayList<String>();
+
+        /** The types of the parameters. */
+        List<String> paramTypes_ = new ArrayList<String>();
+
+        /** The simple names of the exceptions thrown. */
+        List<String> exceptionNames_ = new ArrayList<String>();
+
+        /** The types of the exceptions thrown. */
+        List<String> exceptionTypes_ = new ArrayList<String>();
+
+        /** Set if the method is abstract. */
+        boolean isAbstract_ = false;
+
+        /** Set if the method is native. */
+        boolean isNative_ = false;
+
+        /** Set if the method is synchronized. */
+        boolean isSynchronized_ = false;
+
+        /** Set if the field is transient. */
+        boolean isTransient_ = false;
+
+        /** Set if the field is volatile. */
+        boolean isVolatile_ = false;
+    }
+
+    /**
+     * Read in everything needed to write the XML for a package and the 
+     * classes/interfaces within it.
+     */
+    private PackageData readPackage(String pkgName, String moduleName, PackageElement pkg, 
+                                    String pkgComment, List<TypeElement> classList) {
+        if (trace) System.out.println("PROCESSING PACKAGE: " + pkgName);
+        PackageData data = new PackageData();
+        data.name_ = pkgName;
+        data.module_ = moduleName;
+        data.doc_ = pkgComment;
+        if (data.doc_ == null)
+            data.doc_ = readPackageFile(pkg);
+        readClasses(data, classList);
+        return data;
+    }
+
+    /**
+     * Write the XML for a package and the classes/interfaces within it.
+     */
+    private void writePackage(PackageData data) {
+        writeFingerprintedPackage(data.name_, data.module_, 
+                                  () -> writeClasses(data),
+                                  () -> addPkgDocumentation(data.doc_, 2));
+    }
+
+    /**
+     * Return the XML for a package, rendered by a writer of its own, so 
+     * that this can be called on any thread.
+     */
+    private String renderPackage(PackageData data) {
+        RootDocToXML renderer = new RootDocToXML();
+        renderer.fragmentCache_ = fragmentCache_;
+        return renderer.render(() -> renderer.writePackage(data));
+    }
+
+    /**
+     * Wait for the XML for a package to be rendered, and write it out.
+     */
+    private void writeRendered(PackageData data) {
+        String xml = null;
+        try {
+            xml = data.xml_.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while writing the package " + data.name_);
+            System.exit(1);
+        } catch (ExecutionException e) {
+            System.out.println("Error: failed to write the package " + data.name_ + ": " + e.getCause());
+            e.getCause().printStackTrace();
+            System.exit(1);
         }
-    } // processPackages
+        if (shardDirectory_ != null)
+            startShard(data.name_);
+        outputFile.print(xml);
+        if (shardDirectory_ != null)
+            endShard();
+    }
+
+    /**
+     * Write the XML for a package. The start tag has a fingerprint which is
+     * rolled up from the fingerprints of the classes in the package and 
+     * the XML for the documentation of the package, so the classes and the
+     * documentation are written to buffers first.
+     *
+     * @param moduleName The module which contains the package, or null if 
+     *                   it is in the unnamed module.
+     * @param classWriter Writes the XML for the classes.
+     * @param docWriter Writes the XML for the documentation, if any.
+     */
+    void writeFingerprintedPackage(String pkgName, String moduleName, 
+                                   Runnable classWriter, Runnable docWriter) {
+        classFingerprints_ = new ArrayList<String>();
+        String classes = render(classWriter);
+        String doc = render(docWriter);
+        StringBuilder rolledUp = new StringBuilder(doc);
+        String startTag = "<package name=\"" + pkgName + "\"";
+        if (moduleName != null) {
+            startTag += " module=\"" + moduleName + "\"";
+            rolledUp.append(moduleName).append('\n');
+        }
+        for (String classFingerprint : classFingerprints_)
+            rolledUp.append(classFingerprint).append('\n');
+        classFingerprints_ = null;
+        outputFile.println(startTag + " fingerprint=\"" + fingerprint(rolledUp.toString()) + "\">");
+        outputFile.print(classes);
+        outputFile.print(doc);
+        outputFile.println("</package>");
+    }
 
+    /**
+     * Write the XML for a class or interface, with a fingerprint in its 
+     * start tag, which is the hash of all the rest of the XML.
+     *
+     * @param startTag The start of the start tag, with the name.
+     * @param attributes The rest of the attributes in the start tag.
+     * @param members The XML for the members and documentation.
+     */
+    void writeFingerprintedClass(String startTag, String attributes, String members) {
+        String fingerprint = fingerprint(startTag + attributes + members);
+        if (classFingerprints_ != null)
+            classFingerprints_.add(fingerprint);
+        outputFile.print(startTag);
+        outputFile.println(attributes);
+        outputFile.println("    fingerprint=\"" + fingerprint + "\">");
+        outputFile.print(members);
+    }
+
+    /** Return the XML written by the given code, instead of writing it. */
+    String render(Runnable writer) {
+        PrintWriter out = outputFile;
+        StringWriter buffer = new StringWriter(4096);
+        outputFile = new PrintWriter(buffer);
+        try {
+            writer.run();
+            outputFile.flush();
+        } finally {
+            outputFile = out;
+        }
+        return buffer.toString();
+    }
+
+    /** 
+     * The src attributes, which differ in every copy of the source files,
+     * and carriage returns, which differ between platforms. These are left
+     * out of fingerprints.
+     */
+    private static final Pattern UNFINGERPRINTED = 
+        Pattern.compile("(?m)^ *src=\"[^\"\n]*\"\r?\n|\r");
+
+    /**
+     * Return the fingerprint of some XML, which is the hash of the XML 
+     * without any src attributes or carriage returns.
+     */
+    static String fingerprint(String xml) {
+        return XMLFragmentCache.hash(UNFINGERPRINTED.matcher(xml).replaceAll(""));
+    }
+
+    /** 
+     * Return the fingerprint in the start tag of the XML for a class, or 
+     * null if there is none.
+     */
+    static String fingerprintOf(String classXML) {
+        int start = classXML.indexOf(" fingerprint=\"");
+        if (start == -1)
+            return null;
+        start += 14;
+        return classXML.substring(start, classXML.indexOf('"', start));
+    }
 
     private PackageElement safeGetPackageOf(TypeElement type) {
         try {
@@ -349,6 +867,79 @@ public class RootDocToXML {
         }
     }
 
+    /** 
+     * Return the named module which contains a package, or null if the 
+     * package is in the unnamed module or its module is not known.
+     */
+    private ModuleElement safeGetModuleOf(PackageElement pkg) {
+        if (pkg == null)
+            return null;
+        try {
+            ModuleElement module = elements.getModuleOf(pkg);
+            if (module == null || module.isUnnamed())
+                return null;
+            return module;
+        } catch (IllegalArgumentException e) {
+            if (trace) {
+                System.out.println("Unable to resolve module for package '" + pkg + "': " + e);
+            }
+            return null;
+        }
+    }
+
+    /** 
+     * Return the names of the packages which a module exports to all 
+     * modules, rather than just to some of them.
+     */
+    private static Set<String> exportedPackages(ModuleElement module) {
+        Set<String> exports = new HashSet<String>();
+        for (ModuleElement.ExportsDirective export : ElementFilter.exportsIn(module.getDirectives())) {
+            if (export.getTargetModules() == null)
+                exports.add(export.getPackage().getQualifiedName().toString());
+        }
+        return exports;
+    }
+
+    /**
+     * Sort the names of packages by the names of their modules, with the
+     * packages in the unnamed module first, and then by their own names.
+     * This is only the order in which the packages are written; the 
+     * modules are still read in one at a time.
+     *
+     * @param moduleNames The name of the module of each package, or null
+     *                    for the unnamed module, by the name of the package.
+     */
+    static void sortByModule(List<String> packageNames, final Map<String, String> moduleNames) {
+        Collections.sort(packageNames, new Comparator<String>() {
+            public int compare(String pkg1, String pkg2) {
+                String module1 = moduleNames.get(pkg1);
+                String module2 = moduleNames.get(pkg2);
+                if (module1 == null || module2 == null) {
+                    if (module1 != null)
+                        return 1;
+                    if (module2 != null)
+                        return -1;
+                } else {
+                    int res = module1.compareTo(module2);
+                    if (res != 0)
+                        return res;
+                }
+                return pkg1.compareTo(pkg2);
+            }
+        });
+    }
+
+    /**
+     * Return true if a package is written, given the module which contains
+     * it, or null for the unnamed module, and whether that module exports 
+     * it to all modules.
+     */
+    static boolean shownInModule(String moduleName, boolean exported) {
+        if (exportedModules == null)
+            return true;
+        return moduleName != null && exported && exportedModules.contains(moduleName);
+    }
+
     private String safeGetDocComment(Element element) {
         if (element == null) {
             return null;
@@ -389,72 +980,115 @@ public class RootDocToXML {
 
 
     /**
-     * Process classes and interfaces.
+     * Read in the classes and interfaces of a package, or the XML for 
+     * them, if it is in the cache.
      */
-    public void processClasses(List<TypeElement> classes, String pkgName) {
+    private void readClasses(PackageData data, List<TypeElement> classes) {
         if (classes == null || classes.isEmpty())
             return;
         classes.sort(Comparator.comparing(type -> type.getSimpleName().toString()));
         for (TypeElement type : classes) {
-            String docComment = safeGetDocComment(type);
-            if (!shownElement(type, docComment, classVisibilityLevel))
+            if (fragmentCache_ == null) {
+                ClassData cls = readClass(type, data.name_);
+                if (cls != null)
+                    data.classes_.add(cls);
                 continue;
-            boolean isInterface = type.getKind().isInterface();
-            if (trace) System.out.println("PROCESSING CLASS/IFC: " + type.getSimpleName());
-            if (isInterface) {
-                outputFile.println("  <!-- start interface " + pkgName + "." + type.getSimpleName() + " -->");
-                outputFile.print("  <interface name=\"" + type.getSimpleName() + "\"");
-            } else {
-                outputFile.println("  <!-- start class " + pkgName + "." + type.getSimpleName() + " -->");
-                outputFile.print("  <class name=\"" + type.getSimpleName() + "\"");
             }
-            TypeMirror parent = type.getSuperclass();
-            if (parent != null && parent.getKind() != TypeKind.NONE) {
-                String parentString = buildEmittableTypeString(parent);
-                if (parentString != null && parentString.length() != 0 &&
-                    !"java.lang.Object".equals(types.erasure(parent).toString())) {
-                    outputFile.println(" extends=\"" + parentString + "\"");
-                }
+            // Reuse the XML for the class if its source file is unchanged
+            String name = type.getQualifiedName().toString();
+            // The annotations of the package, in another source file,
+            // may decide whether the class is written
+            PackageElement pkg = safeGetPackageOf(type);
+            if (AnnotationFilter.isSet() && pkg != null)
+                name += " " + annotationNames(pkg);
+            String key = fragmentCache_.key(sourceFileOf(type), name);
+            String fragment = null;
+            if (key != null)
+                fragment = fragmentCache_.get(key);
+            if (fragment != null) {
+                ClassData cls = new ClassData();
+                cls.fragment_ = fragment;
+                data.classes_.add(cls);
+                continue;
             }
-            outputFile.println("    abstract=\"" + type.getModifiers().contains(Modifier.ABSTRACT) + "\"");
-            addCommonModifiers(type, docComment, 4);
-            outputFile.println(">");
-
-            processInterfaces(type.getInterfaces());
-            processConstructors(type);
-            processMethods(type);
-            processFields(type);
-
-            addDocumentation(type, docComment, 4);
+            ClassData cls = readClass(type, data.name_);
+            if (cls == null) {
+                if (key != null)
+                    fragmentCache_.put(key, "");
+                continue;
+            }
+            cls.cacheKey_ = key;
+            data.classes_.add(cls);
+        }
+    }//readClasses()
 
-            if (isInterface) {
-                outputFile.println("  </interface>");
-                outputFile.println("  <!-- end interface " + pkgName + "." + type.getSimpleName() + " -->");
-            } else {
-                outputFile.println("  </class>");
-                outputFile.println("  <!-- end class " + pkgName + "." + type.getSimpleName() + " -->");
+    /**
+     * Read in one class or interface, or return null if it is not shown.
+     */
+    private ClassData readClass(TypeElement type, String pkgName) {
+        String docComment = safeGetDocComment(type);
+        if (!shownElement(type, docComment, classVisibilityLevel))
+            return null;
+        if (trace) System.out.println("PROCESSING CLASS/IFC: " + type.getSimpleName());
+        ClassData cls = new ClassData();
+        readCommon(cls, type, docComment);
+        cls.name_ = pkgName + "." + type.getSimpleName();
+        cls.simpleName_ = type.getSimpleName().toString();
+        cls.isInterface_ = type.getKind().isInterface();
+        TypeMirror parent = type.getSuperclass();
+        if (parent != null && parent.getKind() != TypeKind.NONE) {
+            String parentString = buildEmittableTypeString(parent);
+            if (parentString != null && parentString.length() != 0 &&
+                !"java.lang.Object".equals(types.erasure(parent).toString())) {
+                cls.extends_ = parentString;
             }
         }
-    }//processClasses()
+        cls.isAbstract_ = type.getModifiers().contains(Modifier.ABSTRACT);
+        readInterfaces(cls, type.getInterfaces());
+        readConstructors(cls, type);
+        readMethods(cls, type);
+        readFields(cls, type);
+        return cls;
+    }//readClass()
 
     /**
-     * Process the interfaces implemented by the class.
+     * Read in what every class, interface and member has: where it is in 
+     * the source, its modifiers and its documentation.
      */
-    public void processInterfaces(List<? extends TypeMirror> ifaces) {
+    private void readCommon(ElementData data, Element element, String docComment) {
+        data.src_ = sourcePosition(element);
+        Set<Modifier> modifiers = element.getModifiers();
+        data.isStatic_ = modifiers.contains(Modifier.STATIC);
+        data.isFinal_ = modifiers.contains(Modifier.FINAL);
+        if (modifiers.contains(Modifier.PUBLIC))
+            data.visibility_ = "public";
+        else if (modifiers.contains(Modifier.PROTECTED))
+            data.visibility_ = "protected";
+        else if (modifiers.contains(Modifier.PRIVATE))
+            data.visibility_ = "private";
+        else
+            data.visibility_ = "package";
+        data.doc_ = docComment;
+    }
+
+    /**
+     * Read in the interfaces implemented by the class.
+     */
+    private void readInterfaces(ClassData cls, List<? extends TypeMirror> ifaces) {
         if (ifaces == null)
             return;
         if (trace) System.out.println("PROCESSING INTERFACES, number=" + ifaces.size());
         for (TypeMirror iface : ifaces) {
             String ifaceName = buildEmittableTypeString(iface);
             if (trace) System.out.println("PROCESSING INTERFACE: " + ifaceName);
-            outputFile.println("    <implements name=\"" + ifaceName + "\"/>");
+            cls.interfaces_.add(ifaceName);
         }//for
-    }//processInterfaces()
+    }//readInterfaces()
 
     /**
-     * Process the constructors in the class.
+     * Read in the constructors in the class.
      */
-    public void processConstructors(TypeElement type) {
+    private void readConstructors(ClassData cls, TypeElement type) {
         List<ExecutableElement> ctors = new ArrayList<ExecutableElement>();
         for (Element enclosed : type.getEnclosedElements()) {
             if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
@@ -470,35 +1104,32 @@ public class RootDocToXML {
             if (ctorName.isEmpty()) {
                 ctorName = type.toString();
             }
-            ctorName = ctorName.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            ctorName = escapeXML(ctorName);
             if (trace) System.out.println("PROCESSING CONSTRUCTOR: " + ctorName);
             String docComment = safeGetDocComment(ctor);
             if (!shownElement(ctor, docComment, memberVisibilityLevel))
                 continue;
-            outputFile.print("    <constructor name=\"" + ctorName + "\"");
-
-            List<? extends VariableElement> params = ctor.getParameters();
-            if (!params.isEmpty()) {
-                outputFile.print(" type=\"");
-                for (int j = 0; j < params.size(); j++) {
-                    if (j != 0)
-                        outputFile.print(", ");
-                    outputFile.print(parameterTypeToString(ctor, params.get(j), j == params.size() - 1));
-                }
-                outputFile.println("\"");
-            } else {
-                outputFile.println();
-            }
-            addCommonModifiers(ctor, docComment, 6);
-            outputFile.println(">");
-
-            processExceptions(ctor.getThrownTypes());
-
-            addDocumentation(ctor, docComment, 6);
-
-            outputFile.println("    </constructor>");
+            MemberData member = new MemberData();
+            readCommon(member, ctor, docComment);
+            member.name_ = ctorName;
+            readParameters(member, ctor);
+            readExceptions(member, ctor.getThrownTypes());
+            cls.ctors_.add(member);
         }//for
-    }//processConstructors()
+    }//readConstructors()
+
+    /**
+     * Read in the names and types of the parameters of a constructor or 
+     * method.
+     */
+    private void readParameters(MemberData member, ExecutableElement method) {
+        List<? extends VariableElement> params = method.getParameters();
+        for (int j = 0; j < params.size(); j++) {
+            VariableElement param = params.get(j);
+            member.paramNames_.add(param.getSimpleName().toString());
+            member.paramTypes_.add(parameterTypeToString(method, param, j == params.size() - 1));
+        }
+    }
 
     private String parameterTypeToString(ExecutableElement method, VariableElement param, boolean lastParam) {
         TypeMirror type = param.asType();
@@ -510,24 +1141,24 @@ public class RootDocToXML {
     }
 
     /**
-     * Process all exceptions thrown by a constructor or method.
+     * Read in all exceptions thrown by a constructor or method.
      */
-    public void processExceptions(List<? extends TypeMirror> thrown) {
+    private void readExceptions(MemberData member, List<? extends TypeMirror> thrown) {
         if (thrown == null)
             return;
         if (trace) System.out.println("PROCESSING EXCEPTIONS, number=" + thrown.size());
         for (TypeMirror type : thrown) {
             String exceptionName = simpleTypeName(type);
             if (trace) System.out.println("PROCESSING EXCEPTION: " + exceptionName);
-            outputFile.print("      <exception name=\"" + exceptionName + "\" type=\"");
-            emitType(type);
-            outputFile.println("\"/>");
+            member.exceptionNames_.add(exceptionName);
+            member.exceptionTypes_.add(buildEmittableTypeString(type));
         }//for
-    }//processExceptions()
+    }//readExceptions()
+
     /**
-     * Process the methods in the class.
+     * Read in the methods in the class.
      */
-    public void processMethods(TypeElement type) {
+    private void readMethods(ClassData cls, TypeElement type) {
         List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
         for (Element enclosed : type.getEnclosedElements()) {
             if (enclosed.getKind() == ElementKind.METHOD) {
@@ -541,113 +1172,263 @@ public class RootDocToXML {
             String docComment = safeGetDocComment(method);
             if (!shownElement(method, docComment, memberVisibilityLevel))
                 continue;
-            outputFile.print("    <method name=\"" + methodName + "\"");
+            MemberData member = new MemberData();
+            readCommon(member, method, docComment);
+            member.name_ = methodName;
             TypeMirror retType = method.getReturnType();
-            if (retType.getKind() == TypeKind.VOID) {
+            member.isVoid_ = retType.getKind() == TypeKind.VOID;
+            if (!member.isVoid_)
+                member.type_ = buildEmittableTypeString(retType);
+            Set<Modifier> modifiers = method.getModifiers();
+            member.isAbstract_ = modifiers.contains(Modifier.ABSTRACT);
+            member.isNative_ = modifiers.contains(Modifier.NATIVE);
+            member.isSynchronized_ = modifiers.contains(Modifier.SYNCHRONIZED);
+            readParameters(member, method);
+            readExceptions(member, method.getThrownTypes());
+            cls.methods_.add(member);
+        }//for
+    }//readMethods()
+
+    /**
+     * Read in the fields in the class.
+     */
+    private void readFields(ClassData cls, TypeElement type) {
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        for (Element enclosed : type.getEnclosedElements()) {
+            if (enclosed.getKind() == ElementKind.FIELD) {
+                fields.add((VariableElement) enclosed);
+            }
+        }
+        if (trace) System.out.println("PROCESSING FIELDS, number=" + fields.size());
+        for (VariableElement field : fields) {
+            String fieldName = field.getSimpleName().toString();
+            if (trace) System.out.println("PROCESSING FIELD: " + fieldName);
+            String docComment = safeGetDocComment(field);
+            if (!shownElement(field, docComment, memberVisibilityLevel))
+                continue;
+            MemberData member = new MemberData();
+            readCommon(member, field, docComment);
+            member.name_ = fieldName;
+            member.type_ = buildEmittableTypeString(field.asType());
+            member.isTransient_ = field.getModifiers().contains(Modifier.TRANSIENT);
+            member.isVolatile_ = field.getModifiers().contains(Modifier.VOLATILE);
+            cls.fields_.add(member);
+        }//for
+    }//readFields()
+
+    /**
+     * Write the classes and interfaces of a package which has been read in.
+     */
+    private void writeClasses(PackageData data) {
+        for (ClassData cls : data.classes_) {
+            if (cls.fragment_ != null) {
+                String fingerprint = fingerprintOf(cls.fragment_);
+                if (classFingerprints_ != null && fingerprint != null)
+                    classFingerprints_.add(fingerprint);
+                outputFile.print(cls.fragment_);
+                continue;
+            }
+            if (cls.cacheKey_ == null) {
+                writeClass(cls);
+                continue;
+            }
+            String fragment = render(() -> writeClass(cls));
+            fragmentCache_.put(cls.cacheKey_, fragment);
+            outputFile.print(fragment);
+        }
+    }//writeClasses()
+
+    /**
+     * Write one class or interface.
+     */
+    private void writeClass(ClassData cls) {
+        String startTag = null;
+        if (cls.isInterface_) {
+            outputFile.println("  <!-- start interface " + cls.name_ + " -->");
+            startTag = "  <interface name=\"" + cls.simpleName_ + "\"";
+        } else {
+            outputFile.println("  <!-- start class " + cls.name_ + " -->");
+            startTag = "  <class name=\"" + cls.simpleName_ + "\"";
+        }
+        String attributes = render(() -> {
+            if (cls.extends_ != null)
+                outputFile.println(" extends=\"" + cls.extends_ + "\"");
+            outputFile.println("    abstract=\"" + cls.isAbstract_ + "\"");
+            addCommonModifiers(cls, 4);
+        });
+        String members = render(() -> {
+            for (String ifaceName : cls.interfaces_)
+                outputFile.println("    <implements name=\"" + ifaceName + "\"/>");
+            writeConstructors(cls);
+            writeMethods(cls);
+            writeFields(cls);
+            addDocumentation(cls.doc_, 4);
+        });
+        writeFingerprintedClass(startTag, attributes, members);
+
+        if (cls.isInterface_) {
+            outputFile.println("  </interface>");
+            outputFile.println("  <!-- end interface " + cls.name_ + " -->");
+        } else {
+            outputFile.println("  </class>");
+            outputFile.println("  <!-- end class " + cls.name_ + " -->");
+        }
+    }//writeClass()
+
+    /**
+     * Write the constructors in the class.
+     */
+    private void writeConstructors(ClassData cls) {
+        for (MemberData ctor : cls.ctors_) {
+            outputFile.print("    <constructor name=\"" + ctor.name_ + "\"");
+            if (!ctor.paramTypes_.isEmpty()) {
+                outputFile.print(" type=\"");
+                for (int j = 0; j < ctor.paramTypes_.size(); j++) {
+                    if (j != 0)
+                        outputFile.print(", ");
+                    outputFile.print(ctor.paramTypes_.get(j));
+                }
+                outputFile.println("\"");
+            } else {
+                outputFile.println();
+            }
+            addCommonModifiers(ctor, 6);
+            outputFile.println(">");
+
+            writeExceptions(ctor);
+
+            addDocumentation(ctor.doc_, 6);
+
+            outputFile.println("    </constructor>");
+        }//for
+    }//writeConstructors()
+
+    /**
+     * Write all exceptions thrown by a constructor or method.
+     */
+    private void writeExceptions(MemberData member) {
+        for (int j = 0; j < member.exceptionNames_.size(); j++) {
+            outputFile.print("      <exception name=\"" + member.exceptionNames_.get(j) + "\" type=\"");
+            String type = member.exceptionTypes_.get(j);
+            if (type != null)
+                outputFile.print(type);
+            outputFile.println("\"/>");
+        }//for
+    }//writeExceptions()
+
+    /**
+     * Write the methods in the class.
+     */
+    private void writeMethods(ClassData cls) {
+        for (MemberData method : cls.methods_) {
+            outputFile.print("    <method name=\"" + method.name_ + "\"");
+            if (method.isVoid_) {
                 outputFile.println();
             } else {
                 outputFile.print(" return=\"");
-                emitType(retType);
+                if (method.type_ != null)
+                    outputFile.print(method.type_);
                 outputFile.println("\"");
             }
-            outputFile.print("      abstract=\"" + method.getModifiers().contains(Modifier.ABSTRACT) + "\"");
-            outputFile.print(" native=\"" + method.getModifiers().contains(Modifier.NATIVE) + "\"");
-            outputFile.println(" synchronized=\"" + method.getModifiers().contains(Modifier.SYNCHRONIZED) + "\"");
-            addCommonModifiers(method, docComment, 6);
+            outputFile.print("      abstract=\"" + method.isAbstract_ + "\"");
+            outputFile.print(" native=\"" + method.isNative_ + "\"");
+            outputFile.println(" synchronized=\"" + method.isSynchronized_ + "\"");
+            addCommonModifiers(method, 6);
             outputFile.println(">");
 
-            List<? extends VariableElement> params = method.getParameters();
-            for (int j = 0; j < params.size(); j++) {
-                VariableElement param = params.get(j);
-                outputFile.print("      <param name=\"" + param.getSimpleName() + "\"");
+            for (int j = 0; j < method.paramNames_.size(); j++) {
+                outputFile.print("      <param name=\"" + method.paramNames_.get(j) + "\"");
                 outputFile.print(" type=\"");
-                outputFile.print(parameterTypeToString(method, param, j == params.size() - 1));
+                outputFile.print(method.paramTypes_.get(j));
                 outputFile.println("\"/>");
             }
 
-            processExceptions(method.getThrownTypes());
+            writeExceptions(method);
 
-            addDocumentation(method, docComment, 6);
+            addDocumentation(method.doc_, 6);
 
             outputFile.println("    </method>");
         }//for
-    }//processMethods()
+    }//writeMethods()
 
     /**
-     * Process the fields in the class.
+     * Write the fields in the class.
      */
-    public void processFields(TypeElement type) {
-        List<VariableElement> fields = new ArrayList<VariableElement>();
-        for (Element enclosed : type.getEnclosedElements()) {
-            if (enclosed.getKind() == ElementKind.FIELD) {
-                fields.add((VariableElement) enclosed);
-            }
-        }
-        if (trace) System.out.println("PROCESSING FIELDS, number=" + fields.size());
-        for (VariableElement field : fields) {
-            String fieldName = field.getSimpleName().toString();
-            if (trace) System.out.println("PROCESSING FIELD: " + fieldName);
-            String docComment = safeGetDocComment(field);
-            if (!shownElement(field, docComment, memberVisibilityLevel))
-                continue;
-            outputFile.print("    <field name=\"" + fieldName + "\"");
+    private void writeFields(ClassData cls) {
+        for (MemberData field : cls.fields_) {
+            outputFile.print("    <field name=\"" + field.name_ + "\"");
             outputFile.print(" type=\"");
-            emitType(field.asType());
+            if (field.type_ != null)
+                outputFile.print(field.type_);
             outputFile.println("\"");
-            outputFile.print("      transient=\"" + field.getModifiers().contains(Modifier.TRANSIENT) + "\"");
-            outputFile.println(" volatile=\"" + field.getModifiers().contains(Modifier.VOLATILE) + "\"");
-            addCommonModifiers(field, docComment, 6);
+            outputFile.print("      transient=\"" + field.isTransient_ + "\"");
+            outputFile.println(" volatile=\"" + field.isVolatile_ + "\"");
+            addCommonModifiers(field, 6);
             outputFile.println(">");
 
-            addDocumentation(field, docComment, 6);
+            addDocumentation(field.doc_, 6);
 
             outputFile.println("    </field>");
 
         }//for
-    }//processFields()
-
-    /**
-     * Emit the type name. Removed any prefixed warnings about ambiguity.
-     * The type maybe an array.
-     */
-    public void emitType(TypeMirror type) {
-        String name = buildEmittableTypeString(type);
-        if (name == null)
-            return;
-        outputFile.print(name);
-    }
+    }//writeFields()
 
     /**
      * Build the emittable type name. The type may be an array and/or
-     * a generic type.
+     * a generic type. The name is reused if the type has been seen before 
+     * in this run.
      */
     private String buildEmittableTypeString(TypeMirror type) {
-        if (type == null) {
-            return null;
-        }
-        String name = type.toString()
-            .replace("&", "&amp;")
-            .replace("<", "&lt;")
-            .replace(">", "&gt;");
-        if (name.startsWith("<<ambiguous>>")) {
-            name = name.substring(13);
-        }
-        return name;
+        return typeStrings_.get(type);
     }
 
     private String simpleTypeName(TypeMirror type) {
+        String name = null;
         Element element = types.asElement(type);
         if (element != null) {
-            return element.getSimpleName().toString();
-        }
-        String name = type.toString();
-        int idx = name.lastIndexOf('.') + 1;
-        if (idx > 0 && idx < name.length()) {
-            return name.substring(idx);
+            name = element.getSimpleName().toString();
+        } else {
+            name = type.toString();
+            int idx = name.lastIndexOf('.') + 1;
+            if (idx > 0 && idx < name.length()) {
+                name = name.substring(idx);
+            }
         }
         return name;
     }
 
+    /**
+     * Escape the characters '&amp;', '&lt;' and '&gt;' for use in XML. 
+     * The string itself is returned, without any copying, if it contains 
+     * none of them, which is the case for most names.
+     */
+    static String escapeXML(String s) {
+        int len = s.length();
+        int i = 0;
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c == '&' || c == '<' || c == '>')
+                break;
+            i++;
+        }
+        if (i == len)
+            return s;
+        StringBuilder sb = new StringBuilder(len + 16);
+        sb.append(s, 0, i);
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '&')
+                sb.append("&amp;");
+            else if (c == '<')
+                sb.append("&lt;");
+            else if (c == '>')
+                sb.append("&gt;");
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
     /**
      * Emit the XML header.
      */
@@ -683,6 +1464,11 @@ public class RootDocToXML {
                 return false;
             }
         }
+        if (element != null && !(element instanceof PackageElement) &&
+            AnnotationFilter.isSet() && 
+            !AnnotationFilter.shown(annotationRule(element))) {
+            return false;
+        }
         if (visLevel == null) {
             return true;
         }
@@ -702,56 +1488,75 @@ public class RootDocToXML {
     } //shownElement()
 
     /**
-     * Insert the source code details, if available.
+     * Return the rule given by the annotations on a program element, or 
+     * else by those on its nearest enclosing class or package with any of
+     * the annotations in the rules.
+     */
+    private int annotationRule(Element element) {
+        for (Element e = element; e != null && e.getKind() != ElementKind.MODULE;
+             e = e.getEnclosingElement()) {
+            int rule = AnnotationFilter.rule(annotationNames(e));
+            if (rule != AnnotationFilter.NONE)
+                return rule;
+        }
+        return AnnotationFilter.NONE;
+    }
+
+    /** Return the qualified names of the annotations on a program element. */
+    private static List<String> annotationNames(Element element) {
+        List<String> names = new ArrayList<String>();
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Element type = annotation.getAnnotationType().asElement();
+            if (type instanceof TypeElement)
+                names.add(((TypeElement)type).getQualifiedName().toString());
+        }
+        return names;
+    }
+
+    /**
+     * Return the source code details, if available, as "file:line", or
+     * null.
      */
-    public void addSourcePosition(Element element, int indent) {
+    private String sourcePosition(Element element) {
         if (!addSrcInfo)
-            return;
+            return null;
         if (docTrees == null)
-            return;
+            return null;
         TreePath path = docTrees.getPath(element);
         if (path == null)
-            return;
+            return null;
         CompilationUnitTree cu = path.getCompilationUnit();
         if (cu == null)
-            return;
+            return null;
         JavaFileObject fileObject = cu.getSourceFile();
         if (fileObject == null)
-            return;
+            return null;
         SourcePositions positions = docTrees.getSourcePositions();
         long pos = positions.getStartPosition(cu, path.getLeaf());
         if (pos == Diagnostic.NOPOS)
-            return;
+            return null;
         LineMap lineMap = cu.getLineMap();
         if (lineMap == null)
-            return;
+            return null;
         long line = lineMap.getLineNumber(pos);
-        for (int i = 0; i < indent; i++) outputFile.print(" ");
-        outputFile.println("src=\"" + fileObject.getName() + ":" + line + "\"");
+        return fileObject.getName() + ":" + line;
     }
 
     /**
      * Add qualifiers for the program element as attributes.
      */
-    public void addCommonModifiers(Element element, String docComment, int indent) {
-        addSourcePosition(element, indent);
+    private void addCommonModifiers(ElementData data, int indent) {
+        if (data.src_ != null) {
+            for (int i = 0; i < indent; i++) outputFile.print(" ");
+            outputFile.println("src=\"" + data.src_ + "\"");
+        }
         for (int i = 0; i < indent; i++) outputFile.print(" ");
-        Set<Modifier> modifiers = element.getModifiers();
-        outputFile.print("static=\"" + modifiers.contains(Modifier.STATIC) + "\"");
-        outputFile.print(" final=\"" + modifiers.contains(Modifier.FINAL) + "\"");
-        String visibility = null;
-        if (modifiers.contains(Modifier.PUBLIC))
-            visibility = "public";
-        else if (modifiers.contains(Modifier.PROTECTED))
-            visibility = "protected";
-        else if (modifiers.contains(Modifier.PRIVATE))
-            visibility = "private";
-        else
-            visibility = "package";
-        outputFile.println(" visibility=\"" + visibility + "\"");
+        outputFile.print("static=\"" + data.isStatic_ + "\"");
+        outputFile.print(" final=\"" + data.isFinal_ + "\"");
+        outputFile.println(" visibility=\"" + data.visibility_ + "\"");
 
         for (int i = 0; i < indent; i++) outputFile.print(" ");
-        String deprecatedText = extractDeprecated(docComment);
+        String deprecatedText = extractDeprecated(data.doc_);
         if (deprecatedText != null) {
             if (deprecatedText.length() == 0) {
                 outputFile.print("deprecated=\"deprecated, no comment\"");
@@ -797,10 +1602,10 @@ public class RootDocToXML {
     /**
      * Add at least the first sentence from a doc block to the API.
      */
-    public void addDocumentation(Element element, String docComment, int indent) {
+    public void addDocumentation(String docComment, int indent) {
         String rct = docComment;
         if (rct != null) {
-            rct = stripNonPrintingChars(rct, element);
+            rct = stripNonPrintingChars(rct);
             rct = rct.trim();
             if (rct.compareTo("") != 0 &&
                 rct.indexOf(Comments.placeHolderText) == -1 &&
@@ -808,6 +1613,10 @@ public class RootDocToXML {
                 int idx = endOfFirstSentence(rct);
                 if (idx == 0)
                     return;
+                if (docDigests) {
+                    addDocDigest(rct, idx, indent);
+                    return;
+                }
                 for (int i = 0; i < indent; i++) outputFile.print(" ");
                 outputFile.println("<doc>");
                 for (int i = 0; i < indent; i++) outputFile.print(" ");
@@ -833,13 +1642,10 @@ public class RootDocToXML {
     /**
      * Add at least the first sentence from a doc block for a package to the API.
      */
-    public void addPkgDocumentation(PackageElement pkg, String pkgComment, int indent) {
+    public void addPkgDocumentation(String pkgComment, int indent) {
         String rct = pkgComment;
-        if (rct == null) {
-            rct = readPackageFile(pkg);
-        }
         if (rct != null) {
-            rct = stripNonPrintingChars(rct, pkg);
+            rct = stripNonPrintingChars(rct);
             rct = rct.trim();
             if (rct.compareTo("") != 0 &&
                 rct.indexOf(Comments.placeHolderText) == -1 &&
@@ -847,6 +1653,10 @@ public class RootDocToXML {
                 int idx = endOfFirstSentence(rct);
                 if (idx == 0)
                     return;
+                if (docDigests) {
+                    addDocDigest(rct, idx, indent);
+                    return;
+                }
                 for (int i = 0; i < indent; i++) outputFile.print(" ");
                 outputFile.println("<doc>");
                 for (int i = 0; i < indent; i++) outputFile.print(" ");
@@ -863,6 +1673,22 @@ public class RootDocToXML {
         }
     }
 
+    /**
+     * Add the digest of the first sentence, or all, of a doc block, 
+     * instead of its text.
+     *
+     * @param rct The trimmed text of the doc block.
+     * @param idx The index of the end of the first sentence, or -1.
+     */
+    private void addDocDigest(String rct, int idx, int indent) {
+        String text = (idx == -1) ? rct : rct.substring(0, idx+1);
+        // The digest is of the text which would be read back in
+        if (API.stuffHTMLTags(text).length() == 0)
+            text = "";
+        for (int i = 0; i < indent; i++) outputFile.print(" ");
+        outputFile.println("<doc digest=\"" + LazyDoc.digest(text) + "\"/>");
+    }
+
     private String readPackageFile(PackageElement pkg) {
         if (pkg == null || Options.sourcePath == null)
             return null;
@@ -934,7 +1760,7 @@ public class RootDocToXML {
      * which will not change where the end of the first sentence is found.
      * This character is the hash mark, '&#035;'.
      */
-    public String stripNonPrintingChars(String s, Element element) {
+    public String stripNonPrintingChars(String s) {
         if (!stripNonPrintables)
             return s;
         char[] sa = s.toCharArray();
@@ -1147,6 +1973,61 @@ public class RootDocToXML {
      */
     static boolean packagesOnly = false;
 
+    /**
+     * If set, then compress the XML file with gzip, and add ".gz" to its
+     * name. Default is that this is not set.
+     */
+    static boolean compressXML = false;
+
+    /**
+     * If set, then write each package to a separate XML file, in a 
+     * directory with the name of the XML file without its ".xml" suffix,
+     * together with a manifest of the files. Default is that this is not 
+     * set.
+     */
+    static boolean shardXML = false;
+
+    /**
+     * The name of the file in which the XML for each class is cached 
+     * between runs, so that it is only generated again for the classes 
+     * whose source files have changed, or null if there is no cache.
+     * Default is null.
+     */
+    static String xmlCacheFile = null;
+
+    /**
+     * The jar files and directories of class files from which the API is 
+     * read, instead of from the source files given to Javadoc, separated 
+     * by the path separator, or null if the API is read from the source 
+     * files. Default is null.
+     */
+    static String apiClassPath = null;
+
+    /**
+     * If set, then write just a digest of each doc block, a hash of its 
+     * text, instead of the text. The XML can then only be used to find 
+     * whether the documentation has changed, not to show it. Default is 
+     * that this is not set.
+     */
+    static boolean docDigests = false;
+
+    /**
+     * The names of the modules whose exported packages are written, or 
+     * null to write the packages of all modules, whether they are exported
+     * or not. Only the packages which a module exports to all modules are 
+     * written, and no packages which are not in a named module. Default 
+     * is null.
+     */
+    static Set<String> exportedModules = null;
+
+    /**
+     * The number of threads on which the XML for the packages is rendered.
+     * The source is still read in on one thread, and the XML for each 
+     * package is written out in the usual order, so the XML is the same 
+     * whatever the number of threads. Default is 1.
+     */
+    static int xmlThreads = 1;
+
     /** Set to enable increased logging verbosity for debugging. */
     private static boolean trace = false;
 
@@ -0,0 +1,55 @@
+package jdiff;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of the names, types and other short strings found when reading
+ * in APIs, so that equal strings share one instance. The same type names
+ * occur thousands of times in a large API, in parameters, return types,
+ * exceptions and inherited members, so sharing them greatly reduces the
+ * memory used by the API objects.
+ *
+ * One table is shared by the old and new APIs while they are read in,
+ * so the same name in both APIs is the same instance, and can be compared
+ * by identity before comparing the characters. The table is safe to use
+ * from the threads which read in the two APIs at the same time.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class SymbolTable {
+
+    /** The canonical instance of each string added. */
+    private ConcurrentHashMap symbols_ = new ConcurrentHashMap(); // String -> String
+
+    /** Default constructor. */
+    public SymbolTable() {
+    }
+
+    /**
+     * Return the canonical instance of the string, adding it to the table
+     * if it is not there already. Null is returned as null.
+     */
+    public String symbol(String s) {
+        if (s == null)
+            return null;
+        String canonical = (String)(symbols_.putIfAbsent(s, s));
+        if (canonical == null)
+            return s;
+        return canonical;
+    }
+
+    /** Return the number of different strings in the table. */
+    public int size() {
+        return symbols_.size();
+    }
+
+    /**
+     * Compare two strings, which are usually canonical symbols, by identity
+     * first and only then by their characters.
+     */
+    public static int compare(String s1, String s2) {
+        if (s1 == s2)
+            return 0;
+        return s1.compareTo(s2);
+    }
+}
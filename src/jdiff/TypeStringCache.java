@@ -0,0 +1,89 @@
+package jdiff;
+
+import java.util.HashMap;
+
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * The strings for the types written to the XML for an API, escaped for
+ * use in XML. The same types occur thousands of times in a large API, in
+ * parameters, return types, fields and exceptions, so each string is
+ * built and escaped once per run, and then reused.
+ *
+ * The compiler's types do not compare equal to each other, even for the
+ * same type, so the strings are kept by something which does. A class or
+ * interface with no type arguments, annotations or enclosing type is
+ * kept by its qualified name, so its string is not even built again.
+ * Any other type is kept by the string the compiler gives for it, so only
+ * the escaping is saved.
+ *
+ * The cache is not safe to use from several threads, like the compiler's
+ * model which it is used with.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class TypeStringCache {
+
+    /** The strings for the plain classes and interfaces. */
+    private HashMap declared_ = new HashMap(); // Name -> String
+
+    /** The strings for all other types. */
+    private HashMap others_ = new HashMap(); // String -> String
+
+    /** Default constructor. */
+    public TypeStringCache() {
+    }
+
+    /**
+     * Return the string for a type, escaped for use in XML, or null if
+     * the type is null.
+     */
+    public String get(TypeMirror type) {
+        if (type == null)
+            return null;
+        if (type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declared = (DeclaredType)type;
+            if (declared.getTypeArguments().isEmpty() &&
+                declared.getAnnotationMirrors().isEmpty() &&
+                declared.getEnclosingType().getKind() == TypeKind.NONE) {
+                Name name = ((TypeElement)declared.asElement()).getQualifiedName();
+                String s = (String)declared_.get(name);
+                if (s == null) {
+                    s = toXML(type);
+                    declared_.put(name, s);
+                }
+                return s;
+            }
+        }
+        String key = type.toString();
+        String s = (String)others_.get(key);
+        if (s == null) {
+            s = toXML(key);
+            others_.put(key, s);
+        }
+        return s;
+    }
+
+    /**
+     * Return the string for a type, escaped for use in XML, without
+     * keeping it. Any prefixed warning about ambiguity is removed.
+     */
+    public static String toXML(TypeMirror type) {
+        if (type == null)
+            return null;
+        return toXML(type.toString());
+    }
+
+    /** Return the string the compiler gives for a type, ready for XML. */
+    private static String toXML(String typeString) {
+        String name = RootDocToXML.escapeXML(typeString);
+        if (name.startsWith("<<ambiguous>>")) {
+            name = name.substring(13);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,220 @@
+package jdiff;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * A cache on disk of the XML written for each class or interface, so that
+ * when the XML for an API is generated again, the XML for each class whose
+ * source file has not changed is copied from the cache instead of being
+ * generated from the compiler's model of the class.
+ *
+ * Each fragment of XML is stored under the hash of the content of its
+ * source file and the qualified name of the class. The whole cache is
+ * also marked with a fingerprint of everything else which affects the
+ * XML: the JDiff version, the options and the names of all the classes
+ * in the API, so that the names of types used in one source file, which
+ * are resolved using the other source files, are still correct. A cache
+ * with a different fingerprint is discarded. Types from outside the API,
+ * on the classpath, are not part of the fingerprint, so the cache file
+ * should be deleted if they change.
+ *
+ * Only the fragments used in a run are written back to the file, so the
+ * fragments for deleted or changed source files do not accumulate.
+ * Fragments may be stored from several threads at once, when the XML for
+ * the packages is rendered on several threads.
+ *
+ * The format of the file is:
+ * <pre>
+ *   magic number, version, fingerprint
+ *   count, then each key and fragment
+ * </pre>
+ * All strings are stored as a length and UTF-8 bytes.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+class XMLFragmentCache {
+
+    /** The first four bytes of every cache file, "JDFX". */
+    private static final int MAGIC = 0x4A444658;
+
+    /** The version of the cache file format. */
+    private static final int VERSION = 2;
+
+    /** The name of the cache file. */
+    private String filename_ = null;
+
+    /** The fingerprint of everything else which affects the XML. */
+    private String fingerprint_ = null;
+
+    /** The fragments read from the cache file. */
+    private Map cached_ = new HashMap(); // String (key) -> String
+
+    /** The fragments used in this run, which are written back to the file. */
+    private Map used_ = new ConcurrentHashMap(); // String (key) -> String
+
+    /** The hash of each source file, by its URI. */
+    private Map unitHashes_ = new ConcurrentHashMap(); // URI -> String
+
+    /** The number of fragments which were found in the cache. */
+    private AtomicInteger hits_ = new AtomicInteger();
+
+    /** The number of fragments which had to be generated. */
+    private AtomicInteger misses_ = new AtomicInteger();
+
+    /**
+     * Open the cache file, reading in its fragments if it exists and has
+     * the same fingerprint.
+     *
+     * @param filename The name of the cache file.
+     * @param fingerprint The fingerprint of everything else which affects
+     *                    the XML.
+     */
+    public XMLFragmentCache(String filename, String fingerprint) {
+        filename_ = filename;
+        fingerprint_ = fingerprint;
+        if (!new File(filename).exists())
+            return;
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename), FileStreams.BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    System.out.println("Warning: file '" + filename + "' is not an XML cache in the current format, so it will be replaced");
+                    return;
+                }
+                if (!fingerprint.equals(readString(in))) {
+                    System.out.println("JDiff: the options or classes have changed since the XML cache '" + filename + "' was written, so it will be replaced");
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = readString(in);
+                    cached_.put(key, readString(in));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Warning: unable to read the XML cache '" + filename + "', so it will be replaced: " + e);
+            cached_.clear();
+        }
+    }
+
+    /**
+     * Return the key for the fragment for a class, or null if the source
+     * file of the class cannot be read.
+     *
+     * @param sourceFile The source file of the class, or null if unknown.
+     * @param qualifiedName The qualified name of the class.
+     */
+    public String key(JavaFileObject sourceFile, String qualifiedName) {
+        if (sourceFile == null)
+            return null;
+        String unitHash = (String)unitHashes_.get(sourceFile.toUri());
+        if (unitHash == null) {
+            try {
+                // The name is included, since it appears in src attributes
+                unitHash = hash(sourceFile.toUri() + "\n" + sourceFile.getCharContent(true));
+            } catch (IOException e) {
+                return null;
+            }
+            unitHashes_.put(sourceFile.toUri(), unitHash);
+        }
+        return unitHash + " " + qualifiedName;
+    }
+
+    /**
+     * Return the fragment stored under the key, or null if there is none.
+     */
+    public String get(String key) {
+        String fragment = (String)cached_.get(key);
+        if (fragment != null) {
+            used_.put(key, fragment);
+            hits_.incrementAndGet();
+        }
+        return fragment;
+    }
+
+    /** Store a newly generated fragment under the key. */
+    public void put(String key, String fragment) {
+        used_.put(key, fragment);
+        misses_.incrementAndGet();
+    }
+
+    /**
+     * Write the fragments used in this run to the cache file, and report
+     * how many were found in the cache.
+     */
+    public void save() {
+        System.out.println("JDiff: used the XML cache '" + filename_ + "' for " + hits_.get() + " of " + (hits_.get() + misses_.get()) + " classes");
+        // Write to a temporary file first so that a partly written cache
+        // is never read.
+        File file = new File(filename_);
+        File tmpFile = new File(filename_ + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile), FileStreams.BUFFER_SIZE));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, fingerprint_);
+                List keys = new ArrayList(used_.keySet());
+                Collections.sort(keys);
+                out.writeInt(keys.size());
+                Iterator iter = keys.iterator();
+                while (iter.hasNext()) {
+                    String key = (String)(iter.next());
+                    writeString(out, key);
+                    writeString(out, (String)used_.get(key));
+                }
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!tmpFile.renameTo(file))
+                throw new IOException("Unable to rename '" + tmpFile + "' to '" + file + "'");
+        } catch (IOException e) {
+            System.out.println("Warning: unable to write the XML cache '" + filename_ + "' : " + e);
+        }
+    }
+
+    /** Return the hexadecimal SHA-256 hash of the text. */
+    public static String hash(String text) {
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] b = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(2 * b.length);
+        for (int i = 0; i < b.length; i++) {
+            hex.append(Character.forDigit((b[i] >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /** Read a string stored as a length and UTF-8 bytes. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Write a string as a length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+}
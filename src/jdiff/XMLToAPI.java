@@ -2,6 +2,10 @@ package jdiff;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /* For SAX parsing in APIHandler */
 import org.xml.sax.Attributes;
@@ -15,10 +19,16 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+/* For StAX parsing in APIStreamHandler */
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 /**
  * Creates an API object from an XML file. The API object is the internal 
  * representation of an API.
- * All methods in this class for populating an API object are static.
+ * Each instance of this class populates one API object, so several
+ * files can be read in at the same time on different threads.
  * 
  * See the file LICENSE.txt for copyright details.
  * @author Matthew Doar, mdoar@pobox.com
@@ -26,11 +36,78 @@ import javax.xml.parsers.SAXParserFactory;
 public class XMLToAPI {
 
     /** The instance of the API object which is populated from the file. */ 
-    private static API api_ = null;
+    private API api_ = null;
+
+    /** 
+     * The table of names and types, so that equal strings in the API 
+     * object share one instance.
+     */
+    private SymbolTable symbols_ = null;
 
     /** Default constructor. */
-    private XMLToAPI() {
+    public XMLToAPI() {
+        symbols_ = new SymbolTable();
     }   
+
+    /** 
+     * Constructor for reading an API with a table of names and types 
+     * which is shared with other APIs.
+     */
+    public XMLToAPI(SymbolTable symbols) {
+        symbols_ = symbols;
+    }   
+
+    /** Return the canonical instance of a name or type. */
+    String symbol(String s) {
+        return symbols_.symbol(s);
+    }
+
+    /** 
+     * The possible comments found while reading the file, or null if they
+     * are not being stored. Added to Comments.allPossibleComments once the
+     * whole file has been read.
+     */
+    private Hashtable possibleComments_ = null;
+
+    /** 
+     * Return the possible comments found while reading the file, or null 
+     * if they were not stored.
+     */
+    Hashtable getPossibleComments() {
+        return possibleComments_;
+    }
+
+    /** Return the API object which is being populated from the file. */
+    API getAPI() {
+        return api_;
+    }
+
+    /**
+     * Store the possible comment for a program element. Called by the 
+     * XML parser.
+     *
+     * @param commentID The identifier of the program element.
+     * @param ct The text of the possible comment, or a LazyDoc.
+     */
+    void addPossibleComment(String commentID, Object ct) {
+        Object ctOld = possibleComments_.put(commentID, ct);
+        if (ctOld != null) {
+            if (snapshotCommentsOnly_) {
+                // Only the snapshot needs the comments, so keep the first
+                possibleComments_.put(commentID, ctOld);
+                System.out.println("Warning: duplicate comment id: " + commentID);
+                return;
+            }
+            System.out.println("Error: duplicate comment id: " + commentID);
+            System.exit(5);
+        }
+    }
+
+    /** 
+     * Set if the possible comments are only being stored to be written 
+     * to the snapshot, and not used for this API.
+     */
+    private boolean snapshotCommentsOnly_ = false;
   
     /** 
      * Read the file where the XML representing the API is stored.
@@ -44,12 +121,232 @@ public class XMLToAPI {
      */
     public static API readFile(String filename, boolean createGlobalComments,
 			       String apiName) {
+        XMLToAPI loader = new XMLToAPI();
+        return loader.read(filename, createGlobalComments, apiName);
+    }
+
+    /** 
+     * Read the file where the XML representing the API is stored, sharing
+     * the given table of names and types with other APIs.
+     *
+     * @param filename The full name of the file containing the XML 
+     *                 representing the API
+     * @param createGlobalComments If set, then store possible comments
+     * @param apiName The simple name of the API file.
+     * @param symbols The table of names and types.
+     */
+    public static API readFile(String filename, boolean createGlobalComments,
+                               String apiName, SymbolTable symbols) {
+        XMLToAPI loader = new XMLToAPI(symbols);
+        return loader.read(filename, createGlobalComments, apiName);
+    }
+
+    /** 
+     * Read the file where the XML representing the API is stored into
+     * the API object owned by this instance.
+     *
+     * @param filename The full name of the file containing the XML 
+     *                 representing the API
+     * @param createGlobalComments If set, then store possible comments
+     * @param apiName The simple name of the API file.
+     */
+    public API read(String filename, boolean createGlobalComments,
+                    String apiName) {
+        if (useSnapshots && APIFilter.isSet()) {
+            // The snapshot holds the whole API
+            System.out.println("Warning: the snapshot for file '" + filename + "' is not used, since only part of the API is being read");
+        }
+        if (!useSnapshots || APIFilter.isSet()) {
+            if (createGlobalComments)
+                possibleComments_ = new Hashtable();
+            readXML(filename, apiName);
+            publishPossibleComments();
+            return api_;
+        }
+
+        // Use the snapshot if it is at least as new as the XML file
+        String snapshotName = APISnapshot.snapshotFileName(filename);
+        File snapshotFile = new File(FileStreams.findFile(snapshotName));
+        if (snapshotFile.exists() && 
+            snapshotFile.lastModified() >= APIShards.lastModified(filename)) {
+            if (createGlobalComments)
+                possibleComments_ = new Hashtable();
+            try {
+                api_ = APISnapshot.read(snapshotFile.getPath(), possibleComments_, symbols_);
+                publishPossibleComments();
+                return api_;
+            } catch (IOException ioe) {
+                System.out.println("Warning: unable to read the snapshot file '" + snapshotFile + "', reading the XML file instead: " + ioe);
+            }
+        }
+        // The possible comments are always stored in the snapshot
+        possibleComments_ = new Hashtable();
+        snapshotCommentsOnly_ = !createGlobalComments;
+        readXML(filename, apiName);
+        snapshotCommentsOnly_ = false;
+        try {
+            APISnapshot.write(api_, possibleComments_, snapshotName);
+        } catch (IOException ioe) {
+            System.out.println("Warning: unable to write the snapshot file '" + snapshotName + "' : " + ioe);
+        }
+        if (!createGlobalComments)
+            possibleComments_ = null;
+        publishPossibleComments();
+        return api_;
+    }
+
+    /** 
+     * Add the possible comments found in the file to the global list of 
+     * possible comments.
+     */
+    void publishPossibleComments() {
+        if (possibleComments_ != null)
+            Comments.allPossibleComments.putAll(possibleComments_);
+    }
+
+    /** 
+     * Forget the possible comments which have already been added to the 
+     * global list. Used when the file is read one package at a time.
+     */
+    void clearPossibleComments() {
+        if (possibleComments_ != null)
+            possibleComments_.clear();
+    }
+
+    /** 
+     * Start a new, empty API object, to which the elements of the file 
+     * are added as they are parsed. Used when the file is read one package
+     * at a time.
+     *
+     * @param createGlobalComments If set, then store possible comments
+     * @param apiName The simple name of the API file.
+     */
+    void startAPI(boolean createGlobalComments, String apiName) {
+        api_ = new API();
+        api_.name_ = apiName; // Checked later
+        if (createGlobalComments)
+            possibleComments_ = new Hashtable();
+    }
+
+    /** 
+     * The classes in which to look up the parents of each class when adding 
+     * inherited methods and fields, or null to use the classes in the API
+     * object itself.
+     */
+    private Hashtable classIndex_ = null; // String (fqName) -> ClassAPI
+
+    /** 
+     * Set the classes in which to look up the parents of each class, 
+     * which is needed when the API object only holds part of the file.
+     */
+    void setClassIndex(Hashtable classIndex) {
+        classIndex_ = classIndex;
+    }
+
+    /** Return the class with the given fully qualified name, or null. */
+    private ClassAPI findClass(String fqName) {
+        if (classIndex_ != null)
+            return (ClassAPI)classIndex_.get(fqName);
+        return (ClassAPI)api_.classes_.get(fqName);
+    }
+
+    /** 
+     * Parse the XML file, or the files in a shard directory, into a new 
+     * API object, and then add the inherited methods and fields to each 
+     * class.
+     */
+    private void readXML(String filename, String apiName) {
+        if (APIShards.isShardDirectory(filename))
+            readShards(filename, apiName);
+        else
+            parseXML(filename, apiName);
+        removeEmptyPackages();
+        addFingerprints();
+        // Add the inherited methods and fields to each class
+        addInheritedElements();
+    }
+
+    /** 
+     * Parse the files in a shard directory into a new API object. Each 
+     * file is parsed on its own thread by its own instance of this class,
+     * and their packages, classes and possible comments are then added
+     * to the API object in the order given in the manifest.
+     */
+    private void readShards(String dirName, String apiName) {
+        List shards = new ArrayList(); // String[2]
+        String name = null;
+        try {
+            name = APIShards.readManifest(dirName, shards);
+        } catch(java.io.IOException ioe) {
+            System.out.println("IOException reading the shard directory '" + dirName + "' : " + ioe);
+            ioe.printStackTrace();
+            System.exit(1);
+        }
+        api_ = new API();
+        api_.name_ = apiName;
+        nameAPI(name);
+        // The name of the API in each shard is then not checked again
+        final String shardAPIName = name.replace(' ','_') + ".xml";
+        int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), 
+                                  Math.max(shards.size(), 1));
+        ExecutorService readers = Executors.newFixedThreadPool(numThreads);
+        List loads = new ArrayList(); // Future<XMLToAPI>
+        Iterator iter = shards.iterator();
+        while (iter.hasNext()) {
+            final String[] shard = (String[])(iter.next());
+            // Only the shards for the packages to be read are parsed
+            if (!APIFilter.readPackage(shard[0]))
+                continue;
+            final XMLToAPI loader = new XMLToAPI(symbols_);
+            if (possibleComments_ != null)
+                loader.possibleComments_ = new Hashtable();
+            loads.add(readers.submit(() -> {
+                loader.parseXML(FileStreams.findFile(shard[1]), shardAPIName);
+                return loader;
+            }));
+        }
+        try {
+            iter = loads.iterator();
+            while (iter.hasNext()) {
+                XMLToAPI loader = (XMLToAPI)((Future)(iter.next())).get();
+                api_.packages_.addAll(loader.api_.packages_);
+                api_.classes_.putAll(loader.api_.classes_);
+                if (loader.possibleComments_ != null) {
+                    Iterator iter2 = loader.possibleComments_.entrySet().iterator();
+                    while (iter2.hasNext()) {
+                        Map.Entry entry = (Map.Entry)(iter2.next());
+                        addPossibleComment((String)(entry.getKey()), entry.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Error: interrupted while reading the shard directory '" + dirName + "'");
+            System.exit(1);
+        } catch (ExecutionException e) {
+            System.out.println("Error: failed to read the shard directory '" + dirName + "' : " + e.getCause());
+            e.getCause().printStackTrace();
+            System.exit(1);
+        } finally {
+            readers.shutdown();
+        }
+    } //readShards()
+
+    /** 
+     * Parse the XML file into a new API object.
+     */
+    private void parseXML(String filename, String apiName) {
+        boolean createGlobalComments = possibleComments_ != null;
         // The instance of the API object which is populated from the file. 
         api_ = new API();
         api_.name_ = apiName; // Checked later
+        if (useStAX || lazyDocs) {
+            readFileStAX(filename, createGlobalComments);
+            return;
+        }
         try {
             XMLReader parser = null;
-            DefaultHandler handler = new APIHandler(api_, createGlobalComments);
+            DefaultHandler handler = new APIHandler(this, createGlobalComments);
             try {
                 String parserName = System.getProperty("org.xml.sax.driver");
                 if (parserName == null) {
@@ -82,7 +379,9 @@ public class XMLToAPI {
 
             parser.setContentHandler(handler);
             parser.setErrorHandler(handler);
-            parser.parse(new InputSource(new FileInputStream(new File(filename))));
+            InputStream in = FileStreams.openInput(filename);
+            parser.parse(new InputSource(in));
+            in.close();
         } catch(org.xml.sax.SAXNotRecognizedException snre) {
             System.out.println("SAX Parser does not recognize feature: " + snre);
             snre.printStackTrace();
@@ -100,16 +399,98 @@ public class XMLToAPI {
             ioe.printStackTrace();
             System.exit(1);
         }
+    } //parseXML()
 
-        // Add the inherited methods and fields to each class
-        addInheritedElements();
-        return api_;
-    } //readFile()
+    /** 
+     * Remove the packages which were only read in case they contained 
+     * classes which are included, but did not.
+     */
+    void removeEmptyPackages() {
+        if (!APIFilter.isSet())
+            return;
+        Iterator iter = api_.packages_.iterator();
+        while (iter.hasNext()) {
+            PackageAPI pkg = (PackageAPI)(iter.next());
+            if (pkg.classes_.size() == 0 && !APIFilter.includesPackage(pkg.name_))
+                iter.remove();
+        }
+    }
+
+    /**
+     * Read the file where the XML representing the API is stored using
+     * a StAX pull parser, adding its contents to the current API object.
+     * Schema validation is not available with this parser.
+     *
+     * @param filename The full name of the file containing the XML
+     *                 representing the API
+     * @param createGlobalComments If set, then store possible comments
+     */
+    private void readFileStAX(String filename, boolean createGlobalComments) {
+        if (validateXML)
+            System.out.println("Warning: the XML is not validated when the StAX parser is used");
+        try {
+            InputStream in = FileStreams.openInput(filename);
+            LazyDoc.OffsetStream offsets = null;
+            if (lazyDocs && !FileStreams.isCompressed(filename)) {
+                offsets = new LazyDoc.OffsetStream(in);
+                in = offsets;
+            }
+            XMLStreamReader reader = createStreamReader(in);
+            APIStreamHandler handler = new APIStreamHandler(this, createGlobalComments);
+            if (lazyDocs) {
+                String reason = handler.readDocsLazily(filename, reader, offsets);
+                if (reason != null)
+                    System.out.println("Warning: the documentation in file '" + filename + "' will be read in now, since " + reason);
+            }
+            handler.parse(reader);
+            reader.close();
+            in.close();
+        } catch(XMLStreamException xse) {
+            System.out.println("StAX Exception parsing file '" + filename + "' : " + xse);
+            xse.printStackTrace();
+            System.exit(1);
+        } catch(java.io.IOException ioe) {
+            System.out.println("IOException parsing file '" + filename + "' : " + ioe);
+            ioe.printStackTrace();
+            System.exit(1);
+        }
+    } //readFileStAX()
+
+    /** 
+     * Create a StAX pull parser for an XML file representing an API.
+     */
+    static XMLStreamReader createStreamReader(InputStream in) 
+        throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory.createXMLStreamReader(in);
+    }
+
+    /**
+     * Add a fingerprint of its structure to each class which has no 
+     * fingerprint in the XML file, so that unchanged classes can be 
+     * skipped when they are compared. This must be done before the 
+     * inherited methods and fields are added.
+     */
+    public void addFingerprints() {
+        Iterator iter = api_.packages_.iterator();
+        while (iter.hasNext()) {
+            PackageAPI pkg = (PackageAPI)(iter.next());
+            Iterator iter2 = pkg.classes_.iterator();
+            while (iter2.hasNext()) {
+                ClassAPI cls = (ClassAPI)(iter2.next());
+                if (cls.fingerprint_ == null)
+                    cls.fingerprint_ = cls.structuralFingerprint();
+            }
+        }
+    }
 
     /** 
      * Add the inherited methods and fields to each class in turn.
      */
-    public static void addInheritedElements() {
+    public void addInheritedElements() {
         Iterator iter = api_.packages_.iterator();
         while (iter.hasNext()) {
             PackageAPI pkg = (PackageAPI)(iter.next());
@@ -118,7 +499,7 @@ public class XMLToAPI {
                 ClassAPI cls = (ClassAPI)(iter2.next());
                 // Look up any inherited classes or interfaces
                 if (cls.extends_ != null) {
-                    ClassAPI parent = (ClassAPI)api_.classes_.get(cls.extends_);
+                    ClassAPI parent = findClass(cls.extends_);
                     if (parent != null)
                         addInheritedElements(cls, parent, cls.extends_);
                 }
@@ -126,7 +507,7 @@ public class XMLToAPI {
                     Iterator iter3 = cls.implements_.iterator();
                     while (iter3.hasNext()) {
                         String implName = (String)(iter3.next());
-                        ClassAPI parent = (ClassAPI)api_.classes_.get(implName);
+                        ClassAPI parent = findClass(implName);
                         if (parent != null)
                             addInheritedElements(cls, parent, implName);
                     }
@@ -147,7 +528,7 @@ public class XMLToAPI {
      * If the parent class inherits any classes or interfaces, call this
      * method recursively with those parents.
      */
-    public static void addInheritedElements(ClassAPI child, ClassAPI parent,
+    public void addInheritedElements(ClassAPI child, ClassAPI parent,
                                             String fqParentName) {
         if (parent.methods_.size() != 0) {
             Iterator iter = parent.methods_.iterator();
@@ -188,7 +569,7 @@ public class XMLToAPI {
 
         // Look up any inherited classes or interfaces
         if (parent.extends_ != null) {
-            ClassAPI parent2 = (ClassAPI)api_.classes_.get(parent.extends_);
+            ClassAPI parent2 = findClass(parent.extends_);
             if (parent2 != null)
                 addInheritedElements(child, parent2, parent.extends_);
         }
@@ -196,7 +577,7 @@ public class XMLToAPI {
             Iterator iter3 = parent.implements_.iterator();
             while (iter3.hasNext()) {
                 String implName = (String)(iter3.next());
-                ClassAPI parent2 = (ClassAPI)api_.classes_.get(implName);
+                ClassAPI parent2 = findClass(implName);
                 if (parent2 != null)
                     addInheritedElements(child, parent2, implName);
             }
@@ -212,7 +593,7 @@ public class XMLToAPI {
      *
      * @param name The name of the package.
      */
-    public static void nameAPI(String name) {
+    public void nameAPI(String name) {
         if (name == null) {
             System.out.println("Error: no API identifier found in the XML file '" + api_.name_ + "'");
             System.exit(3);
@@ -234,8 +615,8 @@ public class XMLToAPI {
      *
      * @param name The name of the package.
      */
-    public static void addPackage(String name) {
-        api_.currPkg_ = new PackageAPI(name);
+    public void addPackage(String name) {
+        api_.currPkg_ = new PackageAPI(symbol(name));
         api_.packages_.add(api_.currPkg_);
     }
    
@@ -246,10 +627,11 @@ public class XMLToAPI {
      * @param parent The name of the parent class, null if no class is extended.
      * @param modifiers Modifiers for this class.
      */
-    public static void addClass(String name, String parent, 
+    public void addClass(String name, String parent, 
                                 boolean isAbstract,
                                 Modifiers modifiers) {
-        api_.currClass_ = new ClassAPI(name, parent, false, isAbstract, modifiers);
+        api_.currClass_ = new ClassAPI(symbol(name), symbol(parent), false, 
+                                       isAbstract, modifiers);
         api_.currPkg_.classes_.add(api_.currClass_);
         String fqName = api_.currPkg_.name_ + "." + name;
         ClassAPI caOld = (ClassAPI)api_.classes_.put(fqName, api_.currClass_);
@@ -266,10 +648,11 @@ public class XMLToAPI {
      * @param parent The name of the parent interface, null if no 
      *               interface is extended.
      */
-    public static void addInterface(String name, String parent, 
+    public void addInterface(String name, String parent, 
                                     boolean isAbstract,
                                     Modifiers modifiers) {
-        api_.currClass_ = new ClassAPI(name, parent, true, isAbstract, modifiers);
+        api_.currClass_ = new ClassAPI(symbol(name), symbol(parent), true, 
+                                       isAbstract, modifiers);
         api_.currPkg_.classes_.add(api_.currClass_);
     }
   
@@ -279,8 +662,8 @@ public class XMLToAPI {
      *
      * @param name The name of the inherited interface.
      */
-    public static void addImplements(String name) {
-       api_.currClass_.implements_.add(name);
+    public void addImplements(String name) {
+       api_.currClass_.implements_.add(symbol(name));
     }
   
     /** 
@@ -290,11 +673,11 @@ public class XMLToAPI {
      * @param type The type of the constructor.
      * @param modifiers Modifiers for this constructor.
      */
-    public static void addCtor(String type, Modifiers modifiers) {
+    public void addCtor(String type, Modifiers modifiers) {
         String t = type;
         if (t == null)
             t = "void";
-        api_.currCtor_ = new ConstructorAPI(t, modifiers);
+        api_.currCtor_ = new ConstructorAPI(symbol(t), modifiers);
         api_.currClass_.ctors_.add(api_.currCtor_);
     }
 
@@ -305,13 +688,13 @@ public class XMLToAPI {
      * @param returnType The return type of the method, null if it is void.
      * @param modifiers Modifiers for this method.
      */
-    public static void addMethod(String name, String returnType, 
+    public void addMethod(String name, String returnType, 
                                  boolean isAbstract, boolean isNative, 
                                  boolean isSynchronized, Modifiers modifiers) {
         String rt = returnType;
         if (rt == null)
             rt = "void";
-        api_.currMethod_ = new MethodAPI(name, rt, isAbstract, isNative,
+        api_.currMethod_ = new MethodAPI(symbol(name), symbol(rt), isAbstract, isNative,
                                          isSynchronized, modifiers);
         api_.currClass_.methods_.add(api_.currMethod_);
     }
@@ -323,12 +706,13 @@ public class XMLToAPI {
      * @param type The type of the field, null if it is void.
      * @param modifiers Modifiers for this field.
      */
-    public static void addField(String name, String type, boolean isTransient,
+    public void addField(String name, String type, boolean isTransient,
                                 boolean isVolatile, String value, Modifiers modifiers) {
         String t = type;
         if (t == null)
             t = "void";
-        api_.currField_ = new FieldAPI(name, t, isTransient, isVolatile, value, modifiers);
+        api_.currField_ = new FieldAPI(symbol(name), symbol(t), isTransient, 
+                                       isVolatile, value, modifiers);
         api_.currClass_.fields_.add(api_.currField_);
     }
 
@@ -340,11 +724,11 @@ public class XMLToAPI {
      * @param name The name of the parameter.
      * @param type The type of the parameter, null if it is void.
      */
-    public static void addParam(String name, String type) {
+    public void addParam(String name, String type) {
         String t = type;
         if (t == null)
             t = "void";
-        ParamAPI paramAPI = new ParamAPI(name, t);
+        ParamAPI paramAPI = new ParamAPI(symbol(name), symbol(t));
         api_.currMethod_.params_.add(paramAPI);
     }
 
@@ -357,23 +741,39 @@ public class XMLToAPI {
      *             May be null in JDiff1.0.8 and earlier versions.
      * @param currElement Name of the current element.
      */
-    public static void addException(String name, String type, String currElement) {
+    public void addException(String name, String type, String currElement) {
 	String exceptionId = type;
 	if (type == null || !showExceptionTypes)
 	    exceptionId = name;
-        if (currElement.compareTo("method") == 0) {
-            if (api_.currMethod_.exceptions_.compareTo("no exceptions") == 0)
-                api_.currMethod_.exceptions_ = exceptionId;
-            else
-                api_.currMethod_.exceptions_ += ", " + exceptionId;
-        } else {
-            if (api_.currCtor_.exceptions_.compareTo("no exceptions") == 0)
-                api_.currCtor_.exceptions_ = exceptionId;
-            else
-                api_.currCtor_.exceptions_ += ", " + exceptionId;
-        }
+        if (exceptionList_.length() != 0)
+            exceptionList_.append(", ");
+        exceptionList_.append(exceptionId);
     }
 
+    /** 
+     * Set the exceptions of the current method or constructor at the end
+     * of its element, so that only the whole list is added to the symbol 
+     * table. Called by the XML parser.
+     *
+     * @param currElement Name of the current element.
+     */
+    public void endExceptions(String currElement) {
+        if (exceptionList_.length() == 0)
+            return;
+        String exceptions = symbol(exceptionList_.toString());
+        exceptionList_.setLength(0);
+        if (currElement.compareTo("method") == 0)
+            api_.currMethod_.exceptions_ = exceptions;
+        else
+            api_.currCtor_.exceptions_ = exceptions;
+    }
+
+    /** 
+     * The exceptions of the current method or constructor, separated by 
+     * commas, which are added to it at the end of its element.
+     */
+    private StringBuilder exceptionList_ = new StringBuilder();
+
     /** 
      * If set, validate the XML which represents an API. By default, this is 
      * not set for reasons of efficiency, and also because if JDiff generated 
@@ -381,6 +781,34 @@ public class XMLToAPI {
      */
     public static boolean validateXML = false;
 
+    /** 
+     * If set, read the XML which represents an API with a StAX pull parser
+     * instead of a SAX parser. The resulting API object is identical.
+     */
+    public static boolean useStAX = false;
+
+    /** 
+     * If set, load each API from the binary snapshot file next to its 
+     * XML file, if the snapshot is up to date. Otherwise read the XML file
+     * and then write the snapshot, so that later runs can load it instead.
+     */
+    public static boolean useSnapshots = false;
+
+    /** 
+     * If set, do not keep the text of each doc block in memory. Instead,
+     * keep its position in the XML file and a hash of its text, and only
+     * read it in when it is needed for the report. The XML is read with 
+     * the StAX parser.
+     */
+    public static boolean lazyDocs = false;
+
+    /** 
+     * If set, compare the APIs one package at a time as the two XML files 
+     * are read, instead of reading in both whole APIs first. The XML is 
+     * read with the StAX parser.
+     */
+    public static boolean streamPackages = false;
+
     /** 
      * If set, then store and display the whole qualified name of exceptions.
      * If not set, then store and display just the name of the exception, 
@@ -0,0 +1,151 @@
+package jdiff;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+/**
+ * Measure the time taken by the XML handlers to assemble large doc blocks
+ * from the chunks delivered by the XML parser.
+ *
+ * An API XML file and a comments XML file are generated with multi-KB
+ * doc blocks full of HTML tags and entities, which makes the parser deliver
+ * each block in many small chunks. Each file is then read in by 
+ * XMLToAPI.readFile and Comments.readFile. If the classes of another build
+ * of JDiff are given, such as one from before the handlers appended to a
+ * StringBuilder, the same files are also read in by that build, in its own
+ * class loader, so that the two can be compared.
+ *
+ * Usage: java -cp jdiff.jar:xerces.jar:. jdiff.DocTextBenchmark [docKB] [docs] [otherBuild]
+ *
+ * where otherBuild is a jar file or directory of the classes of the 
+ * other build, with the path separator and xerces.jar after it if it
+ * needs Xerces.
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+public class DocTextBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int docKB = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int numDocs = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String otherBuild = args.length > 2 && args[2].length() != 0 ? args[2] : null;
+        String doc = makeDoc(docKB * 1024);
+
+        File apiFile = File.createTempFile("Bench_API", ".xml");
+        apiFile.deleteOnExit();
+        PrintWriter out = new PrintWriter(new FileWriter(apiFile));
+        out.println("<?xml version=\"1.0\" encoding=\"iso-8859-1\" standalone=\"no\"?>");
+        out.println("<api name=\"" + apiName(apiFile) + "\">");
+        out.println("<package name=\"bench\">");
+        out.println("<class name=\"Bench\" extends=\"java.lang.Object\" abstract=\"false\" static=\"false\" final=\"false\" visibility=\"public\" deprecated=\"not deprecated\">");
+        for (int i = 0; i < numDocs; i++) {
+            out.println("<method name=\"m" + i + "\" return=\"void\" abstract=\"false\" native=\"false\" synchronized=\"false\" static=\"false\" final=\"false\" visibility=\"public\" deprecated=\"not deprecated\">");
+            out.println("<doc>" + doc + "</doc>");
+            out.println("</method>");
+        }
+        out.println("</class>");
+        out.println("</package>");
+        out.println("</api>");
+        out.close();
+
+        File commentsFile = File.createTempFile("Bench_comments", ".xml");
+        commentsFile.deleteOnExit();
+        out = new PrintWriter(new FileWriter(commentsFile));
+        out.println("<?xml version=\"1.0\" encoding=\"iso-8859-1\" standalone=\"no\"?>");
+        out.println("<comments name=\"Old_to_New\" jdversion=\"" + JDiff.version + "\">");
+        for (int i = 0; i < numDocs; i++) {
+            out.println("<comment>");
+            out.println("  <identifier id=\"bench.Bench.m" + i + "_changed()\"/>");
+            out.println("  <text>" + doc + "</text>");
+            out.println("</comment>");
+        }
+        out.println("</comments>");
+        out.close();
+
+        ClassLoader thisBuild = DocTextBenchmark.class.getClassLoader();
+        ClassLoader other = null;
+        if (otherBuild != null) {
+            String[] paths = otherBuild.split(File.pathSeparator);
+            URL[] urls = new URL[paths.length];
+            for (int i = 0; i < paths.length; i++)
+                urls[i] = new File(paths[i]).toURI().toURL();
+            // Not delegating to the class path, which has this build
+            other = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+        }
+
+        System.out.println("Doc blocks: " + numDocs + " of " + docKB + "KB");
+        for (int run = 1; run <= 3; run++) {
+            System.out.println("Run " + run + ":");
+            readFiles("This build", thisBuild, apiFile, commentsFile);
+            if (other != null)
+                readFiles("Other build", other, apiFile, commentsFile);
+        }
+    }
+
+    /**
+     * Read in the API and comments files with the XMLToAPI and Comments
+     * classes from the given class loader, and print the time taken.
+     */
+    private static void readFiles(String build, ClassLoader loader, 
+                                  File apiFile, File commentsFile) throws Exception {
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(loader);
+        try {
+            Class jdiff = Class.forName("jdiff.JDiff", true, loader);
+            setField(jdiff, "oldFileName", "Old.xml");
+            setField(jdiff, "newFileName", "New.xml");
+            Method readAPI = Class.forName("jdiff.XMLToAPI", true, loader).getMethod(
+                "readFile", String.class, boolean.class, String.class);
+            Class comments = Class.forName("jdiff.Comments", true, loader);
+            Method readComments = comments.getMethod("readFile", String.class);
+
+            long start = System.currentTimeMillis();
+            readAPI.invoke(null, apiFile.getPath(), Boolean.TRUE, apiFile.getName());
+            long apiTime = System.currentTimeMillis() - start;
+            ((Map)comments.getField("allPossibleComments").get(null)).clear();
+
+            start = System.currentTimeMillis();
+            readComments.invoke(null, commentsFile.getPath());
+            long commentsTime = System.currentTimeMillis() - start;
+            System.out.println("  " + build + ": XMLToAPI.readFile " + apiTime + 
+                               "ms, Comments.readFile " + commentsTime + "ms");
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextLoader);
+        }
+    }
+
+    /** Set a static field, which need not be public. */
+    private static void setField(Class c, String name, Object value) throws Exception {
+        Field field = c.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /** Return the API name which matches the name of the file. */
+    private static String apiName(File apiFile) {
+        String name = apiFile.getName();
+        return name.substring(0, name.length() - 4);
+    }
+
+    /**
+     * Return a doc block of about the given length, with HTML tags and
+     * entities which split the text into many chunks.
+     */
+    private static String makeDoc(int length) {
+        StringBuilder sb = new StringBuilder(length + 100);
+        int i = 0;
+        while (sb.length() < length) {
+            sb.append("Some text &lt;with&gt; entities &amp; an ");
+            sb.append("<b>HTML tag</b> and <a href=\"#x" + i + "\">a link</a>. ");
+            if (i % 8 == 0)
+                sb.append("<p/>");
+            i++;
+        }
+        sb.append("The end.");
+        return sb.toString();
+    }
+}
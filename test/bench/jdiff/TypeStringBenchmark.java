@@ -0,0 +1,191 @@
+package jdiff;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.DocumentationTool;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * Measure the memory allocated for the strings of the types while the
+ * XML for an API is written, with and without the strings being reused.
+ *
+ * A package of classes whose methods and fields use the same generic and
+ * simple types many times is generated, as in the record classes of large
+ * APIs. Javadoc is then run over it with the JDiff doclet, and the bytes
+ * allocated by the doclet, which writes the XML, are measured. Then, in
+ * the same run, the strings for every use of a type in the API are built
+ * again, once without and once with a TypeStringCache, and the bytes
+ * allocated by each are measured. The strings are checked to be the same.
+ *
+ * Usage: java -cp jdiff.jar:xerces.jar:. jdiff.TypeStringBenchmark [classes] [methods]
+ *
+ * See the file LICENSE.txt for copyright details.
+ */
+public class TypeStringBenchmark {
+
+    /** The bytes allocated by the last run of the doclet. */
+    static long allocated = 0;
+
+    /** The bytes allocated building the strings without reusing them. */
+    static long uncached = 0;
+
+    /** The bytes allocated building the strings with a TypeStringCache. */
+    static long cached = 0;
+
+    /** The number of uses of types in the API. */
+    static int uses = 0;
+
+    public static void main(String[] args) throws Exception {
+        int numClasses = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int numMethods = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        File srcDir = createTempDir("Bench_src");
+        File pkgDir = new File(srcDir, "bench");
+        pkgDir.mkdirs();
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < numClasses; i++)
+            files.add(writeClass(pkgDir, i, numMethods));
+        File xmlDir = createTempDir("Bench_xml");
+
+        System.out.println("Classes: " + numClasses + " with " + numMethods + " methods each");
+        for (int run = 1; run <= 3; run++) {
+            runDoclet(files, xmlDir);
+            System.out.println("Run " + run + ": " + (allocated / 1024) +
+                               "KB allocated writing the XML, " + uses + " uses of types");
+            System.out.println("  Without reusing type strings: " + (uncached / 1024) + "KB allocated");
+            System.out.println("  Reusing type strings:         " + (cached / 1024) + "KB allocated");
+        }
+        deleteAll(srcDir);
+        deleteAll(xmlDir);
+    }
+
+    /** Run Javadoc with the measured JDiff doclet over the files. */
+    private static void runDoclet(List<File> files, File xmlDir) throws Exception {
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null);
+        Iterable<? extends JavaFileObject> units = fm.getJavaFileObjectsFromFiles(files);
+        List<String> options = Arrays.asList("-quiet", "-apiname", "Bench API",
+                                             "-apidir", xmlDir.getPath());
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            if (!tool.getTask(null, fm, null, MeasuredDoclet.class, options, units).call())
+                throw new IllegalStateException("Javadoc failed");
+        } finally {
+            System.setOut(stdout);
+            fm.close();
+        }
+    }
+
+    /**
+     * Return every use of a type in the classes, in the order in which
+     * the XML for them is written.
+     */
+    private static List<TypeMirror> typeUses(DocletEnvironment environment) {
+        List<TypeMirror> types = new ArrayList<TypeMirror>();
+        for (Element element : environment.getIncludedElements()) {
+            if (!(element instanceof TypeElement))
+                continue;
+            TypeElement type = (TypeElement)element;
+            types.add(type.getSuperclass());
+            types.addAll(type.getInterfaces());
+            for (Element enclosed : type.getEnclosedElements()) {
+                if (enclosed.getKind() == ElementKind.METHOD ||
+                    enclosed.getKind() == ElementKind.CONSTRUCTOR) {
+                    ExecutableElement method = (ExecutableElement)enclosed;
+                    types.add(method.getReturnType());
+                    for (VariableElement param : method.getParameters())
+                        types.add(param.asType());
+                    types.addAll(method.getThrownTypes());
+                } else if (enclosed.getKind() == ElementKind.FIELD) {
+                    types.add(enclosed.asType());
+                }
+            }
+        }
+        return types;
+    }
+
+    /** Write a class which uses the same types in many places. */
+    private static File writeClass(File pkgDir, int n, int numMethods) throws IOException {
+        File file = new File(pkgDir, "Record" + n + ".java");
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        out.println("package bench;");
+        out.println("import java.util.*;");
+        out.println("import java.io.IOException;");
+        out.println("/** Record number " + n + ". */");
+        out.println("public abstract class Record" + n + "<K extends Comparable<K>, V> {");
+        for (int i = 0; i < numMethods; i++) {
+            out.println("  /** Field " + i + ". */");
+            out.println("  public Map<String, List<V>> field" + i + ";");
+            out.println("  /** Get " + i + ". */");
+            out.println("  public abstract Map<K, List<Map<String, Set<Long>>>> get" + i +
+                        "(String name, int index, K key, List<V> values, long... ids) throws IOException;");
+            out.println("  /** Set " + i + ". */");
+            out.println("  public abstract void set" + i +
+                        "(Map<K, List<Map<String, Set<Long>>>> value, Record" + n + "<K, V> other, String[] names);");
+        }
+        out.println("}");
+        out.close();
+        return file;
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++)
+                deleteAll(children[i]);
+        }
+        file.delete();
+    }
+
+    /**
+     * The JDiff doclet, measuring the bytes allocated while it runs, and
+     * then while the strings for the types are built again.
+     */
+    public static class MeasuredDoclet extends JDiff {
+        public boolean run(DocletEnvironment environment) {
+            com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            long start = bean.getThreadAllocatedBytes(threadId);
+            boolean result = super.run(environment);
+            allocated = bean.getThreadAllocatedBytes(threadId) - start;
+
+            List<TypeMirror> types = typeUses(environment);
+            uses = types.size();
+            String[] plain = new String[uses];
+            String[] reused = new String[uses];
+            start = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < uses; i++)
+                plain[i] = TypeStringCache.toXML(types.get(i));
+            uncached = bean.getThreadAllocatedBytes(threadId) - start;
+            start = bean.getThreadAllocatedBytes(threadId);
+            TypeStringCache cache = new TypeStringCache();
+            for (int i = 0; i < uses; i++)
+                reused[i] = cache.get(types.get(i));
+            cached = bean.getThreadAllocatedBytes(threadId) - start;
+            if (!Arrays.equals(plain, reused))
+                System.err.println("Error: the strings for the types differ when they are reused");
+            return result;
+        }
+    }
+}